@@ -0,0 +1,200 @@
+package com.example.home_server_frontend.crypto;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures the cost of the key wrapping modes on this device: RSA-2048 OAEP against ECDH P-256
+ * with HKDF, each for key generation, the handshake step on either side and a whole 1 KiB
+ * message, plus a message under an established session key.
+ *
+ * Keystore keys are created under their own aliases and deleted again, so running it does not
+ * touch the keys the app uses. The report with median times goes to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CryptoBenchmarkTest {
+    private static final String TAG = "CryptoBenchmark";
+    private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
+    private static final String RSA_ALIAS = "CryptoBenchmarkRSA";
+    private static final String EC_ALIAS = "CryptoBenchmarkEC";
+
+    private static final int KEYGEN_ITERATIONS = 3;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 50;
+    private static final int MESSAGE_SIZE = 1024;
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    private final StringBuilder report = new StringBuilder();
+
+    @After
+    public void tearDown() {
+        deleteAlias(RSA_ALIAS);
+        deleteAlias(EC_ALIAS);
+        Log.i(TAG, "\n" + report);
+    }
+
+    @Test
+    public void measureKeyWrapping() throws Exception {
+        boolean ecdhInKeystore = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+        String message = newMessage();
+
+        // Stand-ins for the server's static keys
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048, CryptoSession.random());
+        PublicKey serverRsaKey = rsaGenerator.generateKeyPair().getPublic();
+        PublicKey serverEcKey = EcdhHybrid.newEphemeralKeyPair().getPublic();
+
+        section("Keystore key generation");
+        time("RSA-2048", KEYGEN_ITERATIONS, 0, () -> {
+            deleteAlias(RSA_ALIAS);
+            generateRsaKey();
+        });
+        if (ecdhInKeystore) {
+            time("EC P-256", KEYGEN_ITERATIONS, 0, () -> {
+                deleteAlias(EC_ALIAS);
+                generateEcKey();
+            });
+        } else {
+            line("EC P-256", "needs Android 12");
+        }
+
+        section("Key to server (public key side)");
+        byte[] aesKey = CryptoUtils.newAesKey();
+        time("RSA OAEP wrap", ITERATIONS, WARMUP_ITERATIONS,
+                () -> CryptoUtils.encryptWithRSA(serverRsaKey, aesKey));
+        time("ECDH ephemeral + HKDF", ITERATIONS, WARMUP_ITERATIONS, () -> {
+            KeyPair ephemeral = EcdhHybrid.newEphemeralKeyPair();
+            byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+            EcdhHybrid.deriveKey(ephemeral.getPrivate(), serverEcKey, ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+        });
+
+        section("Key from server (Keystore private key)");
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+        keyStore.load(null);
+        PrivateKey rsaPrivateKey = (PrivateKey) keyStore.getKey(RSA_ALIAS, null);
+        PublicKey rsaPublicKey = keyStore.getCertificate(RSA_ALIAS).getPublicKey();
+        byte[] wrappedKey = CryptoUtils.encryptWithRSA(rsaPublicKey, aesKey);
+        time("RSA OAEP unwrap", ITERATIONS, WARMUP_ITERATIONS, () -> {
+            Cipher cipher = CryptoSession.rsaCipher();
+            cipher.init(Cipher.DECRYPT_MODE, rsaPrivateKey, CryptoUtils.OAEP_PARAMS);
+            cipher.doFinal(wrappedKey);
+        });
+        if (ecdhInKeystore) {
+            PrivateKey ecPrivateKey = (PrivateKey) keyStore.getKey(EC_ALIAS, null);
+            KeyPair serverEphemeral = EcdhHybrid.newEphemeralKeyPair();
+            byte[] ephemeralKey = serverEphemeral.getPublic().getEncoded();
+            time("ECDH + HKDF", ITERATIONS, WARMUP_ITERATIONS, () -> EcdhHybrid.deriveKey(
+                    ecPrivateKey, serverEphemeral.getPublic(), ephemeralKey, EcdhHybrid.INFO_TO_CLIENT));
+        } else {
+            line("ECDH + HKDF", "needs Android 12");
+        }
+
+        section("Whole " + MESSAGE_SIZE + " byte message to server");
+        time("RSA hybrid", ITERATIONS, WARMUP_ITERATIONS,
+                () -> CryptoUtils.encryptHybridPackage(serverRsaKey, message));
+        time("ECDH hybrid", ITERATIONS, WARMUP_ITERATIONS, () -> {
+            KeyPair ephemeral = EcdhHybrid.newEphemeralKeyPair();
+            byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+            byte[] key = EcdhHybrid.deriveKey(
+                    ephemeral.getPrivate(), serverEcKey, ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+            CryptoUtils.encryptWithAES(new SecretKeySpec(key, "AES"), message);
+        });
+        SecretKey sessionKey = new SecretKeySpec(CryptoUtils.newAesKey(), "AES");
+        byte[] plain = message.getBytes(StandardCharsets.UTF_8);
+        byte[] sealed = new byte[CryptoUtils.sealedLength(plain.length)];
+        time("Session key AES-GCM", ITERATIONS, WARMUP_ITERATIONS, () -> CryptoUtils.encryptAesGcm(
+                sessionKey, CryptoUtils.newIv(), null, plain, 0, plain.length, sealed, 0));
+    }
+
+    private void generateRsaKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_RSA, KEYSTORE_PROVIDER);
+        generator.initialize(new KeyGenParameterSpec.Builder(
+                RSA_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setDigests(KeyProperties.DIGEST_SHA256)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_RSA_OAEP)
+                .setKeySize(2048)
+                .build());
+        generator.generateKeyPair();
+    }
+
+    private void generateEcKey() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return;
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(KeyProperties.KEY_ALGORITHM_EC, KEYSTORE_PROVIDER);
+        generator.initialize(new KeyGenParameterSpec.Builder(EC_ALIAS, KeyProperties.PURPOSE_AGREE_KEY)
+                .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
+                .build());
+        generator.generateKeyPair();
+    }
+
+    private static void deleteAlias(String alias) {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+            keyStore.load(null);
+            if (keyStore.containsAlias(alias)) {
+                keyStore.deleteEntry(alias);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not delete " + alias, e);
+        }
+    }
+
+    private static String newMessage() {
+        byte[] bytes = new byte[MESSAGE_SIZE];
+        Arrays.fill(bytes, (byte) 'x');
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Run an operation and report the median of its wall-clock times
+     */
+    private void time(String name, int iterations, int warmup, Operation operation) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+        long[] micros = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            operation.run();
+            micros[i] = (SystemClock.elapsedRealtimeNanos() - start) / 1000;
+        }
+        Arrays.sort(micros);
+        line(name, String.format(Locale.US, "%,d us", micros[iterations / 2]));
+    }
+
+    private void section(String title) {
+        report.append(title).append('\n');
+    }
+
+    private void line(String name, String value) {
+        report.append(String.format(Locale.US, "  %-24s %s%n", name, value));
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.home_server_frontend.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Upgrades databases of every earlier version to the current one.
+ *
+ * No schema of an earlier version was exported, so each test creates the tables with the DDL
+ * that version had and then opens the file through Room, which runs {@link Migrations#ALL} and
+ * fails the open if the result differs from the entities.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationsTest {
+    private static final String DATABASE_NAME = "migrations-test";
+
+    private static final String V1_COLUMNS = "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "`localUrl` TEXT NOT NULL, `remoteUrl` TEXT, `status` TEXT NOT NULL, " +
+            "`size` INTEGER NOT NULL, `resolution` TEXT, `timestamp` INTEGER NOT NULL, " +
+            "`fileName` TEXT, `imageId` TEXT, `updatedTime` INTEGER NOT NULL";
+    private static final String V2_COLUMNS = V1_COLUMNS +
+            ", `uploadSessionId` TEXT, `uploadedBytes` INTEGER NOT NULL";
+    private static final String V8_COLUMNS = V2_COLUMNS +
+            ", `uploadKey` TEXT, `uploadNoncePrefix` TEXT, `contentHash` TEXT, " +
+            "`hashChecked` INTEGER NOT NULL, `priority` INTEGER NOT NULL, `folder` TEXT, " +
+            "`retryCount` INTEGER NOT NULL, `nextAttemptAt` INTEGER NOT NULL, " +
+            "`uploadedSize` INTEGER NOT NULL, `serverId` INTEGER";
+    private static final String V10_COLUMNS = "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "`localUrl` TEXT NOT NULL, `remoteUrl` TEXT, `status` INTEGER NOT NULL, " +
+            "`size` INTEGER NOT NULL, `uploadedSize` INTEGER NOT NULL, `width` INTEGER NOT NULL, " +
+            "`height` INTEGER NOT NULL, `timestamp` INTEGER NOT NULL, `fileName` TEXT, " +
+            "`imageId` TEXT, `serverId` INTEGER, `updatedTime` INTEGER NOT NULL, `folder` TEXT, " +
+            "`contentHash` TEXT, `hashChecked` INTEGER NOT NULL";
+    private static final String V9_COLUMNS = V10_COLUMNS +
+            ", `priority` INTEGER NOT NULL, `retryCount` INTEGER NOT NULL, " +
+            "`nextAttemptAt` INTEGER NOT NULL, `uploadSessionId` TEXT, " +
+            "`uploadedBytes` INTEGER NOT NULL, `uploadKey` TEXT, `uploadNoncePrefix` TEXT";
+
+    private static final String[] V8_INDICES = {
+            "CREATE UNIQUE INDEX `index_images_imageId_fileName` ON `images` (`imageId`, `fileName`)",
+            "CREATE UNIQUE INDEX `index_images_serverId` ON `images` (`serverId`)",
+            "CREATE INDEX `index_images_contentHash` ON `images` (`contentHash`)"
+    };
+    private static final String[] V9_INDICES = {
+            V8_INDICES[0], V8_INDICES[1], V8_INDICES[2],
+            "CREATE INDEX `index_images_status_timestamp` ON `images` (`status`, `timestamp`)",
+            "CREATE INDEX `index_images_updatedTime` ON `images` (`updatedTime`)",
+            "CREATE INDEX `index_images_localUrl` ON `images` (`localUrl`)"
+    };
+    private static final String V10_UPLOAD_QUEUE = "CREATE TABLE `upload_queue` (" +
+            "`imageRowId` INTEGER NOT NULL, `priority` INTEGER NOT NULL, " +
+            "`enqueuedAt` INTEGER NOT NULL, `retryCount` INTEGER NOT NULL, " +
+            "`nextAttemptAt` INTEGER NOT NULL, `leaseOwner` TEXT, `leaseExpiresAt` INTEGER NOT NULL, " +
+            "`uploadSessionId` TEXT, `uploadedBytes` INTEGER NOT NULL, `uploadKey` TEXT, " +
+            "`uploadNoncePrefix` TEXT, `uploadSize` INTEGER NOT NULL, PRIMARY KEY(`imageRowId`), " +
+            "FOREIGN KEY(`imageRowId`) REFERENCES `images`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )";
+
+    private Context context;
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (database != null) {
+            database.close();
+        }
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void version1RowsAreKept() {
+        createDatabase(1, "CREATE TABLE `images` (" + V1_COLUMNS + ")",
+                "INSERT INTO `images` VALUES (1, '/storage/DCIM/Camera/a.jpg', NULL, 'PENDING', 100, " +
+                        "'1920x1080', 1000, 'a.jpg', '11', 5000)",
+                "INSERT INTO `images` VALUES (2, '', 'api/images/42', 'UPLOADED', 200, " +
+                        "'640x480', 1001, 'b.jpg', '12', 5001)",
+                // Duplicate of row 1, which the unique index of version 9 does not allow
+                "INSERT INTO `images` VALUES (3, '/storage/DCIM/Camera/a.jpg', NULL, 'PENDING', 100, " +
+                        "'1920x1080', 1002, 'a.jpg', '11', 5000)",
+                "INSERT INTO `images` VALUES (4, '/storage/Pictures/c.jpg', NULL, '', 300, " +
+                        "'unknown', 1003, 'c.jpg', '13', 5003)");
+
+        SupportSQLiteDatabase db = migrate();
+
+        assertEquals(3, queryLong(db, "SELECT COUNT(*) FROM images"));
+        assertEquals(ImageStatus.PENDING, queryLong(db, "SELECT status FROM images WHERE id = 1"));
+        assertEquals(1920, queryLong(db, "SELECT width FROM images WHERE id = 1"));
+        assertEquals(1080, queryLong(db, "SELECT height FROM images WHERE id = 1"));
+        assertEquals("/storage/DCIM/Camera", queryString(db, "SELECT folder FROM images WHERE id = 1"));
+        assertEquals(ImageStatus.UPLOADED, queryLong(db, "SELECT status FROM images WHERE id = 2"));
+        assertEquals(42, queryLong(db, "SELECT serverId FROM images WHERE id = 2"));
+        assertEquals(ImageStatus.LOCAL, queryLong(db, "SELECT status FROM images WHERE id = 4"));
+        assertEquals(0, queryLong(db, "SELECT width FROM images WHERE id = 4"));
+
+        // Only the pending image is queued, from the time it was added
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM upload_queue"));
+        assertEquals(1000, queryLong(db, "SELECT enqueuedAt FROM upload_queue WHERE imageRowId = 1"));
+    }
+
+    @Test
+    public void version2RowsTakeEveryDevelopmentStep() {
+        createDatabase(2, "CREATE TABLE `images` (" + V2_COLUMNS + ")",
+                "INSERT INTO `images` VALUES (1, '/storage/DCIM/Camera/a.jpg', NULL, 'UPLOADING', 100, " +
+                        "'1920x1080', 1000, 'a.jpg', '11', 5000, 'upload-1', 64)",
+                "INSERT INTO `images` VALUES (2, '', 'api/images/7', 'UPLOADED', 200, " +
+                        "'640x480', 1001, 'b.jpg', '12', 5001, NULL, 0)");
+
+        SupportSQLiteDatabase db = migrate();
+
+        assertEquals(ImageStatus.PENDING, queryLong(db, "SELECT status FROM images WHERE id = 1"));
+        assertEquals("/storage/DCIM/Camera", queryString(db, "SELECT folder FROM images WHERE id = 1"));
+        assertEquals(7, queryLong(db, "SELECT serverId FROM images WHERE id = 2"));
+        assertEquals("upload-1", queryString(db, "SELECT uploadSessionId FROM upload_queue WHERE imageRowId = 1"));
+        assertEquals(64, queryLong(db, "SELECT uploadedBytes FROM upload_queue WHERE imageRowId = 1"));
+    }
+
+    @Test
+    public void version8UploadStateMovesToQueue() {
+        createDatabase(8, concat(new String[]{"CREATE TABLE `images` (" + V8_COLUMNS + ")",
+                        // Interrupted claim with an open session
+                        v8Row(1, "UPLOADING", "upload-1", 1000, 0, 0, 0, 0, "NULL"),
+                        // Failed attempt with a retry scheduled, and a permanent failure
+                        v8Row(2, "FAILED", null, 0, 0, 2, 2000, 0, "NULL"),
+                        v8Row(3, "FAILED", null, 0, 0, 5, Long.MAX_VALUE, 0, "NULL"),
+                        v8Row(4, "UPLOADED", null, 0, 0, 0, 0, 500, "9"),
+                        v8Row(5, "PENDING", null, 0, 1, 0, 0, 0, "NULL")},
+                V8_INDICES));
+
+        SupportSQLiteDatabase db = migrate();
+
+        assertEquals(ImageStatus.PENDING, queryLong(db, "SELECT status FROM images WHERE id = 1"));
+        assertEquals("upload-1", queryString(db, "SELECT uploadSessionId FROM upload_queue WHERE imageRowId = 1"));
+        assertEquals("key-1", queryString(db, "SELECT uploadKey FROM upload_queue WHERE imageRowId = 1"));
+        assertEquals(1000, queryLong(db, "SELECT uploadedBytes FROM upload_queue WHERE imageRowId = 1"));
+
+        assertEquals(ImageStatus.PENDING, queryLong(db, "SELECT status FROM images WHERE id = 2"));
+        assertEquals(2, queryLong(db, "SELECT retryCount FROM upload_queue WHERE imageRowId = 2"));
+        assertEquals(2000, queryLong(db, "SELECT nextAttemptAt FROM upload_queue WHERE imageRowId = 2"));
+
+        assertEquals(ImageStatus.FAILED, queryLong(db, "SELECT status FROM images WHERE id = 3"));
+        assertEquals(Long.MAX_VALUE, queryLong(db, "SELECT nextAttemptAt FROM upload_queue WHERE imageRowId = 3"));
+
+        assertEquals(ImageStatus.UPLOADED, queryLong(db, "SELECT status FROM images WHERE id = 4"));
+        assertEquals(500, queryLong(db, "SELECT uploadedSize FROM images WHERE id = 4"));
+        assertEquals(9, queryLong(db, "SELECT serverId FROM images WHERE id = 4"));
+
+        assertEquals(1, queryLong(db, "SELECT priority FROM upload_queue WHERE imageRowId = 5"));
+        assertEquals(4, queryLong(db, "SELECT COUNT(*) FROM upload_queue"));
+    }
+
+    @Test
+    public void version9SizeSentStaysWithItsSession() {
+        createDatabase(9, concat(new String[]{"CREATE TABLE `images` (" + V9_COLUMNS + ")",
+                        "INSERT INTO `images` VALUES (1, '/storage/a.jpg', NULL, " + ImageStatus.UPLOADING +
+                                ", 100, 70, 10, 20, 1000, 'a.jpg', '11', NULL, 5000, '/storage', 'hash-1', 1, " +
+                                "0, 0, 0, 'upload-1', 32, 'key-1', 'prefix-1')",
+                        "INSERT INTO `images` VALUES (2, '/storage/b.jpg', 'api/images/8', " + ImageStatus.UPLOADED +
+                                ", 200, 90, 10, 20, 1001, 'b.jpg', '12', 8, 5001, '/storage', 'hash-2', 1, " +
+                                "0, 0, 0, NULL, 0, NULL, NULL)"},
+                V9_INDICES));
+
+        SupportSQLiteDatabase db = migrate();
+
+        assertEquals(ImageStatus.PENDING, queryLong(db, "SELECT status FROM images WHERE id = 1"));
+        assertEquals(0, queryLong(db, "SELECT uploadedSize FROM images WHERE id = 1"));
+        assertEquals(70, queryLong(db, "SELECT uploadSize FROM upload_queue WHERE imageRowId = 1"));
+        assertEquals("prefix-1", queryString(db, "SELECT uploadNoncePrefix FROM upload_queue WHERE imageRowId = 1"));
+        assertEquals(90, queryLong(db, "SELECT uploadedSize FROM images WHERE id = 2"));
+        assertEquals("hash-2", queryString(db, "SELECT contentHash FROM images WHERE id = 2"));
+        assertEquals(1, queryLong(db, "SELECT COUNT(*) FROM upload_queue"));
+    }
+
+    @Test
+    public void version10SessionGetsNoFingerprint() {
+        createDatabase(10, concat(new String[]{"CREATE TABLE `images` (" + V10_COLUMNS + ")",
+                        V10_UPLOAD_QUEUE,
+                        "INSERT INTO `images` VALUES (1, '/storage/a.jpg', NULL, " + ImageStatus.PENDING +
+                                ", 100, 0, 10, 20, 1000, 'a.jpg', '11', NULL, 5000, '/storage', 'hash-1', 1)",
+                        "INSERT INTO `upload_queue` VALUES (1, 0, 1000, 0, 0, NULL, 0, 'upload-1', 32, " +
+                                "'key-1', 'prefix-1', 100)"},
+                V9_INDICES));
+
+        SupportSQLiteDatabase db = migrate();
+
+        assertEquals("upload-1", queryString(db, "SELECT uploadSessionId FROM upload_queue WHERE imageRowId = 1"));
+        // Without a fingerprint the uploader opens a new session instead of resuming this one
+        assertNull(queryString(db, "SELECT uploadFingerprint FROM upload_queue WHERE imageRowId = 1"));
+    }
+
+    /**
+     * Row of the last development schema, with fixed values where the test does not care
+     */
+    private static String v8Row(long id, String status, String sessionId, long uploadedBytes,
+                                int priority, int retryCount, long nextAttemptAt, long uploadedSize,
+                                String serverId) {
+        String session = sessionId != null ? "'" + sessionId + "'" : "NULL";
+        String key = sessionId != null ? "'key-" + id + "'" : "NULL";
+        return "INSERT INTO `images` VALUES (" + id + ", '/storage/" + id + ".jpg', NULL, '" + status +
+                "', 100, '10x20', " + (1000 + id) + ", '" + id + ".jpg', '" + id + "', 5000, " +
+                session + ", " + uploadedBytes + ", " + key + ", " + key + ", 'hash-" + id + "', 1, " +
+                priority + ", '/storage', " + retryCount + ", " + nextAttemptAt + ", " +
+                uploadedSize + ", " + serverId + ")";
+    }
+
+    /**
+     * Create the database file at an earlier version with the given statements
+     */
+    private void createDatabase(int version, String... statements) {
+        SupportSQLiteOpenHelper helper = new FrameworkSQLiteOpenHelperFactory().create(
+                SupportSQLiteOpenHelper.Configuration.builder(context)
+                        .name(DATABASE_NAME)
+                        .callback(new SupportSQLiteOpenHelper.Callback(version) {
+                            @Override
+                            public void onCreate(SupportSQLiteDatabase db) {
+                                for (String statement : statements) {
+                                    db.execSQL(statement);
+                                }
+                            }
+
+                            @Override
+                            public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+                            }
+                        })
+                        .build());
+        helper.getWritableDatabase();
+        helper.close();
+    }
+
+    /**
+     * Open the database through Room, which migrates it and validates the result
+     */
+    private SupportSQLiteDatabase migrate() {
+        database = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .addMigrations(Migrations.ALL)
+                .build();
+        return database.getOpenHelper().getWritableDatabase();
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String query) {
+        try (Cursor cursor = db.query(query)) {
+            assertTrue(query, cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+    }
+
+    private static String queryString(SupportSQLiteDatabase db, String query) {
+        try (Cursor cursor = db.query(query)) {
+            assertTrue(query, cursor.moveToFirst());
+            return cursor.getString(0);
+        }
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] all = new String[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.home_server_frontend.repository;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.home_server_frontend.api.models.ServerImage;
+import com.example.home_server_frontend.database.AppDatabase;
+import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ServerImageSyncTest {
+    private final Gson gson = new Gson();
+    private AppDatabase database;
+    private ServerImageSync sync;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        // Only the storage side is exercised, no requests are made
+        sync = new ServerImageSync(database, null, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void newRecordIsInserted() {
+        assertEquals(1, store(serverImage(7, "a.jpg", 100, "10x20", 1000)));
+
+        ImageEntity image = uploadedImages().get(0);
+        assertEquals(Long.valueOf(7), image.getServerId());
+        assertEquals("api/images/7", image.getRemoteUrl());
+        assertEquals("a.jpg", image.getFileName());
+    }
+
+    @Test
+    public void changedRecordIsApplied() {
+        store(serverImage(7, "a.jpg", 100, "10x20", 1000));
+
+        // Same server id on a later page: renamed, re-encoded and touched
+        assertEquals(0, store(serverImage(7, "b.jpg", 250, "30x40", 2000)));
+
+        List<ImageEntity> images = uploadedImages();
+        assertEquals(1, images.size());
+        ImageEntity image = images.get(0);
+        assertEquals("b.jpg", image.getFileName());
+        assertEquals(250, image.getSize());
+        assertEquals(30, image.getWidth());
+        assertEquals(40, image.getHeight());
+        assertEquals(2000, image.getUpdatedTime());
+    }
+
+    @Test
+    public void changeCollidingWithAnotherImageIsSkipped() {
+        store(serverImage(7, "a.jpg", 100, "10x20", 1000));
+        store(serverImage(8, "b.jpg", 100, "10x20", 1000));
+
+        // Would duplicate image 8 on (imageId, fileName)
+        assertEquals(0, store(serverImage(7, "b.jpg", 100, "10x20", 2000)));
+
+        List<ImageEntity> images = uploadedImages();
+        assertEquals(2, images.size());
+        for (ImageEntity image : images) {
+            if (image.getServerId() == 7) {
+                assertEquals("a.jpg", image.getFileName());
+                assertEquals(1000, image.getUpdatedTime());
+            }
+        }
+    }
+
+    @Test
+    public void emptyBatchStoresNothing() {
+        assertEquals(0, store());
+        assertEquals(0, database.imageDao().getImageCount());
+    }
+
+    private int store(ServerImage... images) {
+        return database.runInTransaction(() -> sync.storeBatch(Arrays.asList(images)));
+    }
+
+    private List<ImageEntity> uploadedImages() {
+        return database.imageDao().getImagesByStatus(ImageStatus.UPLOADED).blockingFirst();
+    }
+
+    private ServerImage serverImage(int id, String fileName, long size, String resolution, long updatedTime) {
+        return gson.fromJson("{\"id\":" + id +
+                ",\"original_filename\":\"" + fileName + "\"" +
+                ",\"size\":" + size +
+                ",\"resolution\":\"" + resolution + "\"" +
+                ",\"image_id\":\"shared\"" +
+                ",\"updated_time\":" + updatedTime + "}", ServerImage.class);
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.home_server_frontend.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.util.Base64;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.home_server_frontend.crypto.CryptoSession;
+import com.example.home_server_frontend.crypto.KeyManager;
+import com.example.home_server_frontend.crypto.SegmentedAesGcm;
+import com.example.home_server_frontend.database.QueuedUpload;
+import com.example.home_server_frontend.repository.ImageRepository;
+import com.example.home_server_frontend.utils.PreferenceManager;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Drives the resumable session protocol of {@link ImageUploader} against a scripted server
+ */
+@RunWith(AndroidJUnit4.class)
+public class ImageUploaderTest {
+    private static final String BEARER = "Bearer test-token";
+    private static final String SESSION_KEY_ID = "test-session";
+    private static final long CHUNK_SIZE = 64L * SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE;
+
+    private final byte[] sessionKey = randomBytes(32, 1);
+    private long serverCounter;
+
+    private Context context;
+    private PreferenceManager preferenceManager;
+    private MockWebServer server;
+    private KeyPair serverKeyPair;
+    private ImageUploader uploader;
+
+    private String previousHost;
+    private String previousPort;
+    private String previousToken;
+    private String previousServerKey;
+
+    @Before
+    public void setUp() throws Exception {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        server = new MockWebServer();
+        server.start();
+
+        preferenceManager = new PreferenceManager(context);
+        previousHost = preferenceManager.getServerHost();
+        previousPort = preferenceManager.getServerPort();
+        previousToken = preferenceManager.getAuthToken();
+        preferenceManager.setServerHost(server.getHostName());
+        preferenceManager.setServerPort(String.valueOf(server.getPort()));
+        preferenceManager.setAuthToken("test-token");
+
+        // Storing the server key ends any session, so the session key goes after it
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        serverKeyPair = generator.generateKeyPair();
+        KeyManager keyManager = new KeyManager(context);
+        previousServerKey = keyManager.getServerPublicKey();
+        keyManager.storeServerPublicKey("-----BEGIN PUBLIC KEY-----\n"
+                + Base64.encodeToString(serverKeyPair.getPublic().getEncoded(), Base64.DEFAULT)
+                + "-----END PUBLIC KEY-----");
+        CryptoSession.getInstance(context).startSession(new JSONObject()
+                .put("id", SESSION_KEY_ID)
+                .put("key", Base64.encodeToString(sessionKey, Base64.NO_WRAP)));
+
+        uploader = new ImageUploader(context, new ImageRepository(context));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        preferenceManager.setServerHost(previousHost);
+        preferenceManager.setServerPort(previousPort);
+        preferenceManager.setAuthToken(previousToken);
+        new KeyManager(context).storeServerPublicKey(previousServerKey);
+    }
+
+    @Test
+    public void newSessionSendsChunksAtSegmentBoundaries() throws Exception {
+        byte[] plain = randomBytes(64 * SegmentedAesGcm.SEGMENT_SIZE + 1000, 2);
+        QueuedUpload image = queuedUpload(writeFile(plain));
+        long totalSize = SegmentedAesGcm.encryptedLength(plain.length);
+
+        server.enqueue(json(new JSONObject().put("sessionId", "upload-1").put("offset", 0)));
+        server.enqueue(json(new JSONObject().put("offset", CHUNK_SIZE)));
+        server.enqueue(json(new JSONObject().put("offset", totalSize)));
+        server.enqueue(completed("api/images/1"));
+
+        assertEquals("api/images/1", uploader.send(uploader.prepare(image), () -> false));
+
+        RecordedRequest open = server.takeRequest();
+        assertEquals("POST /api/upload/sessions HTTP/1.1", open.getRequestLine());
+        assertEquals(BEARER, open.getHeader("Authorization"));
+        JSONObject request = new JSONObject(open.getBody().readUtf8());
+        assertEquals(totalSize, request.getLong("totalSize"));
+        assertEquals(SegmentedAesGcm.ALGORITHM, request.getString("encryption"));
+        assertEquals(SegmentedAesGcm.SEGMENT_SIZE, request.getInt("segmentSize"));
+        byte[] fileKey = unwrapKey(request.getString("encryptedKey"));
+        byte[] noncePrefix = Base64.decode(request.getString("noncePrefix"), Base64.NO_WRAP);
+
+        ByteArrayOutputStream sealed = new ByteArrayOutputStream();
+        RecordedRequest first = server.takeRequest();
+        assertEquals("PUT /api/upload/sessions/upload-1 HTTP/1.1", first.getRequestLine());
+        assertEquals("0", first.getHeader("Upload-Offset"));
+        assertEquals(CHUNK_SIZE, first.getBodySize());
+        sealed.write(first.getBody().readByteArray());
+
+        RecordedRequest second = server.takeRequest();
+        assertEquals(String.valueOf(CHUNK_SIZE), second.getHeader("Upload-Offset"));
+        assertEquals(totalSize - CHUNK_SIZE, second.getBodySize());
+        sealed.write(second.getBody().readByteArray());
+
+        assertEquals("POST /api/upload/sessions/upload-1/complete HTTP/1.1",
+                server.takeRequest().getRequestLine());
+        assertArrayEquals(plain, open(fileKey, noncePrefix, sealed.toByteArray()));
+    }
+
+    @Test
+    public void resumeRestartsAtSegmentBoundaryOfServerOffset() throws Exception {
+        byte[] plain = randomBytes(64 * SegmentedAesGcm.SEGMENT_SIZE + 1000, 3);
+        File file = writeFile(plain);
+        byte[] fileKey = randomBytes(32, 4);
+        byte[] noncePrefix = randomBytes(SegmentedAesGcm.NONCE_PREFIX_LENGTH, 5);
+        QueuedUpload image = resumableUpload(file, "upload-1", fileKey, noncePrefix);
+        long totalSize = SegmentedAesGcm.encryptedLength(plain.length);
+
+        // The server holds part of a segment, which is sent again whole
+        server.enqueue(json(new JSONObject().put("sessionId", "upload-1").put("offset", CHUNK_SIZE + 100)));
+        server.enqueue(json(new JSONObject().put("offset", totalSize)));
+        server.enqueue(completed("api/images/1"));
+
+        assertEquals("api/images/1", uploader.send(uploader.prepare(image), () -> false));
+
+        assertEquals("GET /api/upload/sessions/upload-1 HTTP/1.1", server.takeRequest().getRequestLine());
+        RecordedRequest chunk = server.takeRequest();
+        assertEquals("PUT /api/upload/sessions/upload-1 HTTP/1.1", chunk.getRequestLine());
+        assertEquals(String.valueOf(CHUNK_SIZE), chunk.getHeader("Upload-Offset"));
+        assertEquals(totalSize - CHUNK_SIZE, chunk.getBodySize());
+        assertEquals("POST /api/upload/sessions/upload-1/complete HTTP/1.1",
+                server.takeRequest().getRequestLine());
+        assertEquals(3, server.getRequestCount());
+
+        // The tail was sealed with the stored key and nonces, matching the bytes already sent
+        byte[] sealed = seal(fileKey, noncePrefix, plain);
+        assertArrayEquals(Arrays.copyOfRange(sealed, (int) CHUNK_SIZE, sealed.length),
+                chunk.getBody().readByteArray());
+    }
+
+    @Test
+    public void expiredSessionIsReopened() throws Exception {
+        assertSessionReopenedAfter(404);
+    }
+
+    @Test
+    public void goneSessionIsReopened() throws Exception {
+        assertSessionReopenedAfter(410);
+    }
+
+    @Test
+    public void changedFileOpensNewSessionWithoutAsking() throws Exception {
+        byte[] oldKey = randomBytes(32, 6);
+        QueuedUpload image = resumableUpload(writeFile(randomBytes(1000, 7)), "upload-1",
+                oldKey, randomBytes(SegmentedAesGcm.NONCE_PREFIX_LENGTH, 8));
+        image.setUploadFingerprint("999:0");
+
+        server.enqueue(json(new JSONObject().put("sessionId", "upload-2").put("offset", 0)));
+        server.enqueue(json(new JSONObject().put("offset", SegmentedAesGcm.encryptedLength(1000))));
+        server.enqueue(completed("api/images/1"));
+
+        uploader.send(uploader.prepare(image), () -> false);
+
+        RecordedRequest open = server.takeRequest();
+        assertEquals("POST /api/upload/sessions HTTP/1.1", open.getRequestLine());
+        assertFalse(Arrays.equals(oldKey,
+                unwrapKey(new JSONObject(open.getBody().readUtf8()).getString("encryptedKey"))));
+        assertEquals("PUT /api/upload/sessions/upload-2 HTTP/1.1", server.takeRequest().getRequestLine());
+    }
+
+    @Test
+    public void chunkNotAcknowledgedFails() throws Exception {
+        QueuedUpload image = queuedUpload(writeFile(randomBytes(1000, 9)));
+
+        server.enqueue(json(new JSONObject().put("sessionId", "upload-1").put("offset", 0)));
+        server.enqueue(json(new JSONObject().put("offset", 0)));
+
+        try {
+            uploader.send(uploader.prepare(image), () -> false);
+            fail("Upload succeeded without progress");
+        } catch (UploadException expected) {
+            assertEquals(2, server.getRequestCount());
+        }
+    }
+
+    private void assertSessionReopenedAfter(int status) throws Exception {
+        byte[] plain = randomBytes(1000, status);
+        byte[] oldKey = randomBytes(32, 10);
+        QueuedUpload image = resumableUpload(writeFile(plain), "upload-1",
+                oldKey, randomBytes(SegmentedAesGcm.NONCE_PREFIX_LENGTH, 11));
+        long totalSize = SegmentedAesGcm.encryptedLength(plain.length);
+
+        server.enqueue(new MockResponse().setResponseCode(status));
+        server.enqueue(json(new JSONObject().put("sessionId", "upload-2").put("offset", 0)));
+        server.enqueue(json(new JSONObject().put("offset", totalSize)));
+        server.enqueue(completed("api/images/1"));
+
+        assertEquals("api/images/1", uploader.send(uploader.prepare(image), () -> false));
+
+        assertEquals("GET /api/upload/sessions/upload-1 HTTP/1.1", server.takeRequest().getRequestLine());
+        RecordedRequest open = server.takeRequest();
+        assertEquals("POST /api/upload/sessions HTTP/1.1", open.getRequestLine());
+        JSONObject request = new JSONObject(open.getBody().readUtf8());
+        byte[] fileKey = unwrapKey(request.getString("encryptedKey"));
+        // Fresh key material: the old key's nonces may already have been used with other bytes
+        assertFalse(Arrays.equals(oldKey, fileKey));
+
+        RecordedRequest chunk = server.takeRequest();
+        assertEquals("PUT /api/upload/sessions/upload-2 HTTP/1.1", chunk.getRequestLine());
+        assertEquals("0", chunk.getHeader("Upload-Offset"));
+        assertArrayEquals(plain, open(fileKey,
+                Base64.decode(request.getString("noncePrefix"), Base64.NO_WRAP), chunk.getBody().readByteArray()));
+    }
+
+    private QueuedUpload queuedUpload(File file) {
+        QueuedUpload image = new QueuedUpload();
+        // Not stored, so the repository's progress updates touch no rows
+        image.setId(-1);
+        image.setLocalUrl(file.getAbsolutePath());
+        image.setFileName(file.getName());
+        image.setSize(file.length());
+        image.setResolution("1x1");
+        image.setImageId("test");
+        image.setContentHash("test-hash");
+        return image;
+    }
+
+    private QueuedUpload resumableUpload(File file, String sessionId, byte[] fileKey, byte[] noncePrefix) {
+        QueuedUpload image = queuedUpload(file);
+        image.setUploadSessionId(sessionId);
+        image.setUploadKey(Base64.encodeToString(fileKey, Base64.NO_WRAP));
+        image.setUploadNoncePrefix(Base64.encodeToString(noncePrefix, Base64.NO_WRAP));
+        image.setUploadSize(file.length());
+        image.setUploadFingerprint(file.length() + ":" + file.lastModified());
+        return image;
+    }
+
+    private static MockResponse json(JSONObject body) {
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+
+    /**
+     * Completion response encrypted with the session key, as the server answers it
+     */
+    private MockResponse completed(String remoteUrl) throws Exception {
+        byte[] nonce = ByteBuffer.allocate(12).putInt(2).putLong(serverCounter++).array();
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(sessionKey, "AES"), new GCMParameterSpec(128, nonce));
+        cipher.updateAAD(SESSION_KEY_ID.getBytes(StandardCharsets.UTF_8));
+        byte[] sealed = cipher.doFinal(new JSONObject()
+                .put("success", true)
+                .put("remoteUrl", remoteUrl)
+                .toString().getBytes(StandardCharsets.UTF_8));
+        int tagStart = sealed.length - SegmentedAesGcm.TAG_LENGTH;
+
+        return json(new JSONObject().put("encryptedResponse", new JSONObject()
+                .put("sessionId", SESSION_KEY_ID)
+                .put("iv", Base64.encodeToString(nonce, Base64.NO_WRAP))
+                .put("encryptedData", Base64.encodeToString(Arrays.copyOf(sealed, tagStart), Base64.NO_WRAP))
+                .put("authTag", Base64.encodeToString(
+                        Arrays.copyOfRange(sealed, tagStart, sealed.length), Base64.NO_WRAP))));
+    }
+
+    private byte[] unwrapKey(String wrappedKey) throws Exception {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, serverKeyPair.getPrivate(), new OAEPParameterSpec(
+                "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+        return cipher.doFinal(Base64.decode(wrappedKey, Base64.NO_WRAP));
+    }
+
+    private static byte[] seal(byte[] fileKey, byte[] noncePrefix, byte[] plain) throws Exception {
+        return crypt(Cipher.ENCRYPT_MODE, fileKey, noncePrefix, plain,
+                SegmentedAesGcm.SEGMENT_SIZE, SegmentedAesGcm.segmentCount(plain.length));
+    }
+
+    private static byte[] open(byte[] fileKey, byte[] noncePrefix, byte[] sealed) throws Exception {
+        long segments = Math.max(1, (sealed.length + SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE - 1)
+                / SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+        return crypt(Cipher.DECRYPT_MODE, fileKey, noncePrefix, sealed,
+                SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE, segments);
+    }
+
+    private static byte[] crypt(int mode, byte[] fileKey, byte[] noncePrefix, byte[] input,
+                                int segmentSize, long segments) throws Exception {
+        SecretKey key = SegmentedAesGcm.keyFromBytes(fileKey);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (long segment = 0; segment < segments; segment++) {
+            int start = (int) (segment * segmentSize);
+            int length = Math.min(segmentSize, input.length - start);
+            byte[] nonce = SegmentedAesGcm.segmentNonce(noncePrefix, segment, segment == segments - 1);
+            cipher.init(mode, key, new GCMParameterSpec(SegmentedAesGcm.TAG_LENGTH * 8, nonce));
+            output.write(cipher.doFinal(input, start, length));
+        }
+        return output.toByteArray();
+    }
+
+    private File writeFile(byte[] content) throws IOException {
+        File file = File.createTempFile("upload", ".jpg", context.getCacheDir());
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.home_server_frontend;
+
+import android.app.Application;
+
+import com.example.home_server_frontend.api.NetworkStack;
+import com.example.home_server_frontend.utils.PicassoAuth;
+
+/**
+ * Sets up process-wide singletons before any activity, service or worker runs
+ */
+public class HomeServerApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NetworkStack.init(this);
+        PicassoAuth.install(this);
+    }
+}
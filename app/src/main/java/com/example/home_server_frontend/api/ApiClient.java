@@ -1,7 +1,6 @@
 package com.example.home_server_frontend.api;
 
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
@@ -10,6 +9,7 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class ApiClient {
     private static Retrofit retrofit = null;
+    private static Retrofit uploadRetrofit = null;
     private static String baseUrl = null;
 
     /**
@@ -17,25 +17,14 @@ public class ApiClient {
      * @param baseUrl The base URL for API calls
      * @return Retrofit instance
      */
-    public static Retrofit getClient(String baseUrl) {
+    public static synchronized Retrofit getClient(String baseUrl) {
         if (retrofit == null || !ApiClient.baseUrl.equals(baseUrl)) {
             ApiClient.baseUrl = baseUrl;
 
-            // Add logging interceptor
-            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-            // Build OkHttpClient
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .addInterceptor(loggingInterceptor)
-                    .build();
-
-            // Build Retrofit
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(baseUrl)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .client(client)
-                    .build();
+            // Both share the connections of the application-wide stack
+            NetworkStack networkStack = NetworkStack.getInstance();
+            retrofit = buildRetrofit(baseUrl, networkStack.getApiClient());
+            uploadRetrofit = buildRetrofit(baseUrl, networkStack.getUploadClient());
         }
         return retrofit;
     }
@@ -48,4 +37,22 @@ public class ApiClient {
     public static ApiService getApiService(String baseUrl) {
         return getClient(baseUrl).create(ApiService.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Get API service interface for uploads, which never logs bodies and allows slow chunks
+     * @param baseUrl The base URL for API calls
+     * @return ApiService interface
+     */
+    public static synchronized ApiService getUploadService(String baseUrl) {
+        getClient(baseUrl);
+        return uploadRetrofit.create(ApiService.class);
+    }
+
+    private static Retrofit buildRetrofit(String baseUrl, OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .addConverterFactory(GsonConverterFactory.create())
+                .client(client)
+                .build();
+    }
+}
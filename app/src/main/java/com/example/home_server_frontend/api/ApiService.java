@@ -1,5 +1,8 @@
 package com.example.home_server_frontend.api;
 
+import com.example.home_server_frontend.api.models.ContentHashCheckRequest;
+import com.example.home_server_frontend.api.models.ContentHashCheckResponse;
+import com.example.home_server_frontend.api.models.HybridEncryptionPackage;
 import com.example.home_server_frontend.api.models.ImageListResponse;
 import com.example.home_server_frontend.api.models.ImageUploadResponse;
 import com.example.home_server_frontend.api.models.KeyExchangeResponse;
@@ -9,9 +12,14 @@ import com.example.home_server_frontend.api.models.RegisterClientKeyRequest;
 import com.example.home_server_frontend.api.models.RegisterClientKeyResponse;
 import com.example.home_server_frontend.api.models.RegistrationRequest;
 import com.example.home_server_frontend.api.models.RegistrationResponse;
+import com.example.home_server_frontend.api.models.SessionKeyResponse;
+import com.example.home_server_frontend.api.models.UploadSessionRequest;
+import com.example.home_server_frontend.api.models.UploadSessionResponse;
 import com.example.home_server_frontend.api.models.VerificationRequest;
 import com.example.home_server_frontend.api.models.VerificationResponse;
 
+import java.util.List;
+
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
 import retrofit2.Call;
@@ -20,7 +28,10 @@ import retrofit2.http.GET;
 import retrofit2.http.Header;
 import retrofit2.http.Multipart;
 import retrofit2.http.POST;
+import retrofit2.http.PUT;
 import retrofit2.http.Part;
+import retrofit2.http.Path;
+import retrofit2.http.Query;
 
 /**
  * Retrofit interface for API endpoints
@@ -57,6 +68,14 @@ public interface ApiService {
     @POST("/api/login")
     Call<LoginResponse> login(@Body LoginRequest request);
 
+    /**
+     * Get a new session key for a logged-in user, e.g. in a new process or after the last one expired
+     * @param authToken Authentication token in the format "Bearer <token>"
+     * @return Response containing the RSA-encrypted "session" object, as in the login response
+     */
+    @POST("/api/session/key")
+    Call<SessionKeyResponse> renewSessionKey(@Header("Authorization") String authToken);
+
     /**
      * Upload image to server
      * @param auth Authentication token in the format "Bearer <token>"
@@ -72,7 +91,95 @@ public interface ApiService {
             @Part MultipartBody.Part image
     );
 
+    /**
+     * Open a resumable upload session
+     * @param authToken Authentication token in the format "Bearer <token>"
+     * @param request Encrypted metadata and total size of the file
+     * @return Session id and the offset the server already holds
+     */
+    @POST("/api/upload/sessions")
+    Call<UploadSessionResponse> startUploadSession(
+            @Header("Authorization") String authToken,
+            @Body UploadSessionRequest request
+    );
+
+    /**
+     * Query the confirmed offset of an existing upload session
+     */
+    @GET("/api/upload/sessions/{sessionId}")
+    Call<UploadSessionResponse> getUploadSession(
+            @Header("Authorization") String authToken,
+            @Path("sessionId") String sessionId
+    );
+
+    /**
+     * Append one chunk to an upload session
+     * @param offset Byte offset of the chunk within the file
+     * @param chunk The chunk bytes
+     * @return Session state with the new confirmed offset
+     */
+    @PUT("/api/upload/sessions/{sessionId}")
+    Call<UploadSessionResponse> uploadChunk(
+            @Header("Authorization") String authToken,
+            @Path("sessionId") String sessionId,
+            @Header("Upload-Offset") long offset,
+            @Body RequestBody chunk
+    );
+
+    /**
+     * Finish an upload session once every byte is confirmed
+     * @return Response containing the encrypted server response
+     */
+    @POST("/api/upload/sessions/{sessionId}/complete")
+    Call<ImageUploadResponse> completeUploadSession(
+            @Header("Authorization") String authToken,
+            @Path("sessionId") String sessionId
+    );
+
+    /**
+     * Upload several small images in one streamed request
+     * @param authToken Authentication token in the format "Bearer <token>"
+     * @param manifest Hybrid-encrypted manifest with the metadata and body key of every part
+     * @param files One encrypted body part per manifest item
+     * @return Response containing the encrypted per-item results
+     */
+    @Multipart
+    @POST("/api/upload/batch")
+    Call<ImageUploadResponse> uploadBatch(
+            @Header("Authorization") String authToken,
+            @Part("manifest") HybridEncryptionPackage manifest,
+            @Part List<MultipartBody.Part> files
+    );
+
+    /**
+     * Ask which of the given content hashes the server already stores
+     * @param authToken Authentication token in the format "Bearer <token>"
+     * @param request Content hashes to look up
+     * @return Response containing the encrypted list of known hashes
+     */
+    @POST("/api/images/exists")
+    Call<ContentHashCheckResponse> checkContentHashes(
+            @Header("Authorization") String authToken,
+            @Body ContentHashCheckRequest request
+    );
+
     // Add to ApiService.java
     @GET("/api/images")
     Call<ImageListResponse> getServerImages(@Header("Authorization") String authToken);
+
+    /**
+     * Get one page of server images changed after a cursor, ordered by (updated_time, id)
+     * @param authToken Bearer token for authentication
+     * @param updatedSince updated_time of the last image already synced
+     * @param afterId id of the last image already synced, breaks updated_time ties
+     * @param limit Maximum number of images in the page
+     * @return Response containing the encrypted page with "images" and "hasMore"
+     */
+    @GET("/api/images")
+    Call<ImageListResponse> getServerImagesSince(
+            @Header("Authorization") String authToken,
+            @Query("since") long updatedSince,
+            @Query("after_id") long afterId,
+            @Query("limit") int limit
+    );
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.home_server_frontend.api;
+
+import androidx.annotation.NonNull;
+
+import com.example.home_server_frontend.crypto.CryptoSession;
+import com.example.home_server_frontend.utils.PreferenceManager;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Adds the bearer token to requests for the configured server.
+ *
+ * The token is read when each request is sent, so a long-lived client keeps working after the
+ * user logs in again. Requests that already carry an Authorization header are left alone, and
+ * other hosts never see the token. Requests to the server also name the active session key, so
+ * the response is encrypted with it instead of a freshly RSA-wrapped key.
+ */
+public class AuthInterceptor implements Interceptor {
+    private final PreferenceManager preferenceManager;
+    private final CryptoSession cryptoSession;
+
+    public AuthInterceptor(PreferenceManager preferenceManager, CryptoSession cryptoSession) {
+        this.preferenceManager = preferenceManager;
+        this.cryptoSession = cryptoSession;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!request.url().host().equals(preferenceManager.getServerHost())) {
+            return chain.proceed(request);
+        }
+
+        Request.Builder builder = request.newBuilder();
+        String authToken = preferenceManager.getAuthToken();
+        if (authToken != null && request.header("Authorization") == null) {
+            builder.header("Authorization", "Bearer " + authToken);
+        }
+        String sessionId = cryptoSession.getSessionId();
+        if (sessionId != null) {
+            builder.header(CryptoSession.SESSION_HEADER, sessionId);
+        }
+        return chain.proceed(builder.build());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.home_server_frontend.api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Request body wrapper that reports how many bytes have been written to the socket
+ */
+public class CountingRequestBody extends RequestBody {
+
+    public interface Listener {
+        /**
+         * @param bytes Bytes written since the previous call
+         * @param bodyBytesWritten Bytes of the body written so far, starting from 0 again when
+         *                         OkHttp writes the body anew, e.g. on a retried connection
+         */
+        void onBytesWritten(long bytes, long bodyBytesWritten);
+    }
+
+    private final RequestBody delegate;
+    private final Listener listener;
+    private long bodyBytesWritten;
+
+    public CountingRequestBody(RequestBody delegate, Listener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        bodyBytesWritten = 0;
+        BufferedSink countingSink = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(@NonNull Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                bodyBytesWritten += byteCount;
+                listener.onBytesWritten(byteCount, bodyBytesWritten);
+            }
+        });
+        delegate.writeTo(countingSink);
+        countingSink.flush();
+    }
+}
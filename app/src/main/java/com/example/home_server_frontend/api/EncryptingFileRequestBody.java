@@ -0,0 +1,186 @@
+package com.example.home_server_frontend.api;
+
+import androidx.annotation.NonNull;
+
+import com.example.home_server_frontend.crypto.SegmentedAesGcm;
+import com.example.home_server_frontend.service.UploadPipelineMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * Request body that encrypts a range of file segments with {@link SegmentedAesGcm} while OkHttp
+ * writes it to the socket. A sealer thread reads and encrypts up to {@link #PIPELINE_DEPTH}
+ * segments ahead of the writer, so CPU work overlaps the network transfer, and memory stays
+ * bounded whatever the size of the file.
+ */
+public class EncryptingFileRequestBody extends RequestBody {
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+    private static final int PIPELINE_DEPTH = 4; // sealed segments buffered ahead of the socket
+
+    // Every body in flight holds one sealer thread for its whole transfer, so the pool grows with
+    // the upload slots instead of leaving a body stalled behind others; idle threads are reclaimed
+    private static final ExecutorService SEALER = Executors.newCachedThreadPool();
+
+    private final File file;
+    private final long plainLength;
+    private final long lastModified;
+    private final SecretKey key;
+    private final byte[] noncePrefix;
+    private final long firstSegment;
+    private final long endSegment;
+    private final UploadPipelineMetrics metrics = UploadPipelineMetrics.getInstance();
+
+    /**
+     * @param file File to encrypt
+     * @param key Per-file AES key
+     * @param noncePrefix Per-file nonce prefix
+     * @param firstSegment Index of the first segment to send
+     * @param endSegment Index after the last segment to send
+     */
+    public EncryptingFileRequestBody(File file, SecretKey key, byte[] noncePrefix,
+                                     long firstSegment, long endSegment) {
+        this.file = file;
+        this.plainLength = file.length();
+        this.lastModified = file.lastModified();
+        this.key = key;
+        this.noncePrefix = noncePrefix;
+        this.firstSegment = firstSegment;
+        this.endSegment = Math.min(endSegment, SegmentedAesGcm.segmentCount(plainLength));
+    }
+
+    @Override
+    public MediaType contentType() {
+        return OCTET_STREAM;
+    }
+
+    @Override
+    public long contentLength() {
+        long plainStart = firstSegment * SegmentedAesGcm.SEGMENT_SIZE;
+        long plainEnd = Math.min(endSegment * SegmentedAesGcm.SEGMENT_SIZE, plainLength);
+        return (plainEnd - plainStart) + (endSegment - firstSegment) * SegmentedAesGcm.TAG_LENGTH;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        // Sealing other bytes under the same key and nonces would break GCM, e.g. on a retry
+        if (file.length() != plainLength || file.lastModified() != lastModified) {
+            throw new IOException(file.getName() + " changed while it was being sent");
+        }
+
+        // Buffers cycle between the sealer and the socket, the pool size bounds read-ahead
+        BlockingQueue<SealedSegment> free = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        BlockingQueue<SealedSegment> sealed = new ArrayBlockingQueue<>(PIPELINE_DEPTH + 1);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            free.add(new SealedSegment());
+        }
+        Future<?> sealer = SEALER.submit(() -> sealSegments(free, sealed));
+
+        try {
+            for (long segment = firstSegment; segment < endSegment; segment++) {
+                long waitStart = System.nanoTime();
+                SealedSegment next = sealed.take();
+                metrics.send.recordWait(waitStart);
+                if (next.error != null) {
+                    throw next.error;
+                }
+
+                long writeStart = System.nanoTime();
+                sink.write(next.data, 0, next.length);
+                metrics.send.recordWork(writeStart, next.length);
+                free.put(next);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while sending " + file.getName());
+        } finally {
+            // Stops the sealer if the socket failed before the last segment
+            sealer.cancel(true);
+        }
+    }
+
+    /**
+     * Read and seal segments ahead of the socket on a sealer thread
+     */
+    private void sealSegments(BlockingQueue<SealedSegment> free, BlockingQueue<SealedSegment> sealed) {
+        long lastSegment = SegmentedAesGcm.segmentCount(plainLength) - 1;
+        byte[] plain = new byte[SegmentedAesGcm.SEGMENT_SIZE];
+
+        try {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                // A fresh cipher per body: providers refuse to seal again with the key and nonce
+                // a cipher used last, which a resumed or retried chunk legitimately does
+                Cipher cipher = Cipher.getInstance(SegmentedAesGcm.TRANSFORMATION);
+                input.seek(firstSegment * SegmentedAesGcm.SEGMENT_SIZE);
+
+                for (long segment = firstSegment; segment < endSegment; segment++) {
+                    long waitStart = System.nanoTime();
+                    SealedSegment out = free.take();
+                    metrics.encrypt.recordWait(waitStart);
+
+                    long sealStart = System.nanoTime();
+                    int length = readSegment(input, plain);
+                    byte[] nonce = SegmentedAesGcm.segmentNonce(noncePrefix, segment, segment == lastSegment);
+                    cipher.init(Cipher.ENCRYPT_MODE, key,
+                            new GCMParameterSpec(SegmentedAesGcm.TAG_LENGTH * 8, nonce));
+                    out.length = cipher.doFinal(plain, 0, length, out.data, 0);
+                    metrics.encrypt.recordWork(sealStart, length);
+
+                    sealed.put(out);
+                }
+            } catch (IOException e) {
+                sealed.put(SealedSegment.failure(e));
+            } catch (GeneralSecurityException e) {
+                sealed.put(SealedSegment.failure(new IOException("Error encrypting " + file.getName(), e)));
+            }
+        } catch (InterruptedException e) {
+            // The socket side gave up, nobody is waiting for more segments
+        }
+    }
+
+    private int readSegment(RandomAccessFile input, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static class SealedSegment {
+        final byte[] data;
+        int length;
+        IOException error;
+
+        SealedSegment() {
+            data = new byte[SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE];
+        }
+
+        private SealedSegment(IOException error) {
+            data = null;
+            this.error = error;
+        }
+
+        static SealedSegment failure(IOException error) {
+            return new SealedSegment(error);
+        }
+    }
+}
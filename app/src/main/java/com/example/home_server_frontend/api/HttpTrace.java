@@ -0,0 +1,84 @@
+package com.example.home_server_frontend.api;
+
+/**
+ * Timings and sizes of one HTTP call, as recorded by {@link HttpTraceListener}.
+ * Phase durations are -1 when the phase did not happen, e.g. no DNS lookup on a reused connection.
+ */
+public class HttpTrace {
+    private final long timestamp;
+    private final String client;
+    private final String method;
+    private final String path;
+    private final int status;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long dnsMs;
+    private final long connectMs;
+    private final long sendMs;
+    private final long ttfbMs;
+    private final long transferMs;
+    private final long totalMs;
+    private final String error;
+
+    HttpTrace(long timestamp, String client, String method, String path, int status,
+              long requestBytes, long responseBytes, long dnsMs, long connectMs, long sendMs,
+              long ttfbMs, long transferMs, long totalMs, String error) {
+        this.timestamp = timestamp;
+        this.client = client;
+        this.method = method;
+        this.path = path;
+        this.status = status;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.dnsMs = dnsMs;
+        this.connectMs = connectMs;
+        this.sendMs = sendMs;
+        this.ttfbMs = ttfbMs;
+        this.transferMs = transferMs;
+        this.totalMs = totalMs;
+        this.error = error;
+    }
+
+    public long getTimestamp() { return timestamp; }
+    public String getClient() { return client; }
+    public String getMethod() { return method; }
+    public String getPath() { return path; }
+    public int getStatus() { return status; }
+    public long getRequestBytes() { return requestBytes; }
+    public long getResponseBytes() { return responseBytes; }
+    public long getDnsMs() { return dnsMs; }
+    public long getConnectMs() { return connectMs; }
+    public long getSendMs() { return sendMs; }
+    public long getTtfbMs() { return ttfbMs; }
+    public long getTransferMs() { return transferMs; }
+    public long getTotalMs() { return totalMs; }
+    public String getError() { return error; }
+
+    public boolean isFailed() {
+        return error != null || status >= 400;
+    }
+
+    /**
+     * One key=value line, e.g. "client=api method=GET path=/api/images status=200 ..."
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder()
+                .append("client=").append(client)
+                .append(" method=").append(method)
+                .append(" path=").append(path)
+                .append(" status=").append(status)
+                .append(" reqBytes=").append(requestBytes)
+                .append(" respBytes=").append(responseBytes)
+                .append(" dnsMs=").append(dnsMs)
+                .append(" connectMs=").append(connectMs)
+                .append(" sendMs=").append(sendMs)
+                .append(" ttfbMs=").append(ttfbMs)
+                .append(" transferMs=").append(transferMs)
+                .append(" totalMs=").append(totalMs);
+        if (error != null) {
+            line.append(" error=\"").append(error).append('"');
+        }
+        return line.toString();
+    }
+}
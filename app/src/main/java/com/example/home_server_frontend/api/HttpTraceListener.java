@@ -0,0 +1,169 @@
+package com.example.home_server_frontend.api;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records phase timings and byte counts of one call and hands them to {@link HttpTraceRecorder}.
+ *
+ * Bodies are never touched: sizes come from OkHttp's own counters. Successful calls are
+ * recorded at the client's sample rate, failed calls always.
+ */
+public class HttpTraceListener extends EventListener {
+
+    /**
+     * Creates one listener per call
+     */
+    public static class Factory implements EventListener.Factory {
+        private final String client;
+        private final double sampleRate;
+
+        /**
+         * @param client Name of the client, included in every event
+         * @param sampleRate Share of successful calls to record, from 0 to 1
+         */
+        public Factory(String client, double sampleRate) {
+            this.client = client;
+            this.sampleRate = sampleRate;
+        }
+
+        @NonNull
+        @Override
+        public EventListener create(@NonNull Call call) {
+            boolean sampled = sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+            return new HttpTraceListener(client, sampled);
+        }
+    }
+
+    private final String client;
+    private final boolean sampled;
+
+    private long callStart;
+    private long dnsStart = -1;
+    private long dnsMs = -1;
+    private long connectStart = -1;
+    private long connectMs = -1;
+    private long requestStart = -1;
+    private long requestEnd = -1;
+    private long responseStart = -1;
+    private long responseHeadersEnd = -1;
+    private long responseEnd = -1;
+    private long requestBytes;
+    private long responseBytes;
+    private int status;
+
+    private HttpTraceListener(String client, boolean sampled) {
+        this.client = client;
+        this.sampled = sampled;
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> addresses) {
+        dnsMs = millisSince(dnsStart);
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy,
+                           Protocol protocol) {
+        connectMs = millisSince(connectStart);
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        requestEnd = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        requestEnd = System.nanoTime();
+        requestBytes = byteCount;
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        responseStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersEnd(@NonNull Call call, @NonNull Response response) {
+        responseHeadersEnd = System.nanoTime();
+        status = response.code();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        responseEnd = System.nanoTime();
+        responseBytes = byteCount;
+    }
+
+    @Override
+    public void callEnd(@NonNull Call call) {
+        if (sampled || status >= 400) {
+            record(call, null);
+        }
+    }
+
+    @Override
+    public void callFailed(@NonNull Call call, @NonNull IOException ioe) {
+        record(call, ioe.getClass().getSimpleName() + ": " + ioe.getMessage());
+    }
+
+    private void record(Call call, String error) {
+        Request request = call.request();
+        HttpTraceRecorder.getInstance().record(new HttpTrace(
+                System.currentTimeMillis(),
+                client,
+                request.method(),
+                request.url().encodedPath(),
+                status,
+                requestBytes,
+                responseBytes,
+                dnsMs,
+                connectMs,
+                between(requestStart, requestEnd),
+                between(requestEnd, responseStart),
+                between(responseHeadersEnd, responseEnd),
+                millisSince(callStart),
+                error));
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static long between(long startNanos, long endNanos) {
+        return startNanos < 0 || endNanos < 0 ? -1 : (endNanos - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.home_server_frontend.api;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide ring buffer of recent {@link HttpTrace} events.
+ *
+ * Recording is a few field writes under a lock, cheap enough to stay on in release builds.
+ * When the buffer is full the oldest event is overwritten.
+ */
+public class HttpTraceRecorder {
+    private static final String TAG = "HttpTrace";
+    private static final int CAPACITY = 256;
+
+    private static HttpTraceRecorder instance;
+
+    private final HttpTrace[] traces = new HttpTrace[CAPACITY];
+    private int next;
+    private int size;
+
+    public static synchronized HttpTraceRecorder getInstance() {
+        if (instance == null) {
+            instance = new HttpTraceRecorder();
+        }
+        return instance;
+    }
+
+    public void record(HttpTrace trace) {
+        synchronized (this) {
+            traces[next] = trace;
+            next = (next + 1) % CAPACITY;
+            size = Math.min(size + 1, CAPACITY);
+        }
+        if (trace.isFailed()) {
+            Log.w(TAG, trace.toString());
+        } else if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, trace.toString());
+        }
+    }
+
+    /**
+     * Recorded events, oldest first
+     */
+    public synchronized List<HttpTrace> getRecent() {
+        List<HttpTrace> recent = new ArrayList<>(size);
+        int first = (next - size + CAPACITY) % CAPACITY;
+        for (int i = 0; i < size; i++) {
+            recent.add(traces[(first + i) % CAPACITY]);
+        }
+        return recent;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            traces[i] = null;
+        }
+        next = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.home_server_frontend.api;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import com.example.home_server_frontend.crypto.CryptoSession;
+import com.example.home_server_frontend.utils.PreferenceManager;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * The application-wide HTTP stack.
+ *
+ * One base client owns the connection pool, dispatcher and disk cache. Clients for API calls,
+ * uploads and image loading are derived from it with {@link OkHttpClient#newBuilder()}, so they
+ * share sockets and threads and only differ in timeouts and interceptors. Set up once from
+ * {@link com.example.home_server_frontend.HomeServerApplication}.
+ *
+ * Every client reports structured {@link HttpTrace} events instead of logging bodies. Full body
+ * logging of API calls can be switched on for debuggable builds only.
+ */
+public class NetworkStack {
+    private static final String CACHE_DIR = "http";
+    private static final long CACHE_SIZE = 20 * 1024 * 1024;
+
+    // Everything talks to one home server, keep it from being flooded by thumbnails and uploads
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 6;
+    private static final int MAX_IDLE_CONNECTIONS = 6;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // Share of successful calls traced; failures are always traced
+    private static final double API_TRACE_SAMPLE_RATE = 1.0;
+    private static final double UPLOAD_TRACE_SAMPLE_RATE = 1.0;
+    private static final double IMAGE_TRACE_SAMPLE_RATE = 0.1;
+
+    private static NetworkStack instance;
+
+    private final OkHttpClient apiClient;
+    private final OkHttpClient uploadClient;
+    private final OkHttpClient imageClient;
+    private final HttpLoggingInterceptor bodyCapture = new HttpLoggingInterceptor();
+    private final boolean debuggable;
+
+    private NetworkStack(Context context) {
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .cache(new Cache(new File(context.getCacheDir(), CACHE_DIR), CACHE_SIZE))
+                .addInterceptor(new AuthInterceptor(preferenceManager, CryptoSession.getInstance(context)))
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .build();
+
+        bodyCapture.redactHeader("Authorization");
+        setBodyCaptureEnabled(preferenceManager.isHttpBodyCaptureEnabled());
+        apiClient = baseClient.newBuilder()
+                .addInterceptor(bodyCapture)
+                .eventListenerFactory(new HttpTraceListener.Factory("api", API_TRACE_SAMPLE_RATE))
+                .build();
+
+        // Never captures bodies, that would buffer and re-encrypt every chunk
+        uploadClient = baseClient.newBuilder()
+                .readTimeout(2, TimeUnit.MINUTES)
+                .writeTimeout(2, TimeUnit.MINUTES)
+                .eventListenerFactory(new HttpTraceListener.Factory("upload", UPLOAD_TRACE_SAMPLE_RATE))
+                .build();
+
+        imageClient = baseClient.newBuilder()
+                .eventListenerFactory(new HttpTraceListener.Factory("image", IMAGE_TRACE_SAMPLE_RATE))
+                .build();
+    }
+
+    /**
+     * Create the stack, called once when the process starts
+     */
+    public static synchronized void init(Context context) {
+        if (instance == null) {
+            instance = new NetworkStack(context.getApplicationContext());
+        }
+    }
+
+    public static synchronized NetworkStack getInstance() {
+        if (instance == null) {
+            throw new IllegalStateException("NetworkStack.init was not called");
+        }
+        return instance;
+    }
+
+    /**
+     * Whether full request and response bodies of API calls may be logged
+     */
+    public boolean isBodyCaptureAvailable() {
+        return debuggable;
+    }
+
+    /**
+     * Log full bodies of API calls, ignored unless the build is debuggable
+     */
+    public void setBodyCaptureEnabled(boolean enabled) {
+        bodyCapture.setLevel(enabled && debuggable
+                ? HttpLoggingInterceptor.Level.BODY
+                : HttpLoggingInterceptor.Level.NONE);
+    }
+
+    /**
+     * Client for JSON API calls
+     */
+    public OkHttpClient getApiClient() {
+        return apiClient;
+    }
+
+    /**
+     * Client for upload sessions and batch uploads, with long timeouts for large chunks
+     */
+    public OkHttpClient getUploadClient() {
+        return uploadClient;
+    }
+
+    /**
+     * Client for loading thumbnails and full images
+     */
+    public OkHttpClient getImageClient() {
+        return imageClient;
+    }
+}
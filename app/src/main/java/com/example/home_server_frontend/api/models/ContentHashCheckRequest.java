@@ -0,0 +1,17 @@
+package com.example.home_server_frontend.api.models;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+/**
+ * Batch of content hashes to look up on the server before uploading
+ */
+public class ContentHashCheckRequest {
+    @SerializedName("hashes")
+    private List<String> hashes;
+
+    public ContentHashCheckRequest(List<String> hashes) {
+        this.hashes = hashes;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.home_server_frontend.api.models;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Response model for the content hash lookup
+ */
+public class ContentHashCheckResponse {
+    @SerializedName("encryptedResponse")
+    private HybridEncryptionPackage encryptedResponse;
+
+    public HybridEncryptionPackage getEncryptedResponse() {
+        return encryptedResponse;
+    }
+}
@@ -7,6 +7,14 @@ public class HybridEncryptionPackage {
     @SerializedName("encryptedKey")
     private String encryptedKey;
 
+    // Set instead of encryptedKey when the data is encrypted with the session key
+    @SerializedName("sessionId")
+    private String sessionId;
+
+    // Set instead of encryptedKey when the AES key comes from ECDH with this ephemeral key
+    @SerializedName("ephemeralKey")
+    private String ephemeralKey;
+
     @SerializedName("iv")
     private String iv;
 
@@ -16,8 +24,38 @@ public class HybridEncryptionPackage {
     @SerializedName("authTag")
     private String authTag;
 
+    public HybridEncryptionPackage() {
+    }
+
+    public HybridEncryptionPackage(String encryptedKey, String iv, String encryptedData, String authTag) {
+        this.encryptedKey = encryptedKey;
+        this.iv = iv;
+        this.encryptedData = encryptedData;
+        this.authTag = authTag;
+    }
+
+    /**
+     * Package encrypted with the session key, which carries no wrapped key of its own
+     */
+    public static HybridEncryptionPackage forSession(String sessionId, String iv, String encryptedData, String authTag) {
+        HybridEncryptionPackage encryptedPackage = new HybridEncryptionPackage(null, iv, encryptedData, authTag);
+        encryptedPackage.sessionId = sessionId;
+        return encryptedPackage;
+    }
+
+    /**
+     * Package whose AES key is agreed with ECDH, carrying the sender's ephemeral public key
+     */
+    public static HybridEncryptionPackage forAgreement(String ephemeralKey, String iv, String encryptedData, String authTag) {
+        HybridEncryptionPackage encryptedPackage = new HybridEncryptionPackage(null, iv, encryptedData, authTag);
+        encryptedPackage.ephemeralKey = ephemeralKey;
+        return encryptedPackage;
+    }
+
     // Getters and setters
     public String getEncryptedKey() { return encryptedKey; }
+    public String getSessionId() { return sessionId; }
+    public String getEphemeralKey() { return ephemeralKey; }
     public String getIv() { return iv; }
     public String getEncryptedData() { return encryptedData; }
     public String getAuthTag() { return authTag; }
@@ -9,8 +9,22 @@ public class RegisterClientKeyRequest {
     @SerializedName("publicKey")
     private String publicKey;
 
+    // Offered key agreement mode and the matching public key, omitted where unsupported
+    @SerializedName("keyAgreement")
+    private String keyAgreement;
+
+    @SerializedName("agreementKey")
+    private String agreementKey;
+
     public RegisterClientKeyRequest(String username, String publicKey) {
         this.username = username;
         this.publicKey = publicKey;
     }
+
+    public RegisterClientKeyRequest(String username, String publicKey, String keyAgreement, String agreementKey) {
+        this.username = username;
+        this.publicKey = publicKey;
+        this.keyAgreement = keyAgreement;
+        this.agreementKey = agreementKey;
+    }
 }
@@ -9,6 +9,13 @@ public class RegisterClientKeyResponse {
     @SerializedName("message")
     private String message;
 
+    // Key agreement mode the server accepted, absent if it only speaks RSA
+    @SerializedName("keyAgreement")
+    private String keyAgreement;
+
+    @SerializedName("serverAgreementKey")
+    private String serverAgreementKey;
+
     public boolean isSuccess() {
         return success;
     }
@@ -16,4 +23,12 @@ public class RegisterClientKeyResponse {
     public String getMessage() {
         return message;
     }
+
+    public String getKeyAgreement() {
+        return keyAgreement;
+    }
+
+    public String getServerAgreementKey() {
+        return serverAgreementKey;
+    }
 }
@@ -0,0 +1,40 @@
+package com.example.home_server_frontend.api.models;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Request to open a resumable upload session
+ */
+public class UploadSessionRequest {
+    @SerializedName("metadata")
+    private String metadata;
+
+    @SerializedName("contentHash")
+    private String contentHash; // hex SHA-256 of the plaintext, used for server-side dedup
+
+    @SerializedName("totalSize")
+    private long totalSize; // size of the encrypted stream
+
+    @SerializedName("encryption")
+    private String encryption;
+
+    @SerializedName("segmentSize")
+    private int segmentSize;
+
+    @SerializedName("encryptedKey")
+    private String encryptedKey; // per-file AES key, RSA-encrypted with the server's public key
+
+    @SerializedName("noncePrefix")
+    private String noncePrefix;
+
+    public UploadSessionRequest(String metadata, String contentHash, long totalSize, String encryption,
+                                int segmentSize, String encryptedKey, String noncePrefix) {
+        this.metadata = metadata;
+        this.contentHash = contentHash;
+        this.totalSize = totalSize;
+        this.encryption = encryption;
+        this.segmentSize = segmentSize;
+        this.encryptedKey = encryptedKey;
+        this.noncePrefix = noncePrefix;
+    }
+}
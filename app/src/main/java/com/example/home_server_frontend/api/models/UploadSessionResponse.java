@@ -0,0 +1,25 @@
+package com.example.home_server_frontend.api.models;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * State of a resumable upload session as acknowledged by the server
+ */
+public class UploadSessionResponse {
+    @SerializedName("sessionId")
+    private String sessionId;
+
+    @SerializedName("offset")
+    private long offset;
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Number of bytes the server has durably stored for this session
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,611 @@
+package com.example.home_server_frontend.crypto;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.home_server_frontend.api.ApiService;
+import com.example.home_server_frontend.api.models.HybridEncryptionPackage;
+import com.example.home_server_frontend.api.models.RegisterClientKeyRequest;
+import com.example.home_server_frontend.api.models.RegisterClientKeyResponse;
+import com.example.home_server_frontend.api.models.SessionKeyResponse;
+import com.example.home_server_frontend.utils.PreferenceManager;
+
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import retrofit2.Response;
+
+/**
+ * Process-wide cache of everything the app needs to talk to the server securely.
+ *
+ * The server public key is parsed from its PEM once and the Keystore private key handle is
+ * looked up once; both are dropped by {@link #invalidate()} when {@link KeyManager} stores or
+ * generates a key. RSA ciphers are kept per thread, already initialised with those keys, so
+ * wrapping a file key or unwrapping a response key costs a doFinal and nothing else. Cipher
+ * instances for the static helpers are likewise kept per thread, and one SecureRandom serves
+ * the whole app.
+ *
+ * After login the server also hands out a symmetric session key (see {@link SessionKey}).
+ * While one is active, requests say so in a header, the server encrypts responses with AES-GCM
+ * under that key, and hybrid packages sent to the server use it too, so the Keystore RSA
+ * operation is only needed for the handshake and when the key is rotated. Packages that still
+ * carry an RSA-wrapped key are always accepted, e.g. from a server that lost the session.
+ *
+ * Where the Keystore supports it and the server accepted it at register-client-key, hybrid
+ * packages use {@link EcdhHybrid} key agreement instead of RSA, with RSA kept as the fallback
+ * in both directions. Devices registered before that are offered ECDH at their next login or
+ * session key handshake.
+ */
+public class CryptoSession {
+    private static final String TAG = "CryptoSession";
+    private static final String RSA_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final String AES_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final long DEFAULT_SESSION_LIFETIME_MS = TimeUnit.HOURS.toMillis(24);
+    // A server without session keys is not asked again on every request
+    private static final long HANDSHAKE_RETRY_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Request header naming the session key the server should encrypt the response with
+     */
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    // Thread-safe and self-seeding, no reason to have more than one
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Uninitialised instances for code that initialises a cipher on every use
+    private static final ThreadLocal<Cipher> RSA_CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> AES_CIPHER = new ThreadLocal<>();
+
+    private static CryptoSession instance;
+
+    private final KeyManager keyManager;
+    private final PreferenceManager preferenceManager;
+    // A server that declined ECDH is asked again in the next process, not on every handshake
+    private final AtomicBoolean agreementOffered = new AtomicBoolean(false);
+    // Ciphers bound to the cached keys, valid while their generation matches
+    private final ThreadLocal<BoundCipher> serverEncryptCipher = new ThreadLocal<>();
+    private final ThreadLocal<BoundCipher> privateDecryptCipher = new ThreadLocal<>();
+
+    // Guarded by this
+    private int generation;
+    private PublicKey serverPublicKey;
+    private PrivateKey privateKey;
+    private PublicKey serverAgreementKey;
+    private PrivateKey agreementPrivateKey;
+    private boolean agreementKeysLoaded;
+
+    // The previous key still opens responses to requests sent before a rotation
+    private volatile SessionKey sessionKey;
+    private volatile SessionKey previousSessionKey;
+    private final Object handshakeLock = new Object();
+    private long handshakeRetryAt; // guarded by handshakeLock
+
+    public static synchronized CryptoSession getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new CryptoSession(new KeyManager(appContext), new PreferenceManager(appContext));
+        }
+        return instance;
+    }
+
+    private CryptoSession(KeyManager keyManager, PreferenceManager preferenceManager) {
+        this.keyManager = keyManager;
+        this.preferenceManager = preferenceManager;
+    }
+
+    /**
+     * Shared SecureRandom for keys, nonces and padding
+     */
+    public static SecureRandom random() {
+        return RANDOM;
+    }
+
+    /**
+     * This thread's AES-GCM cipher. Callers initialise it for every message and must not use it
+     * for anything that outlives the call, such as a cipher stream.
+     */
+    public static Cipher aesGcmCipher() throws GeneralSecurityException {
+        return threadCipher(AES_CIPHER, AES_TRANSFORMATION);
+    }
+
+    /**
+     * This thread's RSA-OAEP cipher, to be initialised on every use
+     */
+    static Cipher rsaCipher() throws GeneralSecurityException {
+        return threadCipher(RSA_CIPHER, RSA_TRANSFORMATION);
+    }
+
+    private static Cipher threadCipher(ThreadLocal<Cipher> cache, String transformation)
+            throws GeneralSecurityException {
+        Cipher cipher = cache.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            cache.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Drop the cached keys and every cipher bound to them, e.g. after a new server key was stored
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            serverPublicKey = null;
+            privateKey = null;
+            serverAgreementKey = null;
+            agreementPrivateKey = null;
+            agreementKeysLoaded = false;
+        }
+        // A session negotiated with other keys is worthless
+        endSession();
+    }
+
+    /**
+     * Start a session with the "session" object of a login or session key response, which
+     * holds "id", the Base64 "key" and optionally "expiresIn" in seconds
+     * @return false if the object is missing or malformed, the previous state is kept then
+     */
+    public boolean startSession(JSONObject session) {
+        if (session == null) {
+            return false;
+        }
+        String id = session.optString("id", "");
+        byte[] key = Base64.decode(session.optString("key", ""), Base64.NO_WRAP);
+        if (id.isEmpty() || key.length != 32) {
+            Log.w(TAG, "Ignoring malformed session key");
+            return false;
+        }
+        long expiresIn = session.optLong("expiresIn", 0);
+        long lifetimeMs = expiresIn > 0 ? TimeUnit.SECONDS.toMillis(expiresIn) : DEFAULT_SESSION_LIFETIME_MS;
+
+        synchronized (handshakeLock) {
+            previousSessionKey = sessionKey;
+            sessionKey = new SessionKey(id, key, lifetimeMs);
+            handshakeRetryAt = 0;
+        }
+        Log.d(TAG, "Session key started");
+        return true;
+    }
+
+    /**
+     * Forget the session keys, e.g. on logout
+     */
+    public void endSession() {
+        sessionKey = null;
+        previousSessionKey = null;
+    }
+
+    /**
+     * Id of the session key responses should be encrypted with
+     * @return the id, or null while no usable session key exists
+     */
+    public String getSessionId() {
+        SessionKey key = activeSession();
+        return key != null ? key.id : null;
+    }
+
+    /**
+     * Make sure a usable session key exists, asking the server for a new one if needed. Blocks
+     * the calling thread; concurrent callers share one handshake. Without a key everything keeps
+     * working over RSA, so failures are only logged.
+     * @param apiService Service for the configured server
+     * @param bearerToken Authentication token in the format "Bearer <token>"
+     * @return true if a session key is active
+     */
+    public boolean ensureSessionKey(ApiService apiService, String bearerToken) {
+        if (activeSession() != null) {
+            return true;
+        }
+        synchronized (handshakeLock) {
+            if (activeSession() != null) {
+                return true;
+            }
+            if (SystemClock.elapsedRealtime() < handshakeRetryAt) {
+                return false;
+            }
+            // Storing the server's answer invalidates the keys, so this goes before the handshake
+            negotiateKeyAgreement(apiService);
+            try {
+                Response<SessionKeyResponse> response = apiService.renewSessionKey(bearerToken).execute();
+                if (response.isSuccessful() && response.body() != null) {
+                    String decryptedJson = decryptHybridPackage(response.body().getEncryptedResponse());
+                    if (decryptedJson != null && startSession(new JSONObject(decryptedJson).optJSONObject("session"))) {
+                        return true;
+                    }
+                }
+                Log.w(TAG, "No session key from server, HTTP " + response.code());
+            } catch (Exception e) {
+                Log.w(TAG, "Session key handshake failed", e);
+            }
+            handshakeRetryAt = SystemClock.elapsedRealtime() + HANDSHAKE_RETRY_MS;
+            return false;
+        }
+    }
+
+    private SessionKey activeSession() {
+        SessionKey key = sessionKey;
+        return key != null && key.isUsable() ? key : null;
+    }
+
+    private SessionKey sessionWithId(String id) {
+        SessionKey key = sessionKey;
+        if (key != null && key.id.equals(id)) {
+            return key;
+        }
+        key = previousSessionKey;
+        return key != null && key.id.equals(id) ? key : null;
+    }
+
+    /**
+     * Server public key, parsed on first use
+     * @return the key, or null if the server key is not known yet
+     */
+    public synchronized PublicKey getServerPublicKey() {
+        if (serverPublicKey == null) {
+            String pem = keyManager.getServerPublicKey();
+            if (pem != null) {
+                serverPublicKey = CryptoUtils.publicKeyFromPem(pem);
+            }
+        }
+        return serverPublicKey;
+    }
+
+    /**
+     * Handle of the device private key in the Keystore, looked up on first use
+     * @return the key, or null if it could not be loaded
+     */
+    public synchronized PrivateKey getPrivateKey() {
+        if (privateKey == null) {
+            privateKey = keyManager.getPrivateKey();
+        }
+        return privateKey;
+    }
+
+    /**
+     * Server key agreement key, parsed on first use
+     * @return the key, or null if ECDH was not negotiated
+     */
+    public synchronized PublicKey getServerAgreementKey() {
+        loadAgreementKeys();
+        return serverAgreementKey;
+    }
+
+    private synchronized PrivateKey getAgreementPrivateKey() {
+        loadAgreementKeys();
+        return agreementPrivateKey;
+    }
+
+    private void loadAgreementKeys() {
+        if (agreementKeysLoaded) {
+            return;
+        }
+        agreementKeysLoaded = true;
+        String pem = keyManager.getServerAgreementKey();
+        if (pem != null) {
+            serverAgreementKey = CryptoUtils.publicKeyFromPem(pem, "EC");
+            agreementPrivateKey = keyManager.getAgreementPrivateKey();
+        }
+    }
+
+    /**
+     * Build the register-client-key request, offering ECDH where the Keystore supports it
+     * @param username User the keys belong to
+     */
+    public RegisterClientKeyRequest newKeyRegistration(String username) {
+        String publicKeyPem = keyManager.getPublicKeyPem();
+        String agreementKeyPem = keyManager.generateAgreementKeyIfNeeded()
+                ? keyManager.getAgreementPublicKeyPem()
+                : null;
+        if (agreementKeyPem == null) {
+            return new RegisterClientKeyRequest(username, publicKeyPem);
+        }
+        return new RegisterClientKeyRequest(username, publicKeyPem, EcdhHybrid.ALGORITHM, agreementKeyPem);
+    }
+
+    /**
+     * Offer ECDH through register-client-key unless it was negotiated already or offered in
+     * this process. Blocks the calling thread; failures are only logged, RSA keeps working.
+     * Ends the session key when the server answers, so call it before a session is started.
+     * @param apiService Service for the configured server
+     */
+    public void negotiateKeyAgreement(ApiService apiService) {
+        String username = preferenceManager.getUsername();
+        if (!KeyManager.isKeyAgreementSupported() || keyManager.getServerAgreementKey() != null
+                || username == null || username.isEmpty()
+                || !agreementOffered.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Response<RegisterClientKeyResponse> response =
+                    apiService.registerClientKey(newKeyRegistration(username)).execute();
+            if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
+                onKeyRegistered(response.body());
+            } else {
+                Log.w(TAG, "Key agreement not negotiated, HTTP " + response.code());
+            }
+        } catch (Exception e) {
+            // Network trouble, not an answer: try again on the next login or handshake
+            agreementOffered.set(false);
+            Log.w(TAG, "Key agreement negotiation failed", e);
+        }
+    }
+
+    /**
+     * Remember whether the server accepted ECDH, from a successful register-client-key response
+     */
+    public void onKeyRegistered(RegisterClientKeyResponse response) {
+        boolean accepted = EcdhHybrid.ALGORITHM.equals(response.getKeyAgreement())
+                && response.getServerAgreementKey() != null;
+        keyManager.storeServerAgreementKey(accepted ? response.getServerAgreementKey() : null);
+        Log.d(TAG, accepted ? "Server accepted ECDH key agreement" : "Server uses RSA key wrapping");
+    }
+
+    /**
+     * RSA-encrypt bytes for the server, e.g. to wrap a file key
+     * @return encrypted bytes, or null on error
+     */
+    public byte[] encryptForServer(byte[] data) {
+        try {
+            return serverCipher().doFinal(data);
+        } catch (Exception e) {
+            serverEncryptCipher.remove();
+            Log.e(TAG, "Error encrypting for server", e);
+            return null;
+        }
+    }
+
+    /**
+     * RSA-encrypt a string for the server
+     * @return Base64 encoded encrypted data, or null on error
+     */
+    public String encryptForServer(String data) {
+        byte[] encrypted = encryptForServer(data.getBytes(StandardCharsets.UTF_8));
+        return encrypted != null ? Base64.encodeToString(encrypted, Base64.NO_WRAP) : null;
+    }
+
+    /**
+     * RSA-decrypt bytes sent to this device
+     * @return decrypted bytes, or null on error
+     */
+    public byte[] decryptWithPrivateKey(byte[] data) {
+        try {
+            return privateCipher().doFinal(data);
+        } catch (Exception e) {
+            privateDecryptCipher.remove();
+            Log.e(TAG, "Error decrypting with private key", e);
+            return null;
+        }
+    }
+
+    /**
+     * Encrypt data of any length for the server: with the session key while one is active,
+     * otherwise with an ECDH-agreed key if negotiated, otherwise as in
+     * {@link CryptoUtils#encryptHybridPackage}
+     * @return hybrid encryption package, or null on error
+     */
+    public HybridEncryptionPackage encryptHybridPackage(String data) {
+        SessionKey session = activeSession();
+        if (session != null) {
+            HybridEncryptionPackage sealed = sealWithSession(session, data);
+            if (sealed != null) {
+                return sealed;
+            }
+        }
+
+        PublicKey agreementKey = getServerAgreementKey();
+        if (agreementKey != null) {
+            HybridEncryptionPackage sealed = sealWithAgreement(agreementKey, data);
+            if (sealed != null) {
+                return sealed;
+            }
+        }
+
+        byte[] aesKey = CryptoUtils.newAesKey();
+        byte[] wrappedKey = encryptForServer(aesKey);
+        if (wrappedKey == null) {
+            return null;
+        }
+        return CryptoUtils.sealHybridPackage(aesKey, wrappedKey, data);
+    }
+
+    /**
+     * Decrypt a hybrid encryption package from the server
+     * @return decrypted string data, or null on error
+     */
+    public String decryptHybridPackage(HybridEncryptionPackage encryptedPackage) {
+        if (encryptedPackage.getSessionId() != null) {
+            return openWithSession(encryptedPackage);
+        }
+
+        byte[] aesKey = unwrapKey(encryptedPackage);
+        if (aesKey == null) {
+            Log.e(TAG, "Failed to decrypt AES key");
+            return null;
+        }
+        return CryptoUtils.openHybridPayload(encryptedPackage, aesKey);
+    }
+
+    /**
+     * Open a hybrid encryption package as a stream, see {@link CryptoUtils#openHybridPackage}
+     */
+    public InputStream openHybridPackage(HybridEncryptionPackage encryptedPackage) throws GeneralSecurityException {
+        if (encryptedPackage.getSessionId() != null) {
+            return streamWithSession(encryptedPackage);
+        }
+
+        byte[] aesKey = unwrapKey(encryptedPackage);
+        if (aesKey == null) {
+            throw new GeneralSecurityException("Failed to decrypt AES key");
+        }
+        return CryptoUtils.streamHybridPayload(encryptedPackage, aesKey);
+    }
+
+    private HybridEncryptionPackage sealWithAgreement(PublicKey agreementKey, String data) {
+        try {
+            KeyPair ephemeral = EcdhHybrid.newEphemeralKeyPair();
+            byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+            byte[] aesKey = EcdhHybrid.deriveKey(
+                    ephemeral.getPrivate(), agreementKey, ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+            byte[] iv = CryptoUtils.newIv();
+            byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+            byte[] sealed = CryptoUtils.encryptAesGcm(new SecretKeySpec(aesKey, "AES"), iv, null, plain, 0, plain.length);
+            return HybridEncryptionPackage.forAgreement(
+                    Base64.encodeToString(ephemeralKey, Base64.NO_WRAP),
+                    Base64.encodeToString(iv, Base64.NO_WRAP),
+                    CryptoUtils.encodeCiphertext(sealed),
+                    CryptoUtils.encodeTag(sealed));
+        } catch (Exception e) {
+            Log.e(TAG, "Error encrypting with agreed key", e);
+            return null;
+        }
+    }
+
+    private HybridEncryptionPackage sealWithSession(SessionKey session, String data) {
+        byte[] nonce = session.nextSendNonce();
+        if (nonce == null) {
+            // Counter exhausted, the next ensureSessionKey rotates the key
+            return null;
+        }
+        try {
+            byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+            byte[] sealed = CryptoUtils.encryptAesGcm(
+                    session.key, nonce, session.associatedData, plain, 0, plain.length);
+            return HybridEncryptionPackage.forSession(
+                    session.id,
+                    Base64.encodeToString(nonce, Base64.NO_WRAP),
+                    CryptoUtils.encodeCiphertext(sealed),
+                    CryptoUtils.encodeTag(sealed));
+        } catch (Exception e) {
+            Log.e(TAG, "Error encrypting with session key", e);
+            return null;
+        }
+    }
+
+    private String openWithSession(HybridEncryptionPackage encryptedPackage) {
+        try {
+            byte[] nonce = Base64.decode(encryptedPackage.getIv(), Base64.NO_WRAP);
+            SessionKey session = acceptSession(encryptedPackage, nonce);
+            byte[] plain = CryptoUtils.decryptAesGcm(session.key, nonce, session.associatedData,
+                    Base64.decode(encryptedPackage.getEncryptedData(), Base64.NO_WRAP),
+                    Base64.decode(encryptedPackage.getAuthTag(), Base64.NO_WRAP));
+            return new String(plain, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            Log.e(TAG, "Error decrypting with session key", e);
+            return null;
+        }
+    }
+
+    private InputStream streamWithSession(HybridEncryptionPackage encryptedPackage) throws GeneralSecurityException {
+        byte[] nonce = Base64.decode(encryptedPackage.getIv(), Base64.NO_WRAP);
+        SessionKey session = acceptSession(encryptedPackage, nonce);
+        return CryptoUtils.openAesGcm(session.key, nonce, session.associatedData,
+                CryptoUtils.sealedStream(encryptedPackage));
+    }
+
+    /**
+     * Find the key of a session package and check its nonce. The nonce is recorded as seen
+     * before the tag is checked, so a forged package can at worst burn one counter value.
+     */
+    private SessionKey acceptSession(HybridEncryptionPackage encryptedPackage, byte[] nonce)
+            throws GeneralSecurityException {
+        SessionKey session = sessionWithId(encryptedPackage.getSessionId());
+        if (session == null) {
+            throw new GeneralSecurityException("Unknown session key");
+        }
+        if (!session.acceptReceiveNonce(nonce)) {
+            throw new GeneralSecurityException("Invalid or replayed session nonce");
+        }
+        return session;
+    }
+
+    private byte[] unwrapKey(HybridEncryptionPackage encryptedPackage) {
+        if (encryptedPackage.getEphemeralKey() != null) {
+            return agreeKey(encryptedPackage);
+        }
+        return decryptWithPrivateKey(Base64.decode(encryptedPackage.getEncryptedKey(), Base64.NO_WRAP));
+    }
+
+    private byte[] agreeKey(HybridEncryptionPackage encryptedPackage) {
+        try {
+            PrivateKey key = getAgreementPrivateKey();
+            if (key == null) {
+                throw new GeneralSecurityException("Agreement key not available");
+            }
+            byte[] ephemeralKey = Base64.decode(encryptedPackage.getEphemeralKey(), Base64.NO_WRAP);
+            return EcdhHybrid.deriveKey(
+                    key, EcdhHybrid.decodePublicKey(ephemeralKey), ephemeralKey, EcdhHybrid.INFO_TO_CLIENT);
+        } catch (Exception e) {
+            Log.e(TAG, "Error agreeing key", e);
+            return null;
+        }
+    }
+
+    private Cipher serverCipher() throws GeneralSecurityException {
+        int currentGeneration;
+        PublicKey key;
+        synchronized (this) {
+            currentGeneration = generation;
+            key = getServerPublicKey();
+        }
+        if (key == null) {
+            throw new GeneralSecurityException("Server public key not available");
+        }
+        return boundCipher(serverEncryptCipher, Cipher.ENCRYPT_MODE, key, currentGeneration);
+    }
+
+    private Cipher privateCipher() throws GeneralSecurityException {
+        int currentGeneration;
+        PrivateKey key;
+        synchronized (this) {
+            currentGeneration = generation;
+            key = getPrivateKey();
+        }
+        if (key == null) {
+            throw new GeneralSecurityException("Private key not available");
+        }
+        return boundCipher(privateDecryptCipher, Cipher.DECRYPT_MODE, key, currentGeneration);
+    }
+
+    /**
+     * This thread's cipher for the given key, initialised again only after an invalidation.
+     * RSA ciphers return to their initialised state after doFinal, and OAEP draws fresh
+     * padding randomness on every call, so reuse is safe.
+     */
+    private static Cipher boundCipher(ThreadLocal<BoundCipher> cache, int mode, Key key, int generation)
+            throws GeneralSecurityException {
+        BoundCipher bound = cache.get();
+        if (bound == null || bound.generation != generation) {
+            Cipher cipher = Cipher.getInstance(RSA_TRANSFORMATION);
+            cipher.init(mode, key, CryptoUtils.OAEP_PARAMS, RANDOM);
+            bound = new BoundCipher(cipher, generation);
+            cache.set(bound);
+        }
+        return bound.cipher;
+    }
+
+    private static class BoundCipher {
+        final Cipher cipher;
+        final int generation;
+
+        BoundCipher(Cipher cipher, int generation) {
+            this.cipher = cipher;
+            this.generation = generation;
+        }
+    }
+}
@@ -6,18 +6,22 @@ import android.util.Log;
 
 import com.example.home_server_frontend.api.models.HybridEncryptionPackage;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
+import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.OAEPParameterSpec;
@@ -25,13 +29,29 @@ import javax.crypto.spec.PSource;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
- * Utilities for encryption and decryption operations
+ * Utilities for encryption and decryption operations.
+ *
+ * The AES-GCM core works on byte arrays and ByteBuffers with the 16-byte tag appended to the
+ * ciphertext, so results can go to OkHttp or okio as they are and output may overwrite input.
+ * Base64 is only applied where the JSON protocol needs it, when a {@link HybridEncryptionPackage}
+ * is built or read; the String methods remain for the UI code that works with Base64 anyway.
  */
 public class CryptoUtils {
     private static final String TAG = "CryptoUtils";
-    private static final String RSA_TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
     private static final String AES_TRANSFORMATION = "AES/GCM/NoPadding";
     private static final int GCM_AUTH_TAG_LENGTH = 128; // in bits
+    private static final int AES_KEY_LENGTH = 32; // in bytes
+
+    public static final int GCM_TAG_LENGTH = GCM_AUTH_TAG_LENGTH / 8; // in bytes
+    public static final int GCM_IV_LENGTH = 12; // in bytes
+
+    // OAEP with SHA-256, immutable and shared by every RSA operation
+    static final OAEPParameterSpec OAEP_PARAMS = new OAEPParameterSpec(
+            "SHA-256",
+            "MGF1",
+            MGF1ParameterSpec.SHA256,
+            PSource.PSpecified.DEFAULT
+    );
 
     /**
      * Convert PEM formatted public key to PublicKey object
@@ -39,6 +59,16 @@ public class CryptoUtils {
      * @return PublicKey object
      */
     public static PublicKey publicKeyFromPem(String pemKey) {
+        return publicKeyFromPem(pemKey, "RSA");
+    }
+
+    /**
+     * Convert a PEM formatted public key of the given algorithm to a PublicKey object
+     * @param pemKey PEM formatted public key
+     * @param algorithm Key algorithm, e.g. "RSA" or "EC"
+     * @return PublicKey object
+     */
+    public static PublicKey publicKeyFromPem(String pemKey, String algorithm) {
         try {
             // Strip PEM header and footer
             String keyContent = pemKey
@@ -51,7 +81,7 @@ public class CryptoUtils {
 
             // Create PublicKey
             X509EncodedKeySpec keySpec = new X509EncodedKeySpec(keyBytes);
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
             return keyFactory.generatePublic(keySpec);
 
         } catch (Exception e) {
@@ -95,17 +125,8 @@ public class CryptoUtils {
      */
     public static String encryptWithPublicKey(PublicKey publicKey, String data) {
         try {
-            Cipher cipher = Cipher.getInstance(RSA_TRANSFORMATION);
-
-            // Use OAEP with SHA-256
-            OAEPParameterSpec oaepParams = new OAEPParameterSpec(
-                    "SHA-256",
-                    "MGF1",
-                    MGF1ParameterSpec.SHA256,
-                    PSource.PSpecified.DEFAULT
-            );
-
-            cipher.init(Cipher.ENCRYPT_MODE, publicKey, oaepParams);
+            Cipher cipher = CryptoSession.rsaCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey, OAEP_PARAMS, CryptoSession.random());
             byte[] encryptedBytes = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
             return Base64.encodeToString(encryptedBytes, Base64.NO_WRAP);
 
@@ -123,17 +144,8 @@ public class CryptoUtils {
      */
     public static String decryptWithPrivateKey(PrivateKey privateKey, String encryptedData) {
         try {
-            Cipher cipher = Cipher.getInstance(RSA_TRANSFORMATION);
-
-            // Use OAEP with SHA-256
-            OAEPParameterSpec oaepParams = new OAEPParameterSpec(
-                    "SHA-256",
-                    "MGF1",
-                    MGF1ParameterSpec.SHA256,
-                    PSource.PSpecified.DEFAULT
-            );
-
-            cipher.init(Cipher.DECRYPT_MODE, privateKey, oaepParams);
+            Cipher cipher = CryptoSession.rsaCipher();
+            cipher.init(Cipher.DECRYPT_MODE, privateKey, OAEP_PARAMS);
             byte[] encryptedBytes = Base64.decode(encryptedData, Base64.NO_WRAP);
             byte[] decryptedBytes = cipher.doFinal(encryptedBytes);
             return new String(decryptedBytes, StandardCharsets.UTF_8);
@@ -144,6 +156,23 @@ public class CryptoUtils {
         }
     }
 
+    /**
+     * Low-level RSA encryption for byte arrays
+     * @param publicKey PublicKey to encrypt with
+     * @param data Plain bytes
+     * @return Encrypted bytes
+     */
+    public static byte[] encryptWithRSA(PublicKey publicKey, byte[] data) {
+        try {
+            Cipher cipher = CryptoSession.rsaCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey, OAEP_PARAMS, CryptoSession.random());
+            return cipher.doFinal(data);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in low-level RSA encryption", e);
+            return null;
+        }
+    }
+
     /**
      * Low-level RSA decryption for byte arrays
      * @param privateKey PrivateKey to decrypt with
@@ -152,11 +181,8 @@ public class CryptoUtils {
      */
     public static byte[] decryptWithRSA(PrivateKey privateKey, byte[] data) {
         try {
-            Cipher cipher = Cipher.getInstance(RSA_TRANSFORMATION);
-            OAEPParameterSpec oaepParams = new OAEPParameterSpec(
-                    "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT
-            );
-            cipher.init(Cipher.DECRYPT_MODE, privateKey, oaepParams);
+            Cipher cipher = CryptoSession.rsaCipher();
+            cipher.init(Cipher.DECRYPT_MODE, privateKey, OAEP_PARAMS);
             return cipher.doFinal(data);
         } catch (Exception e) {
             Log.e(TAG, "Error in low-level RSA decryption", e);
@@ -169,14 +195,16 @@ public class CryptoUtils {
      * @return AES SecretKey
      */
     public static SecretKey generateAESKey() {
-        try {
-            KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-            keyGen.init(256);
-            return keyGen.generateKey();
-        } catch (Exception e) {
-            Log.e(TAG, "Error generating AES key", e);
-            return null;
-        }
+        return new SecretKeySpec(newAesKey(), "AES");
+    }
+
+    /**
+     * Fresh 256-bit AES key bytes from the shared SecureRandom
+     */
+    static byte[] newAesKey() {
+        byte[] key = new byte[AES_KEY_LENGTH];
+        CryptoSession.random().nextBytes(key);
+        return key;
     }
 
     /**
@@ -188,27 +216,14 @@ public class CryptoUtils {
     public static AESEncryptionResult encryptWithAES(SecretKey key, String data) {
         try {
             // Generate random IV
-            byte[] iv = new byte[12]; // 12 bytes IV for GCM
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-
-            // Initialize cipher
-            Cipher cipher = Cipher.getInstance(AES_TRANSFORMATION);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_AUTH_TAG_LENGTH, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec);
-
-            // Encrypt
-            byte[] encryptedBytes = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
-
-            // Extract auth tag (last 16 bytes)
-            int tagLength = GCM_AUTH_TAG_LENGTH / 8; // Convert from bits to bytes
-            byte[] ciphertext = Arrays.copyOfRange(encryptedBytes, 0, encryptedBytes.length - tagLength);
-            byte[] authTag = Arrays.copyOfRange(encryptedBytes, encryptedBytes.length - tagLength, encryptedBytes.length);
+            byte[] iv = newIv();
+            byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+            byte[] sealed = encryptAesGcm(key, iv, null, plain, 0, plain.length);
 
             return new AESEncryptionResult(
-                    Base64.encodeToString(ciphertext, Base64.NO_WRAP),
+                    encodeCiphertext(sealed),
                     Base64.encodeToString(iv, Base64.NO_WRAP),
-                    Base64.encodeToString(authTag, Base64.NO_WRAP)
+                    encodeTag(sealed)
             );
         } catch (Exception e) {
             Log.e(TAG, "Error encrypting with AES", e);
@@ -226,23 +241,12 @@ public class CryptoUtils {
      */
     public static String decryptWithAES(SecretKey key, String ivBase64, String encryptedDataBase64, String authTagBase64) {
         try {
-            // Decode from Base64
-            byte[] iv = Base64.decode(ivBase64, Base64.NO_WRAP);
-            byte[] encryptedData = Base64.decode(encryptedDataBase64, Base64.NO_WRAP);
-            byte[] authTag = Base64.decode(authTagBase64, Base64.NO_WRAP);
-
-            // Combine ciphertext and auth tag
-            byte[] combined = new byte[encryptedData.length + authTag.length];
-            System.arraycopy(encryptedData, 0, combined, 0, encryptedData.length);
-            System.arraycopy(authTag, 0, combined, encryptedData.length, authTag.length);
-
-            // Initialize cipher
-            Cipher cipher = Cipher.getInstance(AES_TRANSFORMATION);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_AUTH_TAG_LENGTH, iv);
-            cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
-
-            // Decrypt
-            byte[] decryptedData = cipher.doFinal(combined);
+            // Decode from Base64, ciphertext and tag stay separate
+            byte[] decryptedData = decryptAesGcm(key,
+                    Base64.decode(ivBase64, Base64.NO_WRAP),
+                    null,
+                    Base64.decode(encryptedDataBase64, Base64.NO_WRAP),
+                    Base64.decode(authTagBase64, Base64.NO_WRAP));
             return new String(decryptedData, StandardCharsets.UTF_8);
         } catch (Exception e) {
             Log.e(TAG, "Error decrypting with AES", e);
@@ -250,6 +254,182 @@ public class CryptoUtils {
         }
     }
 
+    /**
+     * Fresh random IV for AES-GCM with a random or single-use key
+     */
+    public static byte[] newIv() {
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        CryptoSession.random().nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * Size of ciphertext plus tag for a plaintext of the given size
+     */
+    public static int sealedLength(int plainLength) {
+        return plainLength + GCM_TAG_LENGTH;
+    }
+
+    /**
+     * Encrypt with AES-GCM into a new array
+     * @param key AES key
+     * @param iv IV, must never repeat under the same key
+     * @param aad Associated data, or null
+     * @return ciphertext followed by the tag, {@link #sealedLength} bytes
+     */
+    public static byte[] encryptAesGcm(SecretKey key, byte[] iv, byte[] aad, byte[] plain, int offset, int length)
+            throws GeneralSecurityException {
+        byte[] sealed = new byte[sealedLength(length)];
+        encryptAesGcm(key, iv, aad, plain, offset, length, sealed, 0);
+        return sealed;
+    }
+
+    /**
+     * Encrypt with AES-GCM into a caller's buffer. Input and output may be the same array,
+     * as long as the output has room for the tag behind the ciphertext.
+     * @return number of bytes written, {@link #sealedLength} of the input
+     */
+    public static int encryptAesGcm(SecretKey key, byte[] iv, byte[] aad, byte[] plain, int offset, int length,
+                                    byte[] out, int outOffset) throws GeneralSecurityException {
+        Cipher cipher = initAesGcm(Cipher.ENCRYPT_MODE, key, iv, aad);
+        return cipher.doFinal(plain, offset, length, out, outOffset);
+    }
+
+    /**
+     * Encrypt with AES-GCM between ByteBuffers, e.g. direct buffers handed to a socket.
+     * Consumes the remaining input and advances the output position.
+     * @return number of bytes written
+     */
+    public static int encryptAesGcm(SecretKey key, byte[] iv, byte[] aad, ByteBuffer plain, ByteBuffer out)
+            throws GeneralSecurityException {
+        Cipher cipher = initAesGcm(Cipher.ENCRYPT_MODE, key, iv, aad);
+        return cipher.doFinal(plain, out);
+    }
+
+    /**
+     * Decrypt AES-GCM ciphertext followed by its tag into a new array
+     * @throws javax.crypto.AEADBadTagException if the data was corrupted or forged
+     */
+    public static byte[] decryptAesGcm(SecretKey key, byte[] iv, byte[] aad, byte[] sealed, int offset, int length)
+            throws GeneralSecurityException {
+        Cipher cipher = initAesGcm(Cipher.DECRYPT_MODE, key, iv, aad);
+        return cipher.doFinal(sealed, offset, length);
+    }
+
+    /**
+     * Decrypt AES-GCM ciphertext and tag that arrive separately, as in a hybrid package,
+     * without joining them first
+     * @throws javax.crypto.AEADBadTagException if the data was corrupted or forged
+     */
+    public static byte[] decryptAesGcm(SecretKey key, byte[] iv, byte[] aad, byte[] ciphertext, byte[] tag)
+            throws GeneralSecurityException {
+        Cipher cipher = initAesGcm(Cipher.DECRYPT_MODE, key, iv, aad);
+        byte[] plain = new byte[ciphertext.length];
+        // Most providers hold back all plaintext until the tag checks out, some release it early
+        int length = cipher.update(ciphertext, 0, ciphertext.length, plain, 0);
+        length += cipher.doFinal(tag, 0, tag.length, plain, length);
+        return length == plain.length ? plain : Arrays.copyOf(plain, length);
+    }
+
+    /**
+     * Decrypt AES-GCM between ByteBuffers. Consumes the remaining input, ciphertext followed by
+     * the tag, and advances the output position.
+     * @return number of bytes written
+     * @throws javax.crypto.AEADBadTagException if the data was corrupted or forged
+     */
+    public static int decryptAesGcm(SecretKey key, byte[] iv, byte[] aad, ByteBuffer sealed, ByteBuffer out)
+            throws GeneralSecurityException {
+        Cipher cipher = initAesGcm(Cipher.DECRYPT_MODE, key, iv, aad);
+        return cipher.doFinal(sealed, out);
+    }
+
+    /**
+     * Decrypt a stream of AES-GCM ciphertext followed by its tag while it is read.
+     *
+     * A corrupted or forged payload fails when the end of the stream is reached, which may be
+     * after earlier plaintext was returned: callers must not commit anything read from the
+     * stream before reaching its end.
+     */
+    public static InputStream openAesGcm(SecretKey key, byte[] iv, byte[] aad, InputStream sealed)
+            throws GeneralSecurityException {
+        // Own instance: the stream outlives this call, a per-thread cipher could be re-initialised under it
+        Cipher cipher = Cipher.getInstance(AES_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_AUTH_TAG_LENGTH, iv));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return new CipherInputStream(sealed, cipher);
+    }
+
+    private static Cipher initAesGcm(int mode, SecretKey key, byte[] iv, byte[] aad) throws GeneralSecurityException {
+        Cipher cipher = CryptoSession.aesGcmCipher();
+        cipher.init(mode, key, new GCMParameterSpec(GCM_AUTH_TAG_LENGTH, iv));
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+        return cipher;
+    }
+
+    /**
+     * Base64 of the ciphertext part of an AES-GCM result, for the JSON protocol
+     */
+    static String encodeCiphertext(byte[] sealed) {
+        return Base64.encodeToString(sealed, 0, sealed.length - GCM_TAG_LENGTH, Base64.NO_WRAP);
+    }
+
+    /**
+     * Base64 of the tag part of an AES-GCM result, for the JSON protocol
+     */
+    static String encodeTag(byte[] sealed) {
+        return Base64.encodeToString(sealed, sealed.length - GCM_TAG_LENGTH, GCM_TAG_LENGTH, Base64.NO_WRAP);
+    }
+
+    /**
+     * Ciphertext and tag of a hybrid package as one stream, read without joining them. Both
+     * are decoded into memory first; the package already holds them as Base64 Strings.
+     */
+    static InputStream sealedStream(HybridEncryptionPackage encryptedPackage) {
+        return new SequenceInputStream(
+                new ByteArrayInputStream(Base64.decode(encryptedPackage.getEncryptedData(), Base64.NO_WRAP)),
+                new ByteArrayInputStream(Base64.decode(encryptedPackage.getAuthTag(), Base64.NO_WRAP)));
+    }
+
+    /**
+     * Encrypt data of any length for the server: AES-GCM with a fresh key, the key wrapped with RSA
+     * @param publicKey Server's public key
+     * @param data String data to encrypt
+     * @return Hybrid encryption package, or null on error
+     */
+    public static HybridEncryptionPackage encryptHybridPackage(PublicKey publicKey, String data) {
+        byte[] aesKey = newAesKey();
+        byte[] encryptedKey = encryptWithRSA(publicKey, aesKey);
+        if (encryptedKey == null) {
+            return null;
+        }
+        return sealHybridPackage(aesKey, encryptedKey, data);
+    }
+
+    /**
+     * Build a hybrid package from an AES key and the same key already wrapped for the server
+     * @return Hybrid encryption package, or null on error
+     */
+    static HybridEncryptionPackage sealHybridPackage(byte[] aesKey, byte[] encryptedKey, String data) {
+        try {
+            byte[] iv = newIv();
+            byte[] plain = data.getBytes(StandardCharsets.UTF_8);
+            byte[] sealed = encryptAesGcm(new SecretKeySpec(aesKey, "AES"), iv, null, plain, 0, plain.length);
+            return new HybridEncryptionPackage(
+                    Base64.encodeToString(encryptedKey, Base64.NO_WRAP),
+                    Base64.encodeToString(iv, Base64.NO_WRAP),
+                    encodeCiphertext(sealed),
+                    encodeTag(sealed)
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "Error creating hybrid package", e);
+            return null;
+        }
+    }
+
     /**
      * Decrypt a hybrid encryption package
      * @param encryptedPackage Hybrid encryption package from server
@@ -266,23 +446,59 @@ public class CryptoUtils {
                 Log.e(TAG, "Failed to decrypt AES key");
                 return null;
             }
-
-            // Create AES key from bytes
-            SecretKey aesKey = new SecretKeySpec(aesKeyBytes, "AES");
-
-            // Decrypt the data with AES
-            return decryptWithAES(
-                    aesKey,
-                    encryptedPackage.getIv(),
-                    encryptedPackage.getEncryptedData(),
-                    encryptedPackage.getAuthTag()
-            );
+            return openHybridPayload(encryptedPackage, aesKeyBytes);
         } catch (Exception e) {
             Log.e(TAG, "Error decrypting hybrid package", e);
             return null;
         }
     }
 
+    /**
+     * Decrypt the AES part of a hybrid package whose key was already unwrapped
+     * @return Decrypted string data, or null on error
+     */
+    static String openHybridPayload(HybridEncryptionPackage encryptedPackage, byte[] aesKey) {
+        return decryptWithAES(
+                new SecretKeySpec(aesKey, "AES"),
+                encryptedPackage.getIv(),
+                encryptedPackage.getEncryptedData(),
+                encryptedPackage.getAuthTag()
+        );
+    }
+
+    /**
+     * Open a hybrid encryption package as a stream of plaintext, so a large payload is parsed
+     * without being decrypted into one String. The ciphertext is decoded into memory first,
+     * only the plaintext is streamed.
+     *
+     * A corrupted or forged payload fails when the end of the stream is reached, which may be
+     * after earlier plaintext was returned: callers must not commit anything read from the
+     * stream before reaching its end.
+     * @param encryptedPackage Hybrid encryption package from server
+     * @param privateKey Client's private key
+     * @return stream of decrypted bytes
+     */
+    public static InputStream openHybridPackage(HybridEncryptionPackage encryptedPackage, PrivateKey privateKey)
+            throws GeneralSecurityException {
+        byte[] encryptedKeyBytes = Base64.decode(encryptedPackage.getEncryptedKey(), Base64.NO_WRAP);
+        byte[] aesKeyBytes = decryptWithRSA(privateKey, encryptedKeyBytes);
+        if (aesKeyBytes == null) {
+            throw new GeneralSecurityException("Failed to decrypt AES key");
+        }
+        return streamHybridPayload(encryptedPackage, aesKeyBytes);
+    }
+
+    /**
+     * Stream the AES part of a hybrid package whose key was already unwrapped
+     */
+    static InputStream streamHybridPayload(HybridEncryptionPackage encryptedPackage, byte[] aesKeyBytes)
+            throws GeneralSecurityException {
+        return openAesGcm(new SecretKeySpec(aesKeyBytes, "AES"),
+                Base64.decode(encryptedPackage.getIv(), Base64.NO_WRAP),
+                null,
+                sealedStream(encryptedPackage));
+    }
+
     /**
      * Result class for AES encryption
      */
@@ -0,0 +1,129 @@
+package com.example.home_server_frontend.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ECDH key agreement as the faster alternative to wrapping the AES key of a hybrid package
+ * with RSA-2048 OAEP.
+ *
+ * The sender of a package creates an ephemeral P-256 key pair, agrees a secret with the
+ * recipient's static P-256 key and sends its ephemeral public key along. Both sides derive the
+ * AES-256 key with HKDF-SHA256, salted with the ephemeral public key and with a different info
+ * string per direction, so a key derived for one direction never opens the other.
+ */
+public class EcdhHybrid {
+    /**
+     * Name of this mode in register-client-key
+     */
+    public static final String ALGORITHM = "ECDH-P256-HKDF-SHA256";
+
+    static final byte[] INFO_TO_SERVER = "home-server hybrid v1 client to server".getBytes(StandardCharsets.UTF_8);
+    static final byte[] INFO_TO_CLIENT = "home-server hybrid v1 server to client".getBytes(StandardCharsets.UTF_8);
+
+    private static final String CURVE = "secp256r1";
+    private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
+    private static final int KEY_LENGTH = 32;
+    private static final int HASH_LENGTH = 32;
+
+    // getInstance walks the provider list, keep one of each per thread
+    private static final ThreadLocal<KeyPairGenerator> KEY_PAIR_GENERATOR = new ThreadLocal<>();
+    private static final ThreadLocal<KeyAgreement> SOFTWARE_AGREEMENT = new ThreadLocal<>();
+    private static final ThreadLocal<KeyAgreement> KEYSTORE_AGREEMENT = new ThreadLocal<>();
+
+    /**
+     * Fresh software key pair for one message to the server
+     */
+    static KeyPair newEphemeralKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KEY_PAIR_GENERATOR.get();
+        if (generator == null) {
+            generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(CURVE), CryptoSession.random());
+            KEY_PAIR_GENERATOR.set(generator);
+        }
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Parse an X.509 encoded EC public key, e.g. the ephemeral key of a package
+     */
+    static PublicKey decodePublicKey(byte[] encoded) throws GeneralSecurityException {
+        return KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    /**
+     * Derive the AES key of a package
+     * @param privateKey Own key, a Keystore handle or a software ephemeral key
+     * @param peerKey Other side's public key
+     * @param ephemeralKey Encoded ephemeral public key carried by the package, salts the derivation
+     * @param info {@link #INFO_TO_SERVER} or {@link #INFO_TO_CLIENT}
+     * @return raw AES-256 key
+     */
+    static byte[] deriveKey(PrivateKey privateKey, PublicKey peerKey, byte[] ephemeralKey, byte[] info)
+            throws GeneralSecurityException {
+        KeyAgreement agreement = agreementFor(privateKey);
+        agreement.init(privateKey);
+        agreement.doPhase(peerKey, true);
+        byte[] secret = agreement.generateSecret();
+        try {
+            return hkdfSha256(ephemeralKey, secret, info, KEY_LENGTH);
+        } finally {
+            Arrays.fill(secret, (byte) 0);
+        }
+    }
+
+    /**
+     * HKDF with HMAC-SHA256 (RFC 5869)
+     * @param salt Optional salt, may be empty
+     * @param inputKey Input keying material
+     * @param info Context that binds the output to its use
+     * @param length Output length in bytes, at most 255 hash lengths
+     */
+    public static byte[] hkdfSha256(byte[] salt, byte[] inputKey, byte[] info, int length)
+            throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(salt.length > 0 ? salt : new byte[HASH_LENGTH], "HmacSHA256"));
+        byte[] pseudoRandomKey = mac.doFinal(inputKey);
+
+        mac.init(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"));
+        byte[] output = new byte[length];
+        byte[] block = new byte[0];
+        for (int offset = 0, counter = 1; offset < length; counter++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) counter);
+            block = mac.doFinal();
+            int count = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, output, offset, count);
+            offset += count;
+        }
+        Arrays.fill(pseudoRandomKey, (byte) 0);
+        return output;
+    }
+
+    private static KeyAgreement agreementFor(PrivateKey privateKey) throws GeneralSecurityException {
+        // Keystore keys have no exportable material, only the Keystore provider can use them
+        boolean keystoreKey = privateKey.getEncoded() == null;
+        ThreadLocal<KeyAgreement> cache = keystoreKey ? KEYSTORE_AGREEMENT : SOFTWARE_AGREEMENT;
+        KeyAgreement agreement = cache.get();
+        if (agreement == null) {
+            agreement = keystoreKey
+                    ? KeyAgreement.getInstance("ECDH", KEYSTORE_PROVIDER)
+                    : KeyAgreement.getInstance("ECDH");
+            cache.set(agreement);
+        }
+        return agreement;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.home_server_frontend.crypto;
 
 import android.content.Context;
+import android.os.Build;
 import android.security.keystore.KeyGenParameterSpec;
 import android.security.keystore.KeyProperties;
 import android.util.Base64;
@@ -17,18 +18,27 @@ import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.MGF1ParameterSpec;
 
 import javax.security.auth.x500.X500Principal;
 
 /**
- * Manages RSA key generation, storage and retrieval using Android Keystore
+ * Manages RSA key generation, storage and retrieval using Android Keystore.
+ *
+ * On Android 12 and later there is also an EC P-256 key for ECDH key agreement, which the
+ * server uses instead of RSA once it has accepted it through register-client-key.
  */
 public class KeyManager {
     private static final String TAG = "KeyManager";
     private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
     private static final String KEY_ALIAS = "SecureAppRSAKey";
     private static final String SERVER_KEY_PREF = "server_public_key";
+    private static final String AGREEMENT_KEY_ALIAS = "SecureAppECKey";
+    private static final String SERVER_AGREEMENT_KEY_PREF = "server_agreement_key";
+
+    // Loading the Keystore is an IPC to the keystore daemon, once per process is enough
+    private static KeyStore keyStore;
 
     private final Context context;
 
@@ -36,6 +46,16 @@ public class KeyManager {
         this.context = context;
     }
 
+    private static synchronized KeyStore loadKeyStore()
+            throws KeyStoreException, CertificateException, NoSuchAlgorithmException, IOException {
+        if (keyStore == null) {
+            KeyStore loaded = KeyStore.getInstance(KEYSTORE_PROVIDER);
+            loaded.load(null);
+            keyStore = loaded;
+        }
+        return keyStore;
+    }
+
     /**
      * Generate an RSA key pair if it doesn't exist
      * @return true if successful, false otherwise
@@ -43,8 +63,7 @@ public class KeyManager {
     public boolean generateKeyPairIfNeeded() {
         try {
             // Check if key already exists
-            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
-            keyStore.load(null);
+            KeyStore keyStore = loadKeyStore();
 
             if (keyStore.containsAlias(KEY_ALIAS)) {
                 Log.d(TAG, "Key pair already exists");
@@ -69,6 +88,7 @@ public class KeyManager {
             keyPairGenerator.initialize(keyGenParameterSpec);
             KeyPair keyPair = keyPairGenerator.generateKeyPair();
 
+            CryptoSession.getInstance(context).invalidate();
             Log.d(TAG, "Key pair generated successfully");
             return true;
 
@@ -79,14 +99,94 @@ public class KeyManager {
         }
     }
 
+    /**
+     * Whether the Keystore can do ECDH with its own keys, which needs Android 12
+     */
+    public static boolean isKeyAgreementSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S;
+    }
+
+    /**
+     * Generate the EC key for key agreement if it doesn't exist
+     * @return true if the key exists, false if it is not supported or could not be created
+     */
+    public boolean generateAgreementKeyIfNeeded() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return false;
+        }
+        try {
+            KeyStore keyStore = loadKeyStore();
+            if (keyStore.containsAlias(AGREEMENT_KEY_ALIAS)) {
+                return true;
+            }
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(
+                    KeyProperties.KEY_ALGORITHM_EC, KEYSTORE_PROVIDER);
+            keyPairGenerator.initialize(new KeyGenParameterSpec.Builder(
+                    AGREEMENT_KEY_ALIAS,
+                    KeyProperties.PURPOSE_AGREE_KEY)
+                    .setAlgorithmParameterSpec(new ECGenParameterSpec("secp256r1"))
+                    .build());
+            keyPairGenerator.generateKeyPair();
+
+            CryptoSession.getInstance(context).invalidate();
+            Log.d(TAG, "Agreement key generated successfully");
+            return true;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating agreement key", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the device's key agreement public key in PEM format
+     * @return Public key as a PEM string, or null if there is none
+     */
+    public String getAgreementPublicKeyPem() {
+        if (!isKeyAgreementSupported()) {
+            return null;
+        }
+        try {
+            KeyStore keyStore = loadKeyStore();
+            if (!keyStore.containsAlias(AGREEMENT_KEY_ALIAS)) {
+                return null;
+            }
+            PublicKey publicKey = keyStore.getCertificate(AGREEMENT_KEY_ALIAS).getPublicKey();
+            return "-----BEGIN PUBLIC KEY-----\n" +
+                    Base64.encodeToString(publicKey.getEncoded(), Base64.NO_WRAP) +
+                    "\n-----END PUBLIC KEY-----";
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting agreement public key", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the device's key agreement private key
+     * @return PrivateKey object, or null if there is none
+     */
+    public PrivateKey getAgreementPrivateKey() {
+        if (!isKeyAgreementSupported()) {
+            return null;
+        }
+        try {
+            return (PrivateKey) loadKeyStore().getKey(AGREEMENT_KEY_ALIAS, null);
+
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting agreement private key", e);
+            return null;
+        }
+    }
+
     /**
      * Get the device's public key in PEM format
      * @return Public key as a PEM string, or null if error
      */
     public String getPublicKeyPem() {
         try {
-            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
-            keyStore.load(null);
+            KeyStore keyStore = loadKeyStore();
 
             PublicKey publicKey = keyStore.getCertificate(KEY_ALIAS).getPublicKey();
             byte[] publicKeyBytes = publicKey.getEncoded();
@@ -108,8 +208,7 @@ public class KeyManager {
      */
     public PrivateKey getPrivateKey() {
         try {
-            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
-            keyStore.load(null);
+            KeyStore keyStore = loadKeyStore();
 
             return (PrivateKey) keyStore.getKey(KEY_ALIAS, null);
 
@@ -129,9 +228,32 @@ public class KeyManager {
                 .putString(SERVER_KEY_PREF, serverPublicKey)
                 .apply();
 
+        CryptoSession.getInstance(context).invalidate();
         Log.d(TAG, "Server public key stored");
     }
 
+    /**
+     * Store the server's key agreement public key, or forget it if the server declined ECDH
+     * @param serverAgreementKey Server's EC public key in PEM format, or null
+     */
+    public void storeServerAgreementKey(String serverAgreementKey) {
+        context.getSharedPreferences("secure_app_prefs", Context.MODE_PRIVATE)
+                .edit()
+                .putString(SERVER_AGREEMENT_KEY_PREF, serverAgreementKey)
+                .apply();
+
+        CryptoSession.getInstance(context).invalidate();
+    }
+
+    /**
+     * Get the server's key agreement public key from preferences
+     * @return Server's EC public key in PEM format, or null if ECDH was not negotiated
+     */
+    public String getServerAgreementKey() {
+        return context.getSharedPreferences("secure_app_prefs", Context.MODE_PRIVATE)
+                .getString(SERVER_AGREEMENT_KEY_PREF, null);
+    }
+
     /**
      * Get the server's public key from preferences
      * @return Server's public key in PEM format, or null if not found
@@ -0,0 +1,89 @@
+package com.example.home_server_frontend.crypto;
+
+import java.nio.ByteBuffer;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Segment format used to encrypt image bodies while they are streamed to the server.
+ *
+ * The plaintext is split into fixed-size segments of {@link #SEGMENT_SIZE} bytes (the last one
+ * may be shorter, an empty file still produces one empty segment). Every segment is sealed on its
+ * own with AES-256-GCM, so segment i starts at byte i * {@link #ENCRYPTED_SEGMENT_SIZE} of the
+ * ciphertext and can be decrypted without reading any other segment.
+ *
+ * The 12-byte nonce of a segment is: 7-byte random prefix | 4-byte big-endian segment index |
+ * 1-byte flag set to 1 on the last segment. Binding the index and the last-segment flag into the
+ * nonce means reordered, dropped or truncated segments fail authentication.
+ */
+public class SegmentedAesGcm {
+    public static final String ALGORITHM = "AES-256-GCM-SEGMENTED";
+    public static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    public static final int TAG_LENGTH = 16; // in bytes
+    public static final int ENCRYPTED_SEGMENT_SIZE = SEGMENT_SIZE + TAG_LENGTH;
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int NONCE_LENGTH = 12;
+    private static final int KEY_LENGTH = 32;
+
+    /**
+     * Generate a fresh per-file AES-256 key
+     * @return raw key bytes
+     */
+    public static byte[] newFileKey() {
+        byte[] key = new byte[KEY_LENGTH];
+        CryptoSession.random().nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Generate a fresh random nonce prefix for a file
+     * @return prefix bytes
+     */
+    public static byte[] newNoncePrefix() {
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        CryptoSession.random().nextBytes(prefix);
+        return prefix;
+    }
+
+    public static SecretKey keyFromBytes(byte[] key) {
+        return new SecretKeySpec(key, "AES");
+    }
+
+    /**
+     * Number of segments a plaintext of the given length is split into
+     * @param plainLength Plaintext length in bytes
+     * @return segment count, at least 1
+     */
+    public static long segmentCount(long plainLength) {
+        if (plainLength == 0) {
+            return 1;
+        }
+        return (plainLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+    }
+
+    /**
+     * Length of the ciphertext stream for a plaintext of the given length
+     * @param plainLength Plaintext length in bytes
+     * @return ciphertext length in bytes
+     */
+    public static long encryptedLength(long plainLength) {
+        return plainLength + segmentCount(plainLength) * TAG_LENGTH;
+    }
+
+    /**
+     * Build the nonce of one segment
+     * @param noncePrefix Per-file random prefix
+     * @param segmentIndex Zero-based segment index
+     * @param lastSegment Whether this is the final segment of the file
+     * @return 12-byte GCM nonce
+     */
+    public static byte[] segmentNonce(byte[] noncePrefix, long segmentIndex, boolean lastSegment) {
+        return ByteBuffer.allocate(NONCE_LENGTH)
+                .put(noncePrefix, 0, NONCE_PREFIX_LENGTH)
+                .putInt((int) segmentIndex)
+                .put((byte) (lastSegment ? 1 : 0))
+                .array();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.home_server_frontend.crypto;
+
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Symmetric key shared with the server for one session, with the nonce state that goes with it.
+ *
+ * GCM nonces are never random here: each one is a 4-byte direction field followed by an 8-byte
+ * big-endian message counter. The client counts its own messages, so a nonce can never repeat
+ * under one key, and rejects server messages that reuse a counter it has already accepted, with
+ * a sliding window because concurrent responses arrive out of order. The key only lives in
+ * memory, so a new process never continues a counter of an earlier one.
+ */
+class SessionKey {
+    static final int NONCE_LENGTH = 12;
+    static final int CLIENT_TO_SERVER = 1;
+    static final int SERVER_TO_CLIENT = 2;
+
+    // Far below the GCM limit for one key, the session is rotated long before
+    static final long MAX_MESSAGES = 1L << 32;
+    static final int REPLAY_WINDOW = 64;
+
+    final String id;
+    final SecretKey key;
+    final byte[] associatedData;
+    private final long expiresAt;
+    private final AtomicLong sendCounter = new AtomicLong();
+
+    // Guarded by this
+    private long highestReceived = -1;
+    private long receivedMask;
+
+    /**
+     * @param id Session id chosen by the server
+     * @param key Raw AES-256 key
+     * @param lifetimeMs Time from now after which the key is no longer used
+     */
+    SessionKey(String id, byte[] key, long lifetimeMs) {
+        this(id, key, lifetimeMs, 0);
+    }
+
+    /**
+     * @param firstCounter Counter of the first message to the server, only tests start past 0
+     */
+    SessionKey(String id, byte[] key, long lifetimeMs, long firstCounter) {
+        this.id = id;
+        this.key = new SecretKeySpec(key, "AES");
+        this.associatedData = id.getBytes(StandardCharsets.UTF_8);
+        this.expiresAt = SystemClock.elapsedRealtime() + lifetimeMs;
+        sendCounter.set(firstCounter);
+    }
+
+    /**
+     * Whether the key may still be used for new messages
+     */
+    boolean isUsable() {
+        return SystemClock.elapsedRealtime() < expiresAt && sendCounter.get() < MAX_MESSAGES;
+    }
+
+    /**
+     * Nonce for the next message to the server
+     * @return the nonce, or null if the key has sent all the messages it may
+     */
+    byte[] nextSendNonce() {
+        long counter = sendCounter.getAndIncrement();
+        if (counter >= MAX_MESSAGES) {
+            return null;
+        }
+        return ByteBuffer.allocate(NONCE_LENGTH).putInt(CLIENT_TO_SERVER).putLong(counter).array();
+    }
+
+    /**
+     * Check the nonce of a message from the server and record its counter as seen
+     * @return false if the nonce is malformed, from the wrong direction, or already used
+     */
+    synchronized boolean acceptReceiveNonce(byte[] nonce) {
+        if (nonce.length != NONCE_LENGTH) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(nonce);
+        if (buffer.getInt() != SERVER_TO_CLIENT) {
+            return false;
+        }
+        long counter = buffer.getLong();
+        if (counter < 0 || counter >= MAX_MESSAGES) {
+            return false;
+        }
+
+        if (counter > highestReceived) {
+            long shift = counter - highestReceived;
+            receivedMask = shift >= REPLAY_WINDOW ? 0 : receivedMask << shift;
+            receivedMask |= 1;
+            highestReceived = counter;
+            return true;
+        }
+        long age = highestReceived - counter;
+        if (age >= REPLAY_WINDOW || (receivedMask & (1L << age)) != 0) {
+            return false;
+        }
+        receivedMask |= 1L << age;
+        return true;
+    }
+}
@@ -6,20 +6,22 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 
-@Database(entities = {ImageEntity.class}, version = 1, exportSchema = false)
+@Database(entities = {ImageEntity.class, UploadQueueEntry.class}, version = 11, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
     private static final String DATABASE_NAME = "home_server_db";
     private static AppDatabase instance;
 
     public abstract ImageDao imageDao();
 
+    public abstract UploadQueueDao uploadQueueDao();
+
     public static synchronized AppDatabase getInstance(Context context) {
         if (instance == null) {
             instance = Room.databaseBuilder(
                             context.getApplicationContext(),
                             AppDatabase.class,
                             DATABASE_NAME)
-                    .fallbackToDestructiveMigration()
+                    .addMigrations(Migrations.ALL)
                     .build();
         }
         return instance;
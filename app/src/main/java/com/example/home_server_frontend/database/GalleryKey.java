@@ -0,0 +1,9 @@
+package com.example.home_server_frontend.database;
+
+/**
+ * Position of an image in gallery order (updatedTime DESC, id DESC)
+ */
+public class GalleryKey {
+    public long updatedTime;
+    public long id;
+}
@@ -0,0 +1,14 @@
+package com.example.home_server_frontend.database;
+
+/**
+ * The columns a gallery cell needs, read instead of the full image row
+ */
+public class GalleryRow {
+    public long id;
+    public long updatedTime;
+    public int status;
+    // MediaStore id of a local image, -1 for images that only exist on the server
+    public long mediaId;
+    // Only set for images that only exist on the server, local ones show a thumbnail
+    public String remoteUrl;
+}
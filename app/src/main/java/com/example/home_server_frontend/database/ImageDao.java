@@ -19,15 +19,42 @@ public interface ImageDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     Single<Long> insertImage(ImageEntity image);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    /**
+     * Insert a chunk of images in one transaction, skipping rows that match an existing image
+     * on a unique index
+     * @return row ids, -1 for each skipped image
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
     Single<List<Long>> insertAllImage(List<ImageEntity> images);
 
     @Query("UPDATE images SET status = :toStatus WHERE status=:fromStatus")
-    Completable updateAllRowsToStatus(String fromStatus, String toStatus);
+    Completable updateAllRowsToStatus(int fromStatus, int toStatus);
+
+    /**
+     * Like updateAllRowsToStatus, but leaves images the user queued by hand where they are
+     */
+    @Query("UPDATE images SET status = :toStatus WHERE status = :fromStatus AND id NOT IN " +
+            "(SELECT imageRowId FROM upload_queue WHERE priority > :normalPriority)")
+    Completable updateBackupRowsToStatus(int fromStatus, int toStatus, int normalPriority);
+
+    /**
+     * Insert images from the server list, skipping rows that match an existing image on a
+     * unique index
+     * @return row ids, -1 for each skipped image
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    List<Long> insertServerImages(List<ImageEntity> images);
 
-    @Transaction
-    @Query("SELECT fileName FROM images")
-    Single<List<String>> getAllImageFileNames();
+    /**
+     * Apply a changed server record to the row synced for it before. A change that would
+     * collide with another image on a unique index is skipped.
+     * @return 1 if the row was updated, 0 if the image is new or the change was skipped
+     */
+    @Query("UPDATE OR IGNORE images SET size = :size, width = :width, height = :height, " +
+            "fileName = :fileName, imageId = :imageId, updatedTime = :updatedTime, remoteUrl = :remoteUrl " +
+            "WHERE serverId = :serverId")
+    int updateServerImage(long serverId, long size, int width, int height, String fileName,
+                          String imageId, long updatedTime, String remoteUrl);
 
     @Update
     Completable updateImage(ImageEntity image);
@@ -35,19 +62,41 @@ public interface ImageDao {
     @Delete
     Completable deleteImage(ImageEntity image);
 
-    @Query("SELECT * FROM images ORDER BY updatedTime DESC")
-    Flowable<List<ImageEntity>> getAllImages();
+    /**
+     * One gallery page starting at the given key, inclusive. Uses the updatedTime index
+     * (which also holds the id) without sorting, and reads only the columns a grid cell draws.
+     */
+    @Query("SELECT id, updatedTime, status, " +
+            "CASE WHEN localUrl = '' THEN -1 ELSE CAST(imageId AS INTEGER) END AS mediaId, " +
+            "CASE WHEN localUrl = '' THEN remoteUrl END AS remoteUrl " +
+            "FROM images WHERE updatedTime <= :updatedTime " +
+            "AND (updatedTime < :updatedTime OR id <= :id) " +
+            "ORDER BY updatedTime DESC, id DESC LIMIT :limit")
+    List<GalleryRow> getGalleryPage(long updatedTime, long id, int limit);
+
+    /**
+     * Key of the image at a gallery position, read from the index only. Used to start a page
+     * when the user jumps past pages that were never loaded.
+     */
+    @Query("SELECT updatedTime, id FROM images ORDER BY updatedTime DESC, id DESC LIMIT 1 OFFSET :offset")
+    GalleryKey getGalleryKeyAt(int offset);
+
+    @Query("SELECT COUNT(*) FROM images")
+    int getImageCount();
 
     @Query("SELECT * FROM images WHERE status = :status ORDER BY timestamp DESC")
-    Flowable<List<ImageEntity>> getImagesByStatus(String status);
+    Flowable<List<ImageEntity>> getImagesByStatus(int status);
 
     /**
      * Get the oldest pending upload (by timestamp ascending)
      * @return Flowable emitting a list with one item (the oldest) or empty list if none found
      */
-    @Query("SELECT * FROM images WHERE status in ('PENDING', 'FAILED') ORDER BY timestamp ASC LIMIT 1")
+    @Query("SELECT * FROM images WHERE status IN " + ImageStatus.QUEUED + " ORDER BY timestamp ASC LIMIT 1")
     Flowable<List<ImageEntity>> getOldestPendingUpload();
 
+    @Query("UPDATE images SET status = :status WHERE id = :id")
+    int setImageStatus(long id, int status);
+
     @Query("SELECT * FROM images WHERE id = :id")
     Single<ImageEntity> getImageById(long id);
 
@@ -55,10 +104,49 @@ public interface ImageDao {
     Single<ImageEntity> getImageByLocalUrl(String localUrl);
 
     @Query("UPDATE images SET status = :status WHERE id = :id")
-    Completable updateImageStatus(long id, String status);
+    Completable updateImageStatus(long id, int status);
+
+    @Query("UPDATE images SET remoteUrl = :remoteUrl, status = " + ImageStatus.UPLOADED + ", " +
+            "uploadedSize = :uploadedSize WHERE id = :id")
+    int setImageUploaded(long id, String remoteUrl, long uploadedSize);
 
-    @Query("UPDATE images SET remoteUrl = :remoteUrl, status = 'UPLOADED' WHERE id = :id")
-    Completable setImageUploaded(long id, String remoteUrl);
+    /**
+     * Bytes saved by re-encoding, over all uploaded images
+     */
+    @Query("SELECT IFNULL(SUM(size - uploadedSize), 0) FROM images " +
+            "WHERE status = " + ImageStatus.UPLOADED + " AND uploadedSize > 0 AND uploadedSize < size")
+    long getBytesSavedByReencoding();
+
+    @Query("SELECT * FROM images WHERE status IN " + ImageStatus.QUEUED + " AND contentHash IS NULL " +
+            "AND localUrl != '' AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<ImageEntity> getPendingUploadsWithoutHash(long afterId, int limit);
+
+    @Query("UPDATE images SET contentHash = :contentHash WHERE id = :id")
+    int setContentHash(long id, String contentHash);
+
+    /**
+     * Mark pending rows whose content is already uploaded under another row as uploaded,
+     * reusing that row's remote URL
+     * @return number of rows marked
+     */
+    @Query("UPDATE images SET status = " + ImageStatus.UPLOADED + ", remoteUrl = (" +
+            "SELECT u.remoteUrl FROM images u WHERE u.contentHash = images.contentHash " +
+            "AND u.status = " + ImageStatus.UPLOADED + " AND u.remoteUrl IS NOT NULL LIMIT 1) " +
+            "WHERE status IN " + ImageStatus.QUEUED + " AND contentHash IS NOT NULL AND EXISTS (" +
+            "SELECT 1 FROM images u WHERE u.contentHash = images.contentHash " +
+            "AND u.status = " + ImageStatus.UPLOADED + " AND u.remoteUrl IS NOT NULL)")
+    int markLocalDuplicatesUploaded();
+
+    @Query("SELECT DISTINCT contentHash FROM images WHERE status IN " + ImageStatus.QUEUED + " " +
+            "AND contentHash IS NOT NULL AND hashChecked = 0 LIMIT :limit")
+    List<String> getUncheckedPendingHashes(int limit);
+
+    @Query("UPDATE images SET hashChecked = 1 WHERE contentHash IN (:contentHashes)")
+    int markHashesChecked(List<String> contentHashes);
+
+    @Query("UPDATE images SET status = " + ImageStatus.UPLOADED + ", remoteUrl = :remoteUrl " +
+            "WHERE contentHash = :contentHash AND status IN " + ImageStatus.QUEUED)
+    int markUploadedByHash(String contentHash, String remoteUrl);
 
     @Query("SELECT MAX(updatedTime) FROM images")
     Single<Long> getMostRecentImageTimestamp();
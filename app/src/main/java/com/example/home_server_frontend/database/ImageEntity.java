@@ -2,9 +2,24 @@ package com.example.home_server_frontend.database;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "images")
+import java.io.File;
+
+// Inserts rely on the unique indices to skip images that are already known
+@Entity(tableName = "images",
+        indices = {
+                @Index(value = {"imageId", "fileName"}, unique = true),
+                @Index(value = {"serverId"}, unique = true),
+                @Index(value = {"contentHash"}),
+                // Status filters ordered by insertion time: queue claims and status lists
+                @Index(value = {"status", "timestamp"}),
+                // Gallery order, scanned backwards for DESC
+                @Index(value = {"updatedTime"}),
+                @Index(value = {"localUrl"})
+        })
 public class ImageEntity {
     @PrimaryKey(autoGenerate = true)
     private long id;
@@ -14,12 +29,13 @@ public class ImageEntity {
 
     private String remoteUrl;
 
-    @NonNull
-    private String status; // "PENDING", "UPLOADING", "UPLOADED", "FAILED"
+    private int status; // One of the ImageStatus codes
 
-    private long size; // in bytes
+    private long size; // original file size in bytes
+    private long uploadedSize; // bytes of the file actually sent, smaller than size when re-encoded; 0 until uploaded
 
-    private String resolution; // e.g., "1920x1080"
+    private int width; // in pixels, 0 if unknown
+    private int height; // in pixels, 0 if unknown
 
     private long timestamp;
 
@@ -27,19 +43,33 @@ public class ImageEntity {
 
     // New fields
     private String imageId; // MediaStore image ID
+    private Long serverId; // Id of the image on the server, null unless synced from the server list
     private long updatedTime; // Last modified time
 
+    // Upload scheduling, the rest of the upload state lives in UploadQueueEntry
+    private String folder; // Parent directory of localUrl, used for round-robin scheduling
+
+    // Content deduplication
+    private String contentHash; // Hex SHA-256 of the file content
+    private boolean hashChecked; // Whether the server was already asked about contentHash
+
+    public ImageEntity() {
+        this.localUrl = "";
+    }
+
     // Update constructor
-    public ImageEntity(@NonNull String localUrl, @NonNull String status, long size,
+    @Ignore
+    public ImageEntity(@NonNull String localUrl, int status, long size,
                        String resolution, String fileName, String imageId, long updatedTime) {
         this.localUrl = localUrl;
         this.status = status;
         this.size = size;
-        this.resolution = resolution;
+        setResolution(resolution);
         this.timestamp = System.currentTimeMillis();
         this.fileName = fileName;
         this.imageId = imageId;
         this.updatedTime = updatedTime;
+        this.folder = new File(localUrl).getParent();
     }
 
     // Add getters and setters
@@ -84,12 +114,11 @@ public class ImageEntity {
         this.remoteUrl = remoteUrl;
     }
 
-    @NonNull
-    public String getStatus() {
+    public int getStatus() {
         return status;
     }
 
-    public void setStatus(@NonNull String status) {
+    public void setStatus(int status) {
         this.status = status;
     }
 
@@ -101,12 +130,49 @@ public class ImageEntity {
         this.size = size;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    /**
+     * Resolution in the "widthxheight" form used by the server, or null if unknown
+     */
     public String getResolution() {
-        return resolution;
+        return width > 0 && height > 0 ? width + "x" + height : null;
     }
 
+    /**
+     * Set width and height from a "widthxheight" string; anything else leaves them unknown
+     */
     public void setResolution(String resolution) {
-        this.resolution = resolution;
+        width = 0;
+        height = 0;
+        if (resolution == null) {
+            return;
+        }
+        int separator = resolution.indexOf('x');
+        if (separator <= 0) {
+            return;
+        }
+        try {
+            width = Integer.parseInt(resolution.substring(0, separator).trim());
+            height = Integer.parseInt(resolution.substring(separator + 1).trim());
+        } catch (NumberFormatException e) {
+            width = 0;
+            height = 0;
+        }
     }
 
     public long getTimestamp() {
@@ -124,4 +190,44 @@ public class ImageEntity {
     public void setFileName(String fileName) {
         this.fileName = fileName;
     }
-}
\ No newline at end of file
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public boolean isHashChecked() {
+        return hashChecked;
+    }
+
+    public void setHashChecked(boolean hashChecked) {
+        this.hashChecked = hashChecked;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public void setFolder(String folder) {
+        this.folder = folder;
+    }
+
+    public Long getServerId() {
+        return serverId;
+    }
+
+    public void setServerId(Long serverId) {
+        this.serverId = serverId;
+    }
+
+    public long getUploadedSize() {
+        return uploadedSize;
+    }
+
+    public void setUploadedSize(long uploadedSize) {
+        this.uploadedSize = uploadedSize;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.home_server_frontend.database;
+
+/**
+ * Status codes stored in {@link ImageEntity}. Queries embed them as compile-time constants,
+ * so the values must never change once released; add new codes at the end.
+ *
+ * The status only changes when the image itself does: queued, uploaded or given up on.
+ * Claims and retries are tracked in {@link UploadQueueEntry}.
+ */
+public final class ImageStatus {
+    public static final int LOCAL = 0; // On the device only, not queued for upload
+    public static final int PENDING = 1; // Queued, including failed attempts that will be retried
+    public static final int UPLOADING = 2; // Only in schemas before 10, read by Migrations; see UploadProgressTracker
+    public static final int UPLOADED = 3;
+    public static final int FAILED = 4; // Failed permanently, waits until the user queues it again
+
+    // SQL list of the statuses that keep an upload_queue row
+    static final String QUEUED = "(" + PENDING + ", " + FAILED + ")";
+
+    private ImageStatus() {
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.home_server_frontend.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Hand-written schema migrations, so an upgrade keeps the local index and upload state
+ * instead of forcing a full rescan and resync.
+ *
+ * Version 1 is the schema of the first release and goes to 9 in one step. Versions 2 to 8
+ * only existed in development builds; each of them has its own step, which adds the columns
+ * and indices of the next version, and 8 goes to 9. The steps to 9 copy rows into a table
+ * created with exactly the DDL Room expects, because SQLite cannot change column types in
+ * place. The unique indices exist before the copy, so INSERT OR IGNORE drops duplicate rows.
+ * Version 10 moves the upload state out of images into upload_queue, and version 11 adds the
+ * fingerprint of the file an upload session was opened for.
+ */
+public final class Migrations {
+
+    private static final String CREATE_IMAGES_V9 = "CREATE TABLE IF NOT EXISTS `images_new` (" +
+            "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "`localUrl` TEXT NOT NULL, " +
+            "`remoteUrl` TEXT, " +
+            "`status` INTEGER NOT NULL, " +
+            "`size` INTEGER NOT NULL, " +
+            "`uploadedSize` INTEGER NOT NULL, " +
+            "`width` INTEGER NOT NULL, " +
+            "`height` INTEGER NOT NULL, " +
+            "`timestamp` INTEGER NOT NULL, " +
+            "`fileName` TEXT, " +
+            "`imageId` TEXT, " +
+            "`serverId` INTEGER, " +
+            "`updatedTime` INTEGER NOT NULL, " +
+            "`priority` INTEGER NOT NULL, " +
+            "`folder` TEXT, " +
+            "`retryCount` INTEGER NOT NULL, " +
+            "`nextAttemptAt` INTEGER NOT NULL, " +
+            "`contentHash` TEXT, " +
+            "`hashChecked` INTEGER NOT NULL, " +
+            "`uploadSessionId` TEXT, " +
+            "`uploadedBytes` INTEGER NOT NULL, " +
+            "`uploadKey` TEXT, " +
+            "`uploadNoncePrefix` TEXT)";
+
+    private static final String CREATE_IMAGES_V10 = "CREATE TABLE IF NOT EXISTS `images_new` (" +
+            "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+            "`localUrl` TEXT NOT NULL, " +
+            "`remoteUrl` TEXT, " +
+            "`status` INTEGER NOT NULL, " +
+            "`size` INTEGER NOT NULL, " +
+            "`uploadedSize` INTEGER NOT NULL, " +
+            "`width` INTEGER NOT NULL, " +
+            "`height` INTEGER NOT NULL, " +
+            "`timestamp` INTEGER NOT NULL, " +
+            "`fileName` TEXT, " +
+            "`imageId` TEXT, " +
+            "`serverId` INTEGER, " +
+            "`updatedTime` INTEGER NOT NULL, " +
+            "`folder` TEXT, " +
+            "`contentHash` TEXT, " +
+            "`hashChecked` INTEGER NOT NULL)";
+
+    private static final String CREATE_UPLOAD_QUEUE_V10 = "CREATE TABLE IF NOT EXISTS `upload_queue` (" +
+            "`imageRowId` INTEGER NOT NULL, " +
+            "`priority` INTEGER NOT NULL, " +
+            "`enqueuedAt` INTEGER NOT NULL, " +
+            "`retryCount` INTEGER NOT NULL, " +
+            "`nextAttemptAt` INTEGER NOT NULL, " +
+            "`leaseOwner` TEXT, " +
+            "`leaseExpiresAt` INTEGER NOT NULL, " +
+            "`uploadSessionId` TEXT, " +
+            "`uploadedBytes` INTEGER NOT NULL, " +
+            "`uploadKey` TEXT, " +
+            "`uploadNoncePrefix` TEXT, " +
+            "`uploadSize` INTEGER NOT NULL, " +
+            "PRIMARY KEY(`imageRowId`), " +
+            "FOREIGN KEY(`imageRowId`) REFERENCES `images`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )";
+
+    // Index names follow the table when it is renamed to `images`; unchanged in version 10
+    private static final String[][] INDICES_V9 = {
+            {"index_images_imageId_fileName", "CREATE UNIQUE INDEX `index_images_imageId_fileName` ON `images_new` (`imageId`, `fileName`)"},
+            {"index_images_serverId", "CREATE UNIQUE INDEX `index_images_serverId` ON `images_new` (`serverId`)"},
+            {"index_images_contentHash", "CREATE INDEX `index_images_contentHash` ON `images_new` (`contentHash`)"},
+            {"index_images_status_timestamp", "CREATE INDEX `index_images_status_timestamp` ON `images_new` (`status`, `timestamp`)"},
+            {"index_images_updatedTime", "CREATE INDEX `index_images_updatedTime` ON `images_new` (`updatedTime`)"},
+            {"index_images_localUrl", "CREATE INDEX `index_images_localUrl` ON `images_new` (`localUrl`)"}
+    };
+
+    // Text status of versions 1 to 8 as an ImageStatus code; "" and "LOCAL" both meant not queued
+    private static final String STATUS_CODE = "CASE status" +
+            " WHEN 'PENDING' THEN " + ImageStatus.PENDING +
+            " WHEN 'UPLOADING' THEN " + ImageStatus.UPLOADING +
+            " WHEN 'UPLOADED' THEN " + ImageStatus.UPLOADED +
+            " WHEN 'FAILED' THEN " + ImageStatus.FAILED +
+            " ELSE " + ImageStatus.LOCAL + " END";
+
+    // "1920x1080" split into integers, 0 when missing or malformed
+    private static final String WIDTH = "CASE WHEN instr(IFNULL(resolution, ''), 'x') > 1" +
+            " THEN CAST(substr(resolution, 1, instr(resolution, 'x') - 1) AS INTEGER) ELSE 0 END";
+    private static final String HEIGHT = "CASE WHEN instr(IFNULL(resolution, ''), 'x') > 1" +
+            " THEN CAST(substr(resolution, instr(resolution, 'x') + 1) AS INTEGER) ELSE 0 END";
+
+    // Parent directory of localUrl: rtrim strips everything after the last '/'
+    private static final String FOLDER = "CASE WHEN instr(localUrl, '/') > 0" +
+            " THEN IFNULL(NULLIF(rtrim(rtrim(localUrl, replace(localUrl, '/', '')), '/'), ''), '/')" +
+            " ELSE NULL END";
+
+    // Server rows of version 1 only carry their id in remoteUrl ("api/images/<id>")
+    private static final String SERVER_ID = "CASE WHEN localUrl = '' AND remoteUrl LIKE 'api/images/%'" +
+            " THEN CAST(substr(remoteUrl, 12) AS INTEGER) ELSE NULL END";
+
+    /**
+     * Segmented encryption: key and nonce prefix of the upload session
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `uploadKey` TEXT");
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `uploadNoncePrefix` TEXT");
+        }
+    };
+
+    /**
+     * Content hash for deduplication
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `contentHash` TEXT");
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `hashChecked` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Upload lanes and folders; existing rows get the folder new rows are given on insert
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `priority` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `folder` TEXT");
+            db.execSQL("UPDATE `images` SET folder = " + FOLDER);
+        }
+    };
+
+    /**
+     * Retry state
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `retryCount` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `nextAttemptAt` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Size of the file actually sent, 0 like for rows uploaded before storage saver existed
+     */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `uploadedSize` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * Server id and the unique indices. Rows that duplicate an older one on (imageId, fileName)
+     * are dropped so the index can be created, and a server row whose id is taken keeps none.
+     */
+    public static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `images` ADD COLUMN `serverId` INTEGER");
+            db.execSQL("DELETE FROM `images` WHERE imageId IS NOT NULL AND fileName IS NOT NULL " +
+                    "AND id NOT IN (SELECT MIN(id) FROM `images` " +
+                    "WHERE imageId IS NOT NULL AND fileName IS NOT NULL GROUP BY imageId, fileName)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_images_imageId_fileName` ON `images` (`imageId`, `fileName`)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_images_serverId` ON `images` (`serverId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_images_contentHash` ON `images` (`contentHash`)");
+            db.execSQL("UPDATE OR IGNORE `images` SET serverId = " + SERVER_ID);
+        }
+    };
+
+    /**
+     * First release to v9: integer status and resolution, upload state columns, indices
+     */
+    public static final Migration MIGRATION_1_9 = new Migration(1, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            createImagesTable(db);
+            // Duplicates on the new unique keys keep the oldest row
+            db.execSQL("INSERT OR IGNORE INTO `images_new` (id, localUrl, remoteUrl, status, size, " +
+                    "uploadedSize, width, height, timestamp, fileName, imageId, serverId, updatedTime, " +
+                    "priority, folder, retryCount, nextAttemptAt, contentHash, hashChecked, " +
+                    "uploadSessionId, uploadedBytes, uploadKey, uploadNoncePrefix) " +
+                    "SELECT id, localUrl, remoteUrl, " + STATUS_CODE + ", size, " +
+                    "0, " + WIDTH + ", " + HEIGHT + ", timestamp, fileName, imageId, " + SERVER_ID + ", updatedTime, " +
+                    "0, " + FOLDER + ", 0, 0, NULL, 0, " +
+                    "NULL, 0, NULL, NULL " +
+                    "FROM `images` ORDER BY id");
+            replaceImagesTable(db);
+        }
+    };
+
+    /**
+     * Last development schema to v9: integer status and resolution, new indices
+     */
+    public static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            createImagesTable(db);
+            db.execSQL("INSERT OR IGNORE INTO `images_new` (id, localUrl, remoteUrl, status, size, " +
+                    "uploadedSize, width, height, timestamp, fileName, imageId, serverId, updatedTime, " +
+                    "priority, folder, retryCount, nextAttemptAt, contentHash, hashChecked, " +
+                    "uploadSessionId, uploadedBytes, uploadKey, uploadNoncePrefix) " +
+                    "SELECT id, localUrl, remoteUrl, " + STATUS_CODE + ", size, " +
+                    "uploadedSize, " + WIDTH + ", " + HEIGHT + ", timestamp, fileName, imageId, serverId, updatedTime, " +
+                    "priority, folder, retryCount, nextAttemptAt, contentHash, hashChecked, " +
+                    "uploadSessionId, uploadedBytes, uploadKey, uploadNoncePrefix " +
+                    "FROM `images` ORDER BY id");
+            replaceImagesTable(db);
+        }
+    };
+
+    /**
+     * Upload state to upload_queue. UPLOADING rows were interrupted claims, and FAILED rows with
+     * a retry scheduled are still queued, so both become PENDING; only permanent failures stay
+     * FAILED. The queue rows are staged first because dropping the old table would cascade.
+     */
+    public static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE `upload_queue_staging` AS SELECT id AS imageRowId, priority, " +
+                    "timestamp AS enqueuedAt, retryCount, nextAttemptAt, uploadSessionId, uploadedBytes, " +
+                    "uploadKey, uploadNoncePrefix, uploadedSize AS uploadSize FROM `images` " +
+                    "WHERE status IN (" + ImageStatus.PENDING + ", " + ImageStatus.UPLOADING + ", " + ImageStatus.FAILED + ")");
+
+            createImagesTable(db, CREATE_IMAGES_V10);
+            db.execSQL("INSERT OR IGNORE INTO `images_new` (id, localUrl, remoteUrl, status, size, " +
+                    "uploadedSize, width, height, timestamp, fileName, imageId, serverId, updatedTime, " +
+                    "folder, contentHash, hashChecked) " +
+                    "SELECT id, localUrl, remoteUrl, " +
+                    "CASE WHEN status = " + ImageStatus.UPLOADING +
+                    " OR (status = " + ImageStatus.FAILED + " AND nextAttemptAt < " + Long.MAX_VALUE + ")" +
+                    " THEN " + ImageStatus.PENDING + " ELSE status END, size, " +
+                    // Only finished uploads keep the size that was sent, sessions carry their own
+                    "CASE WHEN status = " + ImageStatus.UPLOADED + " THEN uploadedSize ELSE 0 END, " +
+                    "width, height, timestamp, fileName, imageId, serverId, updatedTime, " +
+                    "folder, contentHash, hashChecked " +
+                    "FROM `images` ORDER BY id");
+            replaceImagesTable(db);
+
+            db.execSQL(CREATE_UPLOAD_QUEUE_V10);
+            db.execSQL("INSERT INTO `upload_queue` (imageRowId, priority, enqueuedAt, retryCount, " +
+                    "nextAttemptAt, leaseOwner, leaseExpiresAt, uploadSessionId, uploadedBytes, " +
+                    "uploadKey, uploadNoncePrefix, uploadSize) " +
+                    "SELECT imageRowId, priority, enqueuedAt, retryCount, nextAttemptAt, NULL, 0, " +
+                    "uploadSessionId, uploadedBytes, uploadKey, uploadNoncePrefix, uploadSize " +
+                    "FROM `upload_queue_staging`");
+            db.execSQL("DROP TABLE `upload_queue_staging`");
+        }
+    };
+
+    /**
+     * Fingerprint of the uploaded file. Open sessions get none, so they restart with fresh key
+     * material instead of being resumed on bytes nobody checked.
+     */
+    public static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `upload_queue` ADD COLUMN `uploadFingerprint` TEXT");
+        }
+    };
+
+    /**
+     * Every migration, in the order the schema changed
+     */
+    public static final Migration[] ALL = {
+            MIGRATION_1_9, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7,
+            MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11
+    };
+
+    private static void createImagesTable(SupportSQLiteDatabase db) {
+        createImagesTable(db, CREATE_IMAGES_V9);
+    }
+
+    private static void createImagesTable(SupportSQLiteDatabase db, String createTable) {
+        db.execSQL(createTable);
+        for (String[] index : INDICES_V9) {
+            // Version 8 already has some of these names on the old table
+            db.execSQL("DROP INDEX IF EXISTS `" + index[0] + "`");
+            db.execSQL(index[1]);
+        }
+    }
+
+    private static void replaceImagesTable(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TABLE `images`");
+        db.execSQL("ALTER TABLE `images_new` RENAME TO `images`");
+    }
+
+    private Migrations() {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.home_server_frontend.database;
+
+/**
+ * Number and total size of images waiting in the upload queue
+ */
+public class QueueTotals {
+    public int count;
+    public long bytes;
+}
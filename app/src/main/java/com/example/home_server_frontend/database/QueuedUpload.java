@@ -0,0 +1,89 @@
+package com.example.home_server_frontend.database;
+
+/**
+ * An image claimed from the upload queue, together with the queue state the uploader needs.
+ * Read by {@link UploadQueueDao}, never stored as such.
+ */
+public class QueuedUpload extends ImageEntity {
+    private int priority;
+    private int retryCount;
+    private long nextAttemptAt;
+    private String uploadSessionId;
+    private long uploadedBytes;
+    private String uploadKey;
+    private String uploadNoncePrefix;
+    private long uploadSize;
+    private String uploadFingerprint;
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getUploadSessionId() {
+        return uploadSessionId;
+    }
+
+    public void setUploadSessionId(String uploadSessionId) {
+        this.uploadSessionId = uploadSessionId;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public void setUploadedBytes(long uploadedBytes) {
+        this.uploadedBytes = uploadedBytes;
+    }
+
+    public String getUploadKey() {
+        return uploadKey;
+    }
+
+    public void setUploadKey(String uploadKey) {
+        this.uploadKey = uploadKey;
+    }
+
+    public String getUploadNoncePrefix() {
+        return uploadNoncePrefix;
+    }
+
+    public void setUploadNoncePrefix(String uploadNoncePrefix) {
+        this.uploadNoncePrefix = uploadNoncePrefix;
+    }
+
+    public long getUploadSize() {
+        return uploadSize;
+    }
+
+    public void setUploadSize(long uploadSize) {
+        this.uploadSize = uploadSize;
+    }
+
+    public String getUploadFingerprint() {
+        return uploadFingerprint;
+    }
+
+    public void setUploadFingerprint(String uploadFingerprint) {
+        this.uploadFingerprint = uploadFingerprint;
+    }
+}
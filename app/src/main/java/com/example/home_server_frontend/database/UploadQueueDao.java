@@ -0,0 +1,135 @@
+package com.example.home_server_frontend.database;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * Queries on the upload queue. Claims order by columns of the image, so they join images, but
+ * every write stays in upload_queue and leaves observers of the images table alone.
+ */
+@Dao
+public interface UploadQueueDao {
+    String SELECT_QUEUED = "SELECT images.*, q.priority, q.retryCount, q.nextAttemptAt, q.uploadSessionId, " +
+            "q.uploadedBytes, q.uploadKey, q.uploadNoncePrefix, q.uploadSize, q.uploadFingerprint " +
+            "FROM upload_queue q JOIN images ON images.id = q.imageRowId ";
+
+    // Due, not claimed by a live lease, and still wanted: the image may have been unqueued since
+    String CLAIMABLE = "WHERE q.nextAttemptAt <= :now AND q.leaseExpiresAt <= :now " +
+            "AND images.status IN " + ImageStatus.QUEUED + " ";
+
+    // Rows that failed before go after fresh ones so a broken file does not block the queue
+    String RETRIES_LAST = "q.retryCount > 0";
+
+    @Query(SELECT_QUEUED + CLAIMABLE + "AND q.priority > :normalPriority " +
+            "ORDER BY q.priority DESC, " + RETRIES_LAST + ", images.timestamp ASC LIMIT 1")
+    QueuedUpload findHighPriority(int normalPriority, long now);
+
+    @Query(SELECT_QUEUED + CLAIMABLE + "ORDER BY " + RETRIES_LAST + ", images.timestamp ASC LIMIT 1")
+    QueuedUpload findOldest(long now);
+
+    @Query(SELECT_QUEUED + CLAIMABLE + "ORDER BY " + RETRIES_LAST + ", images.updatedTime DESC LIMIT 1")
+    QueuedUpload findNewest(long now);
+
+    @Query(SELECT_QUEUED + CLAIMABLE + "ORDER BY " + RETRIES_LAST + ", images.size ASC LIMIT 1")
+    QueuedUpload findSmallest(long now);
+
+    /**
+     * Small due images without an open upload session, candidates for a batch request
+     */
+    @Query(SELECT_QUEUED + CLAIMABLE + "AND images.size <= :maxFileSize AND q.uploadSessionId IS NULL " +
+            "ORDER BY " + RETRIES_LAST + ", images.size ASC LIMIT :limit")
+    List<QueuedUpload> findSmall(long maxFileSize, int limit, long now);
+
+    /**
+     * Oldest due upload of the first folder sorting after the given one
+     * @param lastFolder Folder served last, or null to start from the first folder
+     */
+    @Query(SELECT_QUEUED + CLAIMABLE + "AND (:lastFolder IS NULL OR IFNULL(images.folder, '') > :lastFolder) " +
+            "ORDER BY IFNULL(images.folder, ''), " + RETRIES_LAST + ", images.timestamp ASC LIMIT 1")
+    QueuedUpload findInFolderAfter(String lastFolder, long now);
+
+    @Query("SELECT COUNT(*) AS count, IFNULL(SUM(images.size), 0) AS bytes " +
+            "FROM upload_queue q JOIN images ON images.id = q.imageRowId " + CLAIMABLE)
+    QueueTotals getClaimableTotals(long now);
+
+    /**
+     * Take or renew the lease of a row
+     */
+    @Query("UPDATE upload_queue SET leaseOwner = :owner, leaseExpiresAt = :leaseExpiresAt WHERE imageRowId = :imageRowId")
+    int lease(long imageRowId, String owner, long leaseExpiresAt);
+
+    @Query("UPDATE upload_queue SET leaseOwner = NULL, leaseExpiresAt = 0 WHERE imageRowId = :imageRowId")
+    int release(long imageRowId);
+
+    /**
+     * Release leases held by other owners, e.g. a previous process that was killed mid-upload
+     */
+    @Query("UPDATE upload_queue SET leaseOwner = NULL, leaseExpiresAt = 0 " +
+            "WHERE leaseOwner IS NOT NULL AND leaseOwner != :owner")
+    int releaseLeasesNotOwnedBy(String owner);
+
+    /**
+     * Record a failed attempt, release the lease and set when the row may be tried again
+     */
+    @Query("UPDATE upload_queue SET retryCount = :retryCount, nextAttemptAt = :nextAttemptAt, " +
+            "leaseOwner = NULL, leaseExpiresAt = 0 WHERE imageRowId = :imageRowId")
+    int markFailed(long imageRowId, int retryCount, long nextAttemptAt);
+
+    /**
+     * Earliest time a failed upload becomes due again
+     * @param never Next-attempt time of permanently failed rows, which are ignored
+     * @return the time in milliseconds, or null if no retry is scheduled
+     */
+    @Query("SELECT MIN(nextAttemptAt) FROM upload_queue WHERE retryCount > 0 AND nextAttemptAt < :never")
+    Long getNextRetryTime(long never);
+
+    /**
+     * Persist the confirmed offset of a session, renewing the lease since the upload is alive
+     */
+    @Query("UPDATE upload_queue SET uploadSessionId = :sessionId, uploadedBytes = :uploadedBytes, " +
+            "leaseExpiresAt = :leaseExpiresAt WHERE imageRowId = :imageRowId")
+    int updateProgress(long imageRowId, String sessionId, long uploadedBytes, long leaseExpiresAt);
+
+    @Query("UPDATE upload_queue SET uploadSessionId = :sessionId, uploadKey = :uploadKey, " +
+            "uploadNoncePrefix = :uploadNoncePrefix, uploadedBytes = :uploadedBytes, " +
+            "uploadSize = :uploadSize, uploadFingerprint = :uploadFingerprint, leaseExpiresAt = :leaseExpiresAt " +
+            "WHERE imageRowId = :imageRowId")
+    int updateSession(long imageRowId, String sessionId, String uploadKey, String uploadNoncePrefix,
+                      long uploadedBytes, long uploadSize, String uploadFingerprint, long leaseExpiresAt);
+
+    @Query("INSERT OR IGNORE INTO upload_queue (imageRowId, priority, enqueuedAt, retryCount, nextAttemptAt, " +
+            "leaseExpiresAt, uploadedBytes, uploadSize) VALUES (:imageRowId, :priority, :now, 0, 0, 0, 0, 0)")
+    void enqueue(long imageRowId, int priority, long now);
+
+    /**
+     * Put an already queued row in the given lane and forget its failures
+     */
+    @Query("UPDATE upload_queue SET priority = :priority, retryCount = 0, nextAttemptAt = 0 " +
+            "WHERE imageRowId = :imageRowId")
+    int requeue(long imageRowId, int priority);
+
+    @Query("SELECT priority FROM upload_queue WHERE imageRowId = :imageRowId")
+    Integer getPriority(long imageRowId);
+
+    @Query("DELETE FROM upload_queue WHERE imageRowId = :imageRowId")
+    int remove(long imageRowId);
+
+    /**
+     * Add a row for every PENDING image that has none, e.g. after images were inserted or
+     * switched to PENDING in bulk
+     */
+    @Query("INSERT OR IGNORE INTO upload_queue (imageRowId, priority, enqueuedAt, retryCount, nextAttemptAt, " +
+            "leaseExpiresAt, uploadedBytes, uploadSize) " +
+            "SELECT id, 0, :now, 0, 0, 0, 0, 0 FROM images WHERE status = " + ImageStatus.PENDING)
+    void enqueueMissing(long now);
+
+    /**
+     * Remove rows whose image was uploaded, deduplicated or taken out of the queue
+     * @return number of rows removed
+     */
+    @Query("DELETE FROM upload_queue WHERE imageRowId NOT IN " +
+            "(SELECT id FROM images WHERE status IN " + ImageStatus.QUEUED + ")")
+    int removeSettled();
+}
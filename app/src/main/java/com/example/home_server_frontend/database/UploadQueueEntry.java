@@ -0,0 +1,146 @@
+package com.example.home_server_frontend.database;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.PrimaryKey;
+
+/**
+ * Upload state of a queued image, kept apart from {@link ImageEntity} so claims, retries and
+ * chunk progress do not invalidate observers of the images table.
+ *
+ * A row exists while its image is PENDING, or FAILED for good. A slot claims a row by taking a
+ * lease: while leaseExpiresAt lies in the future no other slot picks it up, and a lease left
+ * behind by a killed process simply runs out.
+ */
+@Entity(tableName = "upload_queue",
+        foreignKeys = @ForeignKey(entity = ImageEntity.class,
+                parentColumns = "id",
+                childColumns = "imageRowId",
+                onDelete = ForeignKey.CASCADE))
+public class UploadQueueEntry {
+    @PrimaryKey
+    private long imageRowId; // id of the queued row in images
+
+    private int priority; // 0 for the normal lane, higher values jump the queue
+    private long enqueuedAt;
+
+    // Retry state
+    private int retryCount; // Failed attempts since the last success or manual queueing
+    private long nextAttemptAt; // Earliest time the upload may be tried again, in milliseconds
+
+    // Claim
+    private String leaseOwner; // Process that claimed the row, null when not claimed
+    private long leaseExpiresAt; // Claim is void after this time, in milliseconds
+
+    // Resumable upload state
+    private String uploadSessionId; // Server upload session, null when no upload is in progress
+    private long uploadedBytes; // Bytes confirmed by the server for that session
+    private String uploadKey; // Base64 per-file AES key of that session
+    private String uploadNoncePrefix; // Base64 per-file nonce prefix of that session
+    private long uploadSize; // Length of the file sent in that session, differs from the original when re-encoded
+    private String uploadFingerprint; // Length and modification time of that file, a session is only resumed for the same bytes
+
+    public long getImageRowId() {
+        return imageRowId;
+    }
+
+    public void setImageRowId(long imageRowId) {
+        this.imageRowId = imageRowId;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public void setEnqueuedAt(long enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = retryCount;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public long getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(long leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public String getUploadSessionId() {
+        return uploadSessionId;
+    }
+
+    public void setUploadSessionId(String uploadSessionId) {
+        this.uploadSessionId = uploadSessionId;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    public void setUploadedBytes(long uploadedBytes) {
+        this.uploadedBytes = uploadedBytes;
+    }
+
+    public String getUploadKey() {
+        return uploadKey;
+    }
+
+    public void setUploadKey(String uploadKey) {
+        this.uploadKey = uploadKey;
+    }
+
+    public String getUploadNoncePrefix() {
+        return uploadNoncePrefix;
+    }
+
+    public void setUploadNoncePrefix(String uploadNoncePrefix) {
+        this.uploadNoncePrefix = uploadNoncePrefix;
+    }
+
+    public long getUploadSize() {
+        return uploadSize;
+    }
+
+    public void setUploadSize(long uploadSize) {
+        this.uploadSize = uploadSize;
+    }
+
+    public String getUploadFingerprint() {
+        return uploadFingerprint;
+    }
+
+    public void setUploadFingerprint(String uploadFingerprint) {
+        this.uploadFingerprint = uploadFingerprint;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.home_server_frontend.repository;
+
+import com.example.home_server_frontend.database.GalleryRow;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One page of gallery cells, stored as parallel primitive arrays.
+ *
+ * A cell costs a few dozen bytes this way: ids, keys and status codes are primitives, remote
+ * URLs are split into an interned prefix and a short suffix, and local images keep no strings
+ * at all since they are drawn from the MediaStore thumbnail.
+ */
+public class GalleryPage {
+    private static final int NO_URL = -1;
+
+    private final UrlSegments urlSegments;
+    private final long[] ids;
+    private final long[] updatedTimes;
+    private final long[] mediaIds;
+    private final byte[] statuses;
+    private final int[] urlPrefixes;
+    private final String[] urlSuffixes;
+
+    GalleryPage(List<GalleryRow> rows, UrlSegments urlSegments) {
+        this.urlSegments = urlSegments;
+        int size = rows.size();
+        ids = new long[size];
+        updatedTimes = new long[size];
+        mediaIds = new long[size];
+        statuses = new byte[size];
+        urlPrefixes = new int[size];
+        urlSuffixes = new String[size];
+        for (int i = 0; i < size; i++) {
+            GalleryRow row = rows.get(i);
+            ids[i] = row.id;
+            updatedTimes[i] = row.updatedTime;
+            mediaIds[i] = row.mediaId;
+            statuses[i] = (byte) row.status;
+            if (row.remoteUrl == null) {
+                urlPrefixes[i] = NO_URL;
+            } else {
+                int split = row.remoteUrl.lastIndexOf('/') + 1;
+                urlPrefixes[i] = urlSegments.intern(row.remoteUrl.substring(0, split));
+                urlSuffixes[i] = row.remoteUrl.substring(split);
+            }
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public long getUpdatedTime(int index) {
+        return updatedTimes[index];
+    }
+
+    public int getStatus(int index) {
+        return statuses[index];
+    }
+
+    /**
+     * Whether the cell shows a local thumbnail rather than a server image
+     */
+    public boolean isLocal(int index) {
+        return mediaIds[index] >= 0;
+    }
+
+    public long getMediaId(int index) {
+        return mediaIds[index];
+    }
+
+    /**
+     * Server path of an image that only exists on the server, null for local images
+     */
+    public String getRemoteUrl(int index) {
+        if (urlPrefixes[index] == NO_URL) {
+            return null;
+        }
+        return urlSegments.get(urlPrefixes[index]) + urlSuffixes[index];
+    }
+
+    /**
+     * Whether two loads of a page would draw the same cells
+     */
+    boolean sameContent(GalleryPage other) {
+        return Arrays.equals(ids, other.ids)
+                && Arrays.equals(statuses, other.statuses)
+                && Arrays.equals(mediaIds, other.mediaIds)
+                && Arrays.equals(urlPrefixes, other.urlPrefixes)
+                && Arrays.equals(urlSuffixes, other.urlSuffixes);
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.home_server_frontend.repository;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.home_server_frontend.database.AppDatabase;
+import com.example.home_server_frontend.database.GalleryKey;
+import com.example.home_server_frontend.database.GalleryRow;
+import com.example.home_server_frontend.database.ImageDao;
+import com.example.home_server_frontend.database.ImageEntity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Keyset-paged view of the gallery (updatedTime DESC, id DESC) for adapters.
+ *
+ * Only pages around the visible range are kept in memory. A page is loaded from the key that
+ * follows the previous page, or from a key read off the index when the user jumps ahead. When
+ * the table changes, only the visible pages are reloaded, and listeners are only told when a
+ * page's content actually differs, so an upload status change costs one page query instead of
+ * reloading the whole table. Pages further away are dropped and loaded again on demand.
+ *
+ * All methods must be called on the main thread.
+ */
+public class GalleryPager {
+    private static final String TAG = "GalleryPager";
+    private static final int PAGE_SIZE = 60;
+    private static final int PREFETCH_PAGES = 1;
+    private static final int MAX_LOADED_PAGES = 8;
+
+    public interface Listener {
+        void onGalleryChanged();
+    }
+
+    private final AppDatabase database;
+    private final ImageDao imageDao;
+    private final CompositeDisposable disposables = new CompositeDisposable();
+    private final UrlSegments urlSegments = new UrlSegments();
+    private final SparseArray<GalleryPage> pages = new SparseArray<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private final InvalidationTracker.Observer tableObserver = new InvalidationTracker.Observer("images") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            AndroidSchedulers.mainThread().scheduleDirect(GalleryPager.this::onTableChanged);
+        }
+    };
+
+    private Listener listener;
+    private int count;
+    private int generation;
+    private int firstVisiblePage;
+    private int lastVisiblePage;
+
+    public GalleryPager(AppDatabase database) {
+        this.database = database;
+        this.imageDao = database.imageDao();
+    }
+
+    /**
+     * Start loading and watching the table
+     */
+    public void start(Listener listener) {
+        this.listener = listener;
+        database.getInvalidationTracker().addObserver(tableObserver);
+        onTableChanged();
+    }
+
+    public void stop() {
+        database.getInvalidationTracker().removeObserver(tableObserver);
+        disposables.clear();
+        listener = null;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Page holding a gallery position, or null while it is loading. Read the cell with
+     * {@link #indexInPage(int)}, the page may be shorter than expected if rows were removed.
+     */
+    public GalleryPage getPage(int position) {
+        int page = position / PAGE_SIZE;
+        GalleryPage images = pages.get(page);
+        if (images == null) {
+            requestPage(page);
+        }
+        return images;
+    }
+
+    public static int indexInPage(int position) {
+        return position % PAGE_SIZE;
+    }
+
+    /**
+     * Full row of an image, e.g. to open its details
+     */
+    public Single<ImageEntity> loadImage(long id) {
+        return imageDao.getImageById(id)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Load pages around the visible range and drop the ones far away from it
+     */
+    public void setVisibleRange(int firstVisible, int visibleCount) {
+        firstVisiblePage = firstVisible / PAGE_SIZE;
+        lastVisiblePage = (firstVisible + Math.max(visibleCount, 1) - 1) / PAGE_SIZE;
+        for (int page = firstVisiblePage - PREFETCH_PAGES; page <= lastVisiblePage + PREFETCH_PAGES; page++) {
+            if (page >= 0 && page * PAGE_SIZE < count && pages.get(page) == null) {
+                requestPage(page);
+            }
+        }
+        evictDistantPages();
+    }
+
+    private void evictDistantPages() {
+        int keepBefore = firstVisiblePage - MAX_LOADED_PAGES / 2;
+        int keepAfter = lastVisiblePage + MAX_LOADED_PAGES / 2;
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            int page = pages.keyAt(i);
+            if (page < keepBefore || page > keepAfter) {
+                pages.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Reload the count and the visible pages, keeping their old content on screen meanwhile
+     */
+    private void onTableChanged() {
+        if (listener == null) {
+            return;
+        }
+        generation++;
+        loadingPages.clear();
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            int page = pages.keyAt(i);
+            if (page < firstVisiblePage - PREFETCH_PAGES || page > lastVisiblePage + PREFETCH_PAGES) {
+                pages.removeAt(i);
+            }
+        }
+
+        int requestGeneration = generation;
+        disposables.add(Single.fromCallable(imageDao::getImageCount)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(newCount -> {
+                    if (requestGeneration != generation || newCount == count) {
+                        return;
+                    }
+                    count = newCount;
+                    notifyChanged();
+                }, error -> Log.e(TAG, "Error counting images", error)));
+
+        // Every page around the visible range, also those whose earlier load was just discarded
+        for (int page = Math.max(0, firstVisiblePage - PREFETCH_PAGES); page <= lastVisiblePage + PREFETCH_PAGES; page++) {
+            requestPage(page);
+        }
+    }
+
+    private void requestPage(int page) {
+        if (loadingPages.contains(page)) {
+            return;
+        }
+        loadingPages.add(page);
+
+        // Continue from the previous page if it is loaded and full, otherwise seek by offset
+        GalleryPage previous = page > 0 ? pages.get(page - 1) : null;
+        GalleryKey previousLast = null;
+        if (previous != null && previous.size() == PAGE_SIZE) {
+            previousLast = new GalleryKey();
+            previousLast.updatedTime = previous.getUpdatedTime(PAGE_SIZE - 1);
+            previousLast.id = previous.getId(PAGE_SIZE - 1);
+        }
+        GalleryKey after = previousLast;
+        int requestGeneration = generation;
+        disposables.add(Single.fromCallable(() -> new GalleryPage(loadRows(page, after), urlSegments))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(images -> {
+                    if (requestGeneration != generation) {
+                        return;
+                    }
+                    loadingPages.remove(page);
+                    applyPage(page, images);
+                }, error -> {
+                    loadingPages.remove(page);
+                    Log.e(TAG, "Error loading gallery page " + page, error);
+                }));
+    }
+
+    private List<GalleryRow> loadRows(int page, GalleryKey previousLast) {
+        if (page == 0) {
+            return imageDao.getGalleryPage(Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE);
+        }
+        if (previousLast != null) {
+            // Ids are integers, so "id <= last - 1" starts right after the previous page
+            return imageDao.getGalleryPage(previousLast.updatedTime, previousLast.id - 1, PAGE_SIZE);
+        }
+        GalleryKey start = imageDao.getGalleryKeyAt(page * PAGE_SIZE);
+        if (start == null) {
+            return Collections.emptyList();
+        }
+        return imageDao.getGalleryPage(start.updatedTime, start.id, PAGE_SIZE);
+    }
+
+    private void applyPage(int page, GalleryPage images) {
+        GalleryPage old = pages.get(page);
+        pages.put(page, images);
+        if (old != null && old.sameContent(images)) {
+            return;
+        }
+        if (old != null && !sameLastKey(old, images)) {
+            // Rows were added or removed inside this page, the following pages no longer line up
+            for (int i = pages.size() - 1; i >= 0; i--) {
+                if (pages.keyAt(i) > page) {
+                    pages.removeAt(i);
+                }
+            }
+        }
+        notifyChanged();
+    }
+
+    private void notifyChanged() {
+        if (listener != null) {
+            listener.onGalleryChanged();
+        }
+    }
+
+    private static boolean sameLastKey(GalleryPage a, GalleryPage b) {
+        if (a.size() == 0 || b.size() == 0) {
+            return a.size() == b.size();
+        }
+        return a.getId(a.size() - 1) == b.getId(b.size() - 1);
+    }
+}
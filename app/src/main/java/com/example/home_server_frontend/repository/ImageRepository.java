@@ -4,57 +4,72 @@ import android.content.Context;
 import android.os.Build;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
 import com.example.home_server_frontend.api.ApiClient;
 import com.example.home_server_frontend.api.ApiService;
-import com.example.home_server_frontend.api.models.ImageListResponse;
-import com.example.home_server_frontend.api.models.ServerImage;
-import com.example.home_server_frontend.crypto.CryptoUtils;
-import com.example.home_server_frontend.crypto.KeyManager;
+import com.example.home_server_frontend.api.models.ContentHashCheckRequest;
+import com.example.home_server_frontend.api.models.ContentHashCheckResponse;
+import com.example.home_server_frontend.crypto.CryptoSession;
 import com.example.home_server_frontend.database.AppDatabase;
 import com.example.home_server_frontend.database.ImageDao;
 import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.example.home_server_frontend.database.QueueTotals;
+import com.example.home_server_frontend.database.QueuedUpload;
+import com.example.home_server_frontend.database.UploadQueueDao;
 import com.example.home_server_frontend.utils.ImageUtils;
 import com.example.home_server_frontend.utils.PreferenceManager;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.example.home_server_frontend.utils.SecurityUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
-import retrofit2.Call;
-import retrofit2.Callback;
 import retrofit2.Response;
 
 public class ImageRepository {
+    private final AppDatabase database;
     private final ImageDao imageDao;
+    private final UploadQueueDao queueDao;
     private final PreferenceManager preferenceManager;
     private final ApiService apiService;
-    private final KeyManager keyManager;
+    private final CryptoSession cryptoSession;
+    private final ServerImageSync serverImageSync;
+    private static UploadScheduler uploadScheduler;
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
     private final String TAG = "ImageRepo";
+    private static final int DEDUP_BATCH_SIZE = 200;
+    // Bytes hashed ahead of the uploads per run; the prepare stage hashes the rest as it goes
+    private static final long DEDUP_HASH_BUDGET_BYTES = 256L * 1024 * 1024;
+    private static final int INSERT_CHUNK_SIZE = 500;
 
     public ImageRepository(Context context) {
         AppDatabase db = AppDatabase.getInstance(context);
+        database = db;
         imageDao = db.imageDao();
+        queueDao = db.uploadQueueDao();
+        synchronized (ImageRepository.class) {
+            // One scheduler per process so the round-robin position is shared by all slots
+            if (uploadScheduler == null) {
+                uploadScheduler = new UploadScheduler(db);
+            }
+        }
         preferenceManager = new PreferenceManager(context);
         apiService = ApiClient.getApiService(preferenceManager.getBaseUrl());
-        keyManager = new KeyManager(context);
+        cryptoSession = CryptoSession.getInstance(context);
+        serverImageSync = new ServerImageSync(db, apiService, cryptoSession, preferenceManager);
 
     }
 
@@ -82,13 +97,14 @@ public class ImageRepository {
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    public Flowable<List<ImageEntity>> getAllImages() {
-        return imageDao.getAllImages()
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+    /**
+     * Paged view of the gallery that only loads rows around the visible range
+     */
+    public GalleryPager createGalleryPager() {
+        return new GalleryPager(database);
     }
 
-    public Flowable<List<ImageEntity>> getImagesByStatus(String status) {
+    public Flowable<List<ImageEntity>> getImagesByStatus(int status) {
         return imageDao.getImagesByStatus(status)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
@@ -116,6 +132,124 @@ public class ImageRepository {
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
+    /**
+     * Claim the next pending upload for an upload slot. The returned image is already
+     * leased to this process. Emissions stay on the io scheduler since the consumer is a
+     * background upload slot, not the UI.
+     *
+     * @return Maybe that completes empty when nothing is waiting to be uploaded
+     */
+    public Maybe<QueuedUpload> claimNextPendingUpload() {
+        return Maybe.fromCallable(() -> uploadScheduler.claimNext(
+                        UploadScheduler.policyFromName(preferenceManager.getUploadPolicy())))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Claim the next image the user queued by hand, ignoring the rest of the queue
+     */
+    public Maybe<QueuedUpload> claimNextPriorityUpload() {
+        return Maybe.fromCallable(uploadScheduler::claimNextHighPriority)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Claim small images to send together with one already claimed
+     */
+    public Single<List<QueuedUpload>> claimSmallUploads(long maxFileSize, int maxFiles, long maxTotalBytes) {
+        return Single.fromCallable(() -> uploadScheduler.claimSmallUploads(maxFileSize, maxFiles, maxTotalBytes))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Return a claimed image to the queue without counting a failed attempt, e.g. when
+     * the upload was stopped by the system. Its upload session is kept for resuming.
+     */
+    public Completable releaseClaimedUpload(long id) {
+        return Completable.fromAction(() -> queueDao.release(id))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Number and size of the images that are due for upload but not started yet
+     */
+    public Single<QueueTotals> getQueuedUploadTotals() {
+        return Single.fromCallable(() -> queueDao.getClaimableTotals(System.currentTimeMillis()))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Record a failed upload attempt. Retryable failures are scheduled again with exponential
+     * backoff and only touch the queue; permanent ones mark the image FAILED until the user
+     * queues it again.
+     */
+    public Completable markUploadFailed(QueuedUpload upload, boolean retryable) {
+        int retryCount = upload.getRetryCount() + 1;
+        long nextAttemptAt = RetryPolicy.nextAttemptAt(retryCount, retryable, System.currentTimeMillis());
+        return Completable.fromAction(() -> database.runInTransaction(() -> {
+                    queueDao.markFailed(upload.getId(), retryCount, nextAttemptAt);
+                    if (!retryable) {
+                        imageDao.setImageStatus(upload.getId(), ImageStatus.FAILED);
+                    }
+                }))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Earliest time a failed upload becomes due again
+     * @return Maybe that completes empty if no retry is scheduled
+     */
+    public Maybe<Long> getNextRetryTime() {
+        return Maybe.fromCallable(() -> queueDao.getNextRetryTime(RetryPolicy.NEVER))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Queue an existing image in the high-priority lane so it jumps ahead of the backlog
+     */
+    public Completable queueForPriorityUpload(long id) {
+        return Completable.fromAction(() -> database.runInTransaction(() -> {
+                    imageDao.setImageStatus(id, ImageStatus.PENDING);
+                    queueDao.enqueue(id, UploadScheduler.PRIORITY_HIGH, System.currentTimeMillis());
+                    queueDao.requeue(id, UploadScheduler.PRIORITY_HIGH);
+                }))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Queue lane of an image
+     * @return Maybe that completes empty if the image is not queued
+     */
+    public Maybe<Integer> getUploadPriority(long id) {
+        return Maybe.fromCallable(() -> queueDao.getPriority(id))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Release claims left by a previous process so their images can be claimed again
+     */
+    public Completable resetInterruptedUploads() {
+        return Completable.fromAction(() -> queueDao.releaseLeasesNotOwnedBy(UploadScheduler.LEASE_OWNER))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Bring the upload queue in line with the image statuses: add rows for images that became
+     * PENDING (inserted by the media scan, or switched in bulk from the settings) and remove
+     * rows of images that were uploaded or taken out of the queue
+     */
+    public Completable syncUploadQueue() {
+        return Completable.fromAction(() -> database.runInTransaction(() -> {
+                    queueDao.enqueueMissing(System.currentTimeMillis());
+                    queueDao.removeSettled();
+                }))
+                .subscribeOn(Schedulers.io());
+    }
+
     public Single<ImageEntity> getImageById(long id) {
         return imageDao.getImageById(id)
                 .subscribeOn(Schedulers.io())
@@ -128,134 +262,177 @@ public class ImageRepository {
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    public Completable updateImageStatus(long id, String status) {
+    public Completable updateImageStatus(long id, int status) {
         return imageDao.updateImageStatus(id, status)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    public Completable setImageUploaded(long id, String remoteUrl) {
-        return imageDao.setImageUploaded(id, remoteUrl)
+    /**
+     * Mark an image as uploaded and drop its queue row, with the upload session
+     * @param uploadedSize Bytes of the file actually sent, 0 if not known
+     */
+    public Completable setImageUploaded(long id, String remoteUrl, long uploadedSize) {
+        return Completable.fromAction(() -> database.runInTransaction(() -> {
+                    imageDao.setImageUploaded(id, remoteUrl, uploadedSize);
+                    queueDao.remove(id);
+                }))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    public Single<Long> getMostRecentImageTimestamp() {
-        return imageDao.getMostRecentImageTimestamp()
+    /**
+     * Persist the server-confirmed offset of a resumable upload so a retry, or a new
+     * process, continues from the last acknowledged chunk. Also renews the claim.
+     */
+    public Completable saveUploadProgress(long id, String sessionId, long uploadedBytes) {
+        return Completable.fromAction(() -> queueDao.updateProgress(id, sessionId, uploadedBytes,
+                        UploadScheduler.leaseExpiry(System.currentTimeMillis())))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Persist a newly opened upload session together with the per-file key material that is
+     * needed to re-encrypt the remaining segments identically after a restart
+     * @param uploadSize Length of the file sent in the session
+     * @param uploadFingerprint Fingerprint of that file, checked before the session is resumed
+     */
+    public Completable saveUploadSession(long id, String sessionId, String uploadKey, String uploadNoncePrefix,
+                                         long uploadedBytes, long uploadSize, String uploadFingerprint) {
+        return Completable.fromAction(() -> queueDao.updateSession(id, sessionId, uploadKey, uploadNoncePrefix,
+                        uploadedBytes, uploadSize, uploadFingerprint,
+                        UploadScheduler.leaseExpiry(System.currentTimeMillis())))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Total bytes the storage saver kept off the network
+     */
+    public Single<Long> getBytesSavedByReencoding() {
+        return Single.fromCallable(imageDao::getBytesSavedByReencoding)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
-    public void startSync() {
+    /**
+     * Mark pending uploads UPLOADED when an uploaded row or the server already has the same content.
+     * Hashes at most {@link #DEDUP_HASH_BUDGET_BYTES} per run, the rest are hashed when prepared.
+     */
+    public Completable deduplicatePendingUploads() {
+        return Completable.fromAction(() -> {
+                    hashPendingUploads();
 
-        // Get auth token
-        String authToken = preferenceManager.getAuthToken();
-        if (authToken == null) {
-            return;
-        }
+                    int localMatches = imageDao.markLocalDuplicatesUploaded();
+                    Log.d(TAG, "deduplicatePendingUploads: " + localMatches + " local duplicates");
 
-        // Call the API to get server images
-        apiService.getServerImages("Bearer " + authToken).enqueue(new Callback<ImageListResponse>() {
-            @Override
-            public void onResponse(@NonNull Call<ImageListResponse> call, @NonNull Response<ImageListResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    try {
-                        processServerImageList(response.body());
-                    } catch (Exception e) {
-                        Log.e("", "Error processing server images", e);
+                    String authToken = preferenceManager.getAuthToken();
+                    if (authToken != null) {
+                        checkPendingHashesWithServer("Bearer " + authToken);
                     }
-                }
-            }
+                    queueDao.removeSettled();
+                })
+                .subscribeOn(Schedulers.io());
+    }
+
+    public Completable saveContentHash(long id, String contentHash) {
+        return Completable.fromAction(() -> imageDao.setContentHash(id, contentHash))
+                .subscribeOn(Schedulers.io());
+    }
 
-            @Override
-            public void onFailure(@NonNull Call<ImageListResponse> call, @NonNull Throwable t) {
-                Log.e("TAG", "Network error retrieving server images", t);
+    private void hashPendingUploads() {
+        long afterId = 0;
+        long hashedBytes = 0;
+        List<ImageEntity> batch;
+        while (!(batch = imageDao.getPendingUploadsWithoutHash(afterId, DEDUP_BATCH_SIZE)).isEmpty()) {
+            for (ImageEntity image : batch) {
+                if (hashedBytes >= DEDUP_HASH_BUDGET_BYTES) {
+                    Log.d(TAG, "hashPendingUploads: budget used, rows after " + afterId + " are hashed on prepare");
+                    return;
+                }
+                afterId = image.getId();
+                File file = new File(image.getLocalUrl());
+                if (!file.exists()) {
+                    continue;
+                }
+                try {
+                    imageDao.setContentHash(image.getId(), SecurityUtils.sha256(file));
+                    hashedBytes += file.length();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error hashing " + image.getLocalUrl(), e);
+                }
             }
-        });
+        }
     }
 
-    private void processServerImageList(ImageListResponse response) {
-        try {
-            // Decrypt the server's response
-            String decryptedJson = CryptoUtils.decryptHybridPackage(
-                    response.getEncryptedResponse(),
-                    keyManager.getPrivateKey()
-            );
+    private void checkPendingHashesWithServer(String bearerToken) throws Exception {
+        cryptoSession.ensureSessionKey(apiService, bearerToken);
+        List<String> hashes;
+        while (!(hashes = imageDao.getUncheckedPendingHashes(DEDUP_BATCH_SIZE)).isEmpty()) {
+            Response<ContentHashCheckResponse> response =
+                    apiService.checkContentHashes(bearerToken, new ContentHashCheckRequest(hashes)).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                Log.e(TAG, "Content hash check failed: " + response.code());
+                return;
+            }
 
+            String decryptedJson = cryptoSession.decryptHybridPackage(
+                    response.body().getEncryptedResponse());
             if (decryptedJson == null) {
-                Log.e("TAG", "Failed to decrypt server response");
+                Log.e(TAG, "Failed to decrypt content hash response");
                 return;
             }
 
-            // Parse the response
             JSONObject jsonResponse = new JSONObject(decryptedJson);
-            boolean success = jsonResponse.getBoolean("success");
-
-            if (!success) {
+            if (!jsonResponse.getBoolean("success")) {
                 return;
             }
 
-            JSONArray imagesArray = jsonResponse.getJSONArray("images");
-
-            // Convert JSON array to list of ServerImage objects
-            Gson gson = new Gson();
-            Type listType = new TypeToken<List<ServerImage>>() {
-            }.getType();
-            List<ServerImage> serverImages = gson.fromJson(imagesArray.toString(), listType);
-            List<ImageEntity> entities = getImageEntities(serverImages);
-            saveImagesToLocalDB(entities);
-        } catch (Exception e) {
-            Log.e("TAG", "Error processing server image list", e);
+            JSONArray existing = jsonResponse.getJSONArray("existing");
+            for (int i = 0; i < existing.length(); i++) {
+                JSONObject match = existing.getJSONObject(i);
+                imageDao.markUploadedByHash(match.getString("hash"), "api/images/" + match.getLong("id"));
+            }
+            imageDao.markHashesChecked(hashes);
+            Log.d(TAG, "checkPendingHashesWithServer: " + existing.length() + " of " + hashes.size() + " already on server");
         }
     }
 
-    private List<ImageEntity> getImageEntities(List<ServerImage> serverImages) {
-        List<ImageEntity> entities = new ArrayList<>();
-        for (ServerImage image : serverImages) {
-            ImageEntity entity = new ImageEntity("", "UPLOADED", image.getSize(), image.getResolution(), image.getOriginalFilename(), image.getImageId(), image.getUpdatedTime());
-            entity.setRemoteUrl("api/images/" + image.getId());
-            entities.add(entity);
-        }
-        return entities;
+    public Single<Long> getMostRecentImageTimestamp() {
+        return imageDao.getMostRecentImageTimestamp()
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
     }
 
-    private void saveImagesToLocalDB(List<ImageEntity> entities) {
-        compositeDisposable.add(insertImages(entities).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(
-                result ->{
-                    Log.d(TAG, "saveImagesToLocalDB: "+result.size());
-                    preferenceManager.setAllServerImagesFetched();
-                },
-                error -> {
-                    Log.d(TAG, "saveImagesToLocalDB: "+error);
-                }
-        ));
+    public void startSync() {
+        // Get auth token
+        if (preferenceManager.getAuthToken() == null) {
+            return;
+        }
+
+        compositeDisposable.add(Completable.fromAction(serverImageSync::run)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        () -> Log.d(TAG, "Server image sync finished"),
+                        error -> Log.e(TAG, "Error syncing server images", error)));
     }
 
-    // Then in ImageRepository
+    /**
+     * Insert images that are not in the database yet. Each chunk is one transaction, so
+     * observers of the table are notified once per chunk rather than once per image;
+     * known images are skipped by the unique indices of {@link ImageEntity}.
+     * @param newImages Images to add
+     * @return row ids of the images that were added
+     */
     public Single<List<Long>> insertImages(List<ImageEntity> newImages) {
-        return imageDao.getAllImageFileNames()
-                .flatMap(existingFileNames -> {
-                    Set<String> fileNameSet = new HashSet<>(existingFileNames);
-                    List<ImageEntity> uniqueImages = new ArrayList<>();
-
-                    // Filter out images that already exist
-                    for (ImageEntity image : newImages) {
-                        if (!fileNameSet.contains(image.getFileName())) {
-                            uniqueImages.add(image);
-                        }
-                    }
-
-                    if (uniqueImages.isEmpty()) {
-                        return Single.just(new ArrayList<Long>());
-                    } else {
-                        // Insert images one by one and collect the IDs
-                        return Observable.fromIterable(uniqueImages)
-                                .flatMapSingle(imageDao::insertImage)
-                                .toList()
-                                .subscribeOn(Schedulers.io())
-                                .observeOn(AndroidSchedulers.mainThread());
-                    }
-                })
+        List<List<ImageEntity>> chunks = new ArrayList<>();
+        for (int i = 0; i < newImages.size(); i += INSERT_CHUNK_SIZE) {
+            chunks.add(newImages.subList(i, Math.min(newImages.size(), i + INSERT_CHUNK_SIZE)));
+        }
+        return Observable.fromIterable(chunks)
+                .concatMapSingle(imageDao::insertAllImage)
+                .flatMapIterable(ids -> ids)
+                .filter(id -> id != -1)
+                .toList()
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
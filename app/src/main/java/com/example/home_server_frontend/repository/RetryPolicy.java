@@ -0,0 +1,46 @@
+package com.example.home_server_frontend.repository;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter for failed uploads
+ */
+public class RetryPolicy {
+    /**
+     * Next-attempt time of a permanently failed image: it is never picked up automatically
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private static final long BASE_DELAY_MS = 30 * 1000L;
+    private static final long MAX_DELAY_MS = 6 * 60 * 60 * 1000L;
+
+    private static final Random random = new Random();
+
+    /**
+     * Delay before the given retry. The ceiling doubles with every attempt up to six hours,
+     * the actual delay is drawn from the upper half of it so images that failed together
+     * do not all come back at the same moment.
+     * @param retryCount Number of failed attempts so far, starting at 1
+     * @return delay in milliseconds
+     */
+    public static long backoffDelay(int retryCount) {
+        int exponent = Math.max(0, Math.min(retryCount - 1, 20));
+        long ceiling = Math.min(MAX_DELAY_MS, BASE_DELAY_MS << exponent);
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+
+    /**
+     * Time of the next attempt after a failure
+     * @param retryCount Number of failed attempts so far, including this one
+     * @param retryable Whether the failure can be retried
+     * @param now Current time in milliseconds
+     * @return next-attempt time in milliseconds, or {@link #NEVER}
+     */
+    public static long nextAttemptAt(int retryCount, boolean retryable, long now) {
+        if (!retryable) {
+            return NEVER;
+        }
+        return now + backoffDelay(retryCount);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.home_server_frontend.repository;
+
+import android.util.Log;
+
+import com.example.home_server_frontend.api.ApiService;
+import com.example.home_server_frontend.api.models.ImageListResponse;
+import com.example.home_server_frontend.api.models.ServerImage;
+import com.example.home_server_frontend.crypto.CryptoSession;
+import com.example.home_server_frontend.database.AppDatabase;
+import com.example.home_server_frontend.database.ImageDao;
+import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.example.home_server_frontend.utils.PreferenceManager;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Response;
+
+/**
+ * Pulls the server's image list incrementally.
+ *
+ * The server returns images ordered by (updated_time, id). Each page starts after a cursor on
+ * that order and is applied in its own transaction; the cursor is saved once the page is
+ * stored, so a restarted sync continues where the previous one stopped instead of
+ * downloading the whole catalogue again.
+ *
+ * Memory is bounded by {@link #PAGE_SIZE}, not by streaming the response: Retrofit holds the
+ * page's Base64 ciphertext as a String, and it is decoded into one array before decryption,
+ * so a page costs about twice its encoded size. Only the plaintext side is streamed; records
+ * are parsed one by one and inserted in small batches, without building a decrypted String
+ * or a JSON tree.
+ */
+public class ServerImageSync {
+    private static final String TAG = "ServerImageSync";
+    private static final int PAGE_SIZE = 500;
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    // One sync per process, a second caller just returns
+    private static final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final AppDatabase database;
+    private final ImageDao imageDao;
+    private final ApiService apiService;
+    private final CryptoSession cryptoSession;
+    private final PreferenceManager preferenceManager;
+    private final Gson gson = new Gson();
+
+    public ServerImageSync(AppDatabase database, ApiService apiService, CryptoSession cryptoSession,
+                           PreferenceManager preferenceManager) {
+        this.database = database;
+        this.imageDao = database.imageDao();
+        this.apiService = apiService;
+        this.cryptoSession = cryptoSession;
+        this.preferenceManager = preferenceManager;
+    }
+
+    /**
+     * Fetch and store pages until the server has nothing newer. Blocks the calling thread.
+     * @return number of images added
+     */
+    public int run() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            Log.d(TAG, "Sync already running");
+            return 0;
+        }
+        try {
+            return syncPages();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int syncPages() throws Exception {
+        String authToken = preferenceManager.getAuthToken();
+        if (authToken == null) {
+            return 0;
+        }
+
+        cryptoSession.ensureSessionKey(apiService, "Bearer " + authToken);
+        long cursorTime = preferenceManager.getServerSyncCursorTime();
+        long cursorId = preferenceManager.getServerSyncCursorId();
+        int added = 0;
+        while (true) {
+            Page page = syncPage("Bearer " + authToken, cursorTime, cursorId);
+            added += page.added;
+
+            boolean advanced = page.lastTime != cursorTime || page.lastId != cursorId;
+            if (advanced) {
+                cursorTime = page.lastTime;
+                cursorId = page.lastId;
+                preferenceManager.setServerSyncCursor(cursorTime, cursorId);
+            }
+
+            // A server that ignores the cursor returns everything at once without advancing it
+            if (!page.hasMore || !advanced) {
+                break;
+            }
+        }
+
+        preferenceManager.setAllServerImagesFetched();
+        Log.d(TAG, "Sync finished, " + added + " images added");
+        return added;
+    }
+
+    /**
+     * Fetch one page and stream it into the database in a single transaction. The payload is
+     * decrypted and parsed record by record; if it turns out to be corrupted or forged when the
+     * authentication tag is checked at its end, the transaction rolls back.
+     */
+    private Page syncPage(String bearerToken, long cursorTime, long cursorId) throws Exception {
+        Response<ImageListResponse> response = apiService
+                .getServerImagesSince(bearerToken, cursorTime, cursorId, PAGE_SIZE)
+                .execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Image list request failed with HTTP " + response.code());
+        }
+
+        return database.runInTransaction(() -> {
+            Page page = new Page(cursorTime, cursorId);
+            try (InputStream plaintext = cryptoSession.openHybridPackage(
+                    response.body().getEncryptedResponse());
+                 JsonReader reader = new JsonReader(new InputStreamReader(plaintext, StandardCharsets.UTF_8))) {
+                boolean success = false;
+                boolean hasMoreSent = false;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "success":
+                            success = reader.nextBoolean();
+                            break;
+                        case "hasMore":
+                            page.hasMore = reader.nextBoolean();
+                            hasMoreSent = true;
+                            break;
+                        case "images":
+                            readImages(reader, page);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                drain(plaintext);
+
+                if (!success) {
+                    throw new IOException("Server rejected image list request");
+                }
+                if (!hasMoreSent) {
+                    page.hasMore = page.count >= PAGE_SIZE;
+                }
+            }
+            return page;
+        });
+    }
+
+    private void readImages(JsonReader reader, Page page) throws IOException {
+        List<ServerImage> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ServerImage image = gson.fromJson(reader, ServerImage.class);
+            page.count++;
+            if (image.getUpdatedTime() > page.lastTime
+                    || (image.getUpdatedTime() == page.lastTime && image.getId() > page.lastId)) {
+                page.lastTime = image.getUpdatedTime();
+                page.lastId = image.getId();
+            }
+
+            batch.add(image);
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                page.added += storeBatch(batch);
+                batch.clear();
+            }
+        }
+        reader.endArray();
+        page.added += storeBatch(batch);
+    }
+
+    /**
+     * Store the images of a batch. A record synced before is updated in place, since the
+     * cursor moves past it for good; new ones are inserted, and the unique indices skip those
+     * that duplicate a local image. Runs inside the page transaction.
+     * @return number of images added
+     */
+    int storeBatch(List<ServerImage> serverImages) {
+        if (serverImages.isEmpty()) {
+            return 0;
+        }
+        List<ImageEntity> entities = new ArrayList<>(serverImages.size());
+        for (ServerImage image : serverImages) {
+            ImageEntity entity = toEntity(image);
+            int updated = imageDao.updateServerImage(entity.getServerId(), entity.getSize(),
+                    entity.getWidth(), entity.getHeight(), entity.getFileName(), entity.getImageId(),
+                    entity.getUpdatedTime(), entity.getRemoteUrl());
+            if (updated == 0) {
+                entities.add(entity);
+            }
+        }
+        if (entities.isEmpty()) {
+            return 0;
+        }
+        int added = 0;
+        for (long id : imageDao.insertServerImages(entities)) {
+            if (id != -1) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Read to the end of the stream so the cipher verifies the authentication tag
+     */
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) != -1) {
+            // Only the tag check at the end matters
+        }
+    }
+
+    static ImageEntity toEntity(ServerImage image) {
+        ImageEntity entity = new ImageEntity("", ImageStatus.UPLOADED, image.getSize(), image.getResolution(),
+                image.getOriginalFilename(), image.getImageId(), image.getUpdatedTime());
+        entity.setRemoteUrl("api/images/" + image.getId());
+        entity.setServerId((long) image.getId());
+        return entity;
+    }
+
+    private static class Page {
+        long lastTime;
+        long lastId;
+        int count;
+        int added;
+        boolean hasMore;
+
+        Page(long cursorTime, long cursorId) {
+            this.lastTime = cursorTime;
+            this.lastId = cursorId;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.home_server_frontend.repository;
+
+import com.example.home_server_frontend.database.AppDatabase;
+import com.example.home_server_frontend.database.QueuedUpload;
+import com.example.home_server_frontend.database.UploadQueueDao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which pending image an upload slot gets next.
+ *
+ * Images the user queued by hand (priority lane) always go first, oldest request first.
+ * The rest of the queue is ordered by the selected {@link Policy}. Within every policy
+ * rows that never failed are served before retries so a broken file does not block fresh work.
+ *
+ * Claims are leases on the upload_queue row rather than a status change of the image, so
+ * the gallery does not reload when a slot picks up work.
+ */
+public class UploadScheduler {
+
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    // Renewed with every acknowledged chunk, so only a dead upload lets it run out
+    private static final long LEASE_MS = TimeUnit.MINUTES.toMillis(15);
+
+    // Identifies this process as lease owner; leases of earlier processes are released at startup
+    static final String LEASE_OWNER = UUID.randomUUID().toString();
+
+    public enum Policy {
+        OLDEST_FIRST,
+        NEWEST_FIRST,
+        SMALLEST_FIRST,
+        FOLDER_ROUND_ROBIN
+    }
+
+    private final AppDatabase database;
+    private final UploadQueueDao queueDao;
+    private String lastFolder = "";
+
+    public UploadScheduler(AppDatabase database) {
+        this.database = database;
+        this.queueDao = database.uploadQueueDao();
+    }
+
+    /**
+     * Lease expiry for a claim taken or renewed now
+     */
+    static long leaseExpiry(long now) {
+        return now + LEASE_MS;
+    }
+
+    /**
+     * Pick the next image for the given policy and lease it in the same transaction, so
+     * concurrent slots never receive the same row. Must be called off the main thread.
+     * @param policy Ordering for the normal lane
+     * @return the claimed image, or null if the queue is empty
+     */
+    public synchronized QueuedUpload claimNext(Policy policy) {
+        long now = System.currentTimeMillis();
+        return database.runInTransaction(() -> {
+            QueuedUpload upload = queueDao.findHighPriority(PRIORITY_NORMAL, now);
+            if (upload == null) {
+                upload = findNext(policy, now);
+            }
+            if (upload != null) {
+                queueDao.lease(upload.getId(), LEASE_OWNER, leaseExpiry(now));
+            }
+            return upload;
+        });
+    }
+
+    /**
+     * Claim the next image from the priority lane only, leaving the normal lane to
+     * background work. Must be called off the main thread.
+     * @return the claimed image, or null if no image was queued by hand
+     */
+    public synchronized QueuedUpload claimNextHighPriority() {
+        long now = System.currentTimeMillis();
+        return database.runInTransaction(() -> {
+            QueuedUpload upload = queueDao.findHighPriority(PRIORITY_NORMAL, now);
+            if (upload != null) {
+                queueDao.lease(upload.getId(), LEASE_OWNER, leaseExpiry(now));
+            }
+            return upload;
+        });
+    }
+
+    /**
+     * Claim more small images to ride along in a batch request with one already claimed.
+     * Must be called off the main thread.
+     * @param maxFileSize Largest file size that may join a batch
+     * @param maxFiles Maximum number of images to claim
+     * @param maxTotalBytes Maximum total size of the claimed images
+     * @return the claimed images, possibly empty
+     */
+    public synchronized List<QueuedUpload> claimSmallUploads(long maxFileSize, int maxFiles, long maxTotalBytes) {
+        long now = System.currentTimeMillis();
+        return database.runInTransaction(() -> {
+            List<QueuedUpload> claimed = new ArrayList<>();
+            long totalBytes = 0;
+            for (QueuedUpload upload : queueDao.findSmall(maxFileSize, maxFiles, now)) {
+                if (totalBytes + upload.getSize() > maxTotalBytes) {
+                    break;
+                }
+                queueDao.lease(upload.getId(), LEASE_OWNER, leaseExpiry(now));
+                claimed.add(upload);
+                totalBytes += upload.getSize();
+            }
+            return claimed;
+        });
+    }
+
+    private QueuedUpload findNext(Policy policy, long now) {
+        switch (policy) {
+            case NEWEST_FIRST:
+                return queueDao.findNewest(now);
+            case SMALLEST_FIRST:
+                return queueDao.findSmallest(now);
+            case FOLDER_ROUND_ROBIN:
+                return findNextInFolderRotation(now);
+            case OLDEST_FIRST:
+            default:
+                return queueDao.findOldest(now);
+        }
+    }
+
+    /**
+     * Serve the folder that sorts after the one served last, wrapping around at the end
+     */
+    private QueuedUpload findNextInFolderRotation(long now) {
+        QueuedUpload upload = queueDao.findInFolderAfter(lastFolder, now);
+        if (upload == null) {
+            // Past the last folder, start again from the first one
+            upload = queueDao.findInFolderAfter(null, now);
+        }
+        if (upload != null) {
+            lastFolder = upload.getFolder() != null ? upload.getFolder() : "";
+        }
+        return upload;
+    }
+
+    /**
+     * Parse a stored policy name, falling back to oldest-first
+     */
+    public static Policy policyFromName(String name) {
+        if (name != null) {
+            for (Policy policy : Policy.values()) {
+                if (policy.name().equals(name)) {
+                    return policy;
+                }
+            }
+        }
+        return Policy.OLDEST_FIRST;
+    }
+}
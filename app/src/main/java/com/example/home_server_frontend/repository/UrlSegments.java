@@ -0,0 +1,33 @@
+package com.example.home_server_frontend.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared table of URL prefixes. Remote URLs of a library mostly share a handful of directory
+ * prefixes, so pages store a small index into this table instead of a copy of the prefix.
+ * Safe to use from any thread.
+ */
+class UrlSegments {
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<String> segments = new ArrayList<>();
+
+    /**
+     * Index of a prefix, adding it to the table on first use
+     */
+    synchronized int intern(String segment) {
+        Integer index = indices.get(segment);
+        if (index == null) {
+            index = segments.size();
+            segments.add(segment);
+            indices.put(segment, index);
+        }
+        return index;
+    }
+
+    synchronized String get(int index) {
+        return segments.get(index);
+    }
+}
@@ -0,0 +1,575 @@
+package com.example.home_server_frontend.service;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.home_server_frontend.api.ApiClient;
+import com.example.home_server_frontend.api.ApiService;
+import com.example.home_server_frontend.api.CountingRequestBody;
+import com.example.home_server_frontend.api.EncryptingFileRequestBody;
+import com.example.home_server_frontend.api.models.HybridEncryptionPackage;
+import com.example.home_server_frontend.api.models.ImageUploadResponse;
+import com.example.home_server_frontend.api.models.UploadSessionRequest;
+import com.example.home_server_frontend.api.models.UploadSessionResponse;
+import com.example.home_server_frontend.crypto.CryptoSession;
+import com.example.home_server_frontend.crypto.SegmentedAesGcm;
+import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.QueuedUpload;
+import com.example.home_server_frontend.repository.ImageRepository;
+import com.example.home_server_frontend.utils.ImageTranscoder;
+import com.example.home_server_frontend.utils.PreferenceManager;
+import com.example.home_server_frontend.utils.SecurityUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Uploads images through the resumable, segment-encrypted session API, or packs several small
+ * images into one batch request.
+ *
+ * Single uploads are split into {@link #prepare} (file checks, hashing, metadata and key
+ * encryption) and {@link #send} (network), so a pipeline can prepare the next image while the
+ * previous one is on the wire.
+ *
+ * All methods block, callers run them on a background thread. Byte progress is reported to
+ * {@link UploadProgressTracker}; the caller records the outcome in {@link ImageRepository}.
+ */
+public class ImageUploader {
+    private static final String TAG = "ImageUploader";
+    private static final int SEGMENTS_PER_CHUNK = 64; // ~4 MiB of ciphertext per request
+
+    // Images up to this size share batch requests, where per-request overhead dominates
+    public static final long BATCH_FILE_SIZE_LIMIT = 512 * 1024;
+    public static final int BATCH_MAX_FILES = 20;
+    public static final long BATCH_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Lets the caller stop an upload between two chunks
+     */
+    public interface StopSignal {
+        boolean isStopped();
+    }
+
+    /**
+     * Raised when an upload is stopped on request. The image should go back to the queue
+     * without counting a failed attempt.
+     */
+    public static class UploadStoppedException extends UploadException {
+        public UploadStoppedException() {
+            super("Upload stopped");
+        }
+    }
+
+    private final ImageRepository imageRepository;
+    private final PreferenceManager preferenceManager;
+    private final CryptoSession cryptoSession;
+    private final ApiService apiService;
+    private final ImageTranscoder transcoder;
+    private final UploadProgressTracker progressTracker = UploadProgressTracker.getInstance();
+    private final UploadPipelineMetrics metrics = UploadPipelineMetrics.getInstance();
+
+    /**
+     * An image ready to be sent, see {@link #prepare}
+     */
+    public static class PreparedUpload {
+        private final QueuedUpload image;
+        private final File file;
+        private String contentHash;
+        private String encryptedMetadata;
+        private byte[] fileKey;
+        private byte[] noncePrefix;
+        private byte[] wrappedKey;
+
+        private PreparedUpload(QueuedUpload image, File file) {
+            this.image = image;
+            this.file = file;
+        }
+
+        public QueuedUpload getImage() { return image; }
+    }
+
+    /**
+     * Outcome of one image in a batch request
+     */
+    public static class BatchItemResult {
+        private final QueuedUpload image;
+        private final String remoteUrl;
+        private final String errorMessage;
+        private final boolean retryable;
+
+        private BatchItemResult(QueuedUpload image, String remoteUrl, String errorMessage, boolean retryable) {
+            this.image = image;
+            this.remoteUrl = remoteUrl;
+            this.errorMessage = errorMessage;
+            this.retryable = retryable;
+        }
+
+        static BatchItemResult uploaded(QueuedUpload image, String remoteUrl) {
+            return new BatchItemResult(image, remoteUrl, null, false);
+        }
+
+        static BatchItemResult failed(QueuedUpload image, String errorMessage, boolean retryable) {
+            return new BatchItemResult(image, null, errorMessage, retryable);
+        }
+
+        public QueuedUpload getImage() { return image; }
+        public String getRemoteUrl() { return remoteUrl; }
+        public String getErrorMessage() { return errorMessage; }
+        public boolean isRetryable() { return retryable; }
+        public boolean isSuccess() { return remoteUrl != null; }
+    }
+
+    public ImageUploader(Context context, ImageRepository imageRepository) {
+        this.imageRepository = imageRepository;
+        this.preferenceManager = new PreferenceManager(context);
+        this.cryptoSession = CryptoSession.getInstance(context);
+        this.apiService = ApiClient.getUploadService(preferenceManager.getBaseUrl());
+        this.transcoder = new ImageTranscoder(context);
+    }
+
+    /**
+     * Do everything for an upload that does not need the server: check the file, re-encode it if
+     * storage saver is on, hash it and, unless a session can be resumed, create key material and
+     * encrypt the metadata. Runs in the pipeline's prepare stage while earlier images are still
+     * being sent.
+     * @param image Image claimed for upload
+     * @return the prepared upload for {@link #send}
+     */
+    public PreparedUpload prepare(QueuedUpload image) throws Exception {
+        long readStart = System.nanoTime();
+        File imageFile = new File(image.getLocalUrl());
+        if (!imageFile.exists()) {
+            Log.e(TAG, "Image file does not exist: " + image.getLocalUrl());
+            throw new UploadException("File not found", false);
+        }
+        metrics.read.recordWork(readStart, 0);
+
+        File uploadFile = imageFile;
+        if (preferenceManager.isStorageSaverEnabled()) {
+            long transcodeStart = System.nanoTime();
+            try {
+                uploadFile = transcoder.transcode(image.getId(), imageFile,
+                        preferenceManager.getStorageSaverMaxDimension(),
+                        preferenceManager.getStorageSaverQuality());
+            } catch (IOException e) {
+                // A file the decoder cannot handle is still backed up, just not smaller
+                Log.w(TAG, "Could not re-encode " + image.getFileName() + ", sending original", e);
+            }
+            metrics.transcode.recordWork(transcodeStart, imageFile.length());
+        }
+
+        if (hasResumableSession(image) && !isSessionFile(image, uploadFile)) {
+            // Edited, re-encoded or storage saver toggled: sealing other bytes under the session's
+            // key and nonces would reuse GCM nonces, so the session is abandoned
+            Log.d(TAG, "Dropping stale upload session of " + image.getFileName());
+            image.setUploadSessionId(null);
+        }
+
+        PreparedUpload prepared = new PreparedUpload(image, uploadFile);
+        if (!hasResumableSession(image)) {
+            prepareNewSession(prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * Hash the images of a batch ahead of sending it
+     */
+    public void prepareBatch(List<QueuedUpload> images) throws IOException {
+        for (QueuedUpload image : images) {
+            File imageFile = new File(image.getLocalUrl());
+            if (imageFile.exists()) {
+                requireContentHash(image, imageFile);
+            }
+        }
+    }
+
+    /**
+     * Send a prepared image and wait for the server's answer. Blocks the calling thread.
+     * @param prepared Result of {@link #prepare}
+     * @param stopSignal Checked between chunks, a stopped upload keeps its session for resuming
+     * @return the remote URL reported by the server
+     */
+    public String send(PreparedUpload prepared, StopSignal stopSignal) throws Exception {
+        String bearerToken = requireBearerToken();
+        cryptoSession.ensureSessionKey(apiService, bearerToken);
+        QueuedUpload image = prepared.image;
+        File imageFile = prepared.file;
+        if (!imageFile.exists()) {
+            Log.e(TAG, "Image file disappeared: " + image.getLocalUrl());
+            throw new UploadException("File not found", false);
+        }
+
+        long totalSize = SegmentedAesGcm.encryptedLength(imageFile.length());
+
+        // Resume the previous session if the server still knows it and we still hold its key
+        String sessionId = image.getUploadSessionId();
+        byte[] fileKey = null;
+        byte[] noncePrefix = null;
+        long offset = -1;
+        if (hasResumableSession(image) && isSessionFile(image, imageFile)) {
+            offset = resumeUploadSession(bearerToken, sessionId);
+            if (offset >= 0) {
+                fileKey = Base64.decode(image.getUploadKey(), Base64.NO_WRAP);
+                noncePrefix = Base64.decode(image.getUploadNoncePrefix(), Base64.NO_WRAP);
+                Log.d(TAG, "Resuming " + image.getFileName() + " at byte " + offset);
+            }
+        }
+
+        if (offset < 0) {
+            if (prepared.fileKey == null) {
+                // The session we meant to resume has expired, or the file changed since prepare
+                prepareNewSession(prepared);
+            }
+            fileKey = prepared.fileKey;
+            noncePrefix = prepared.noncePrefix;
+
+            UploadSessionResponse session = executeUploadCall(apiService.startUploadSession(
+                    bearerToken, new UploadSessionRequest(
+                            prepared.encryptedMetadata,
+                            prepared.contentHash,
+                            totalSize,
+                            SegmentedAesGcm.ALGORITHM,
+                            SegmentedAesGcm.SEGMENT_SIZE,
+                            Base64.encodeToString(prepared.wrappedKey, Base64.NO_WRAP),
+                            Base64.encodeToString(noncePrefix, Base64.NO_WRAP))));
+            sessionId = session.getSessionId();
+            offset = session.getOffset();
+            String fingerprint = fingerprint(imageFile);
+            imageRepository.saveUploadSession(image.getId(), sessionId,
+                    Base64.encodeToString(fileKey, Base64.NO_WRAP),
+                    Base64.encodeToString(noncePrefix, Base64.NO_WRAP),
+                    offset, imageFile.length(), fingerprint).blockingAwait();
+            image.setUploadSize(imageFile.length());
+            image.setUploadFingerprint(fingerprint);
+        }
+
+        SecretKey key = SegmentedAesGcm.keyFromBytes(fileKey);
+        long imageRowId = image.getId();
+        progressTracker.startFile(imageRowId, image.getFileName(), totalSize, offset);
+
+        // Send the remaining segments, persisting every acknowledged offset
+        while (offset < totalSize) {
+            if (stopSignal.isStopped()) {
+                throw new UploadStoppedException();
+            }
+            if (!isSessionFile(image, imageFile)) {
+                // Resealing other bytes with the session's nonces would break GCM; the retry
+                // sees the new fingerprint in prepare and opens a fresh session
+                throw new UploadException(image.getFileName() + " changed during upload");
+            }
+
+            // Chunks always start on a segment boundary so each one can be re-encrypted on its own
+            long firstSegment = offset / SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE;
+            long chunkOffset = firstSegment * SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE;
+            progressTracker.startChunk(imageRowId, chunkOffset);
+            RequestBody chunk = new CountingRequestBody(
+                    new EncryptingFileRequestBody(imageFile, key, noncePrefix,
+                            firstSegment, firstSegment + SEGMENTS_PER_CHUNK),
+                    (bytes, bodyBytesWritten) -> progressTracker.onBytesWritten(imageRowId, bytes, bodyBytesWritten));
+            UploadSessionResponse acknowledged = executeUploadCall(
+                    apiService.uploadChunk(bearerToken, sessionId, chunkOffset, chunk));
+
+            if (acknowledged.getOffset() <= chunkOffset) {
+                throw new UploadException("Server did not accept chunk at byte " + chunkOffset);
+            }
+            offset = acknowledged.getOffset();
+            imageRepository.saveUploadProgress(image.getId(), sessionId, offset).blockingAwait();
+        }
+
+        return readUploadResponse(executeUploadCall(apiService.completeUploadSession(bearerToken, sessionId)));
+    }
+
+    /**
+     * Drop the re-encoded copy of an image once its upload succeeded or failed for good
+     */
+    public void discardTranscoded(ImageEntity image) {
+        transcoder.delete(image.getId());
+    }
+
+    /**
+     * Drop re-encoded copies left behind by images that never finished uploading
+     */
+    public void pruneTranscodeCache() {
+        transcoder.pruneCache();
+    }
+
+    private static boolean hasResumableSession(QueuedUpload image) {
+        return image.getUploadSessionId() != null
+                && image.getUploadKey() != null
+                && image.getUploadNoncePrefix() != null;
+    }
+
+    /**
+     * Whether the file holds the bytes the image's session was opened for. Length and
+     * modification time change with every edit and every new re-encoded copy.
+     */
+    private static boolean isSessionFile(QueuedUpload image, File file) {
+        return fingerprint(file).equals(image.getUploadFingerprint());
+    }
+
+    private static String fingerprint(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Hash the file, create fresh key material for its body and encrypt metadata and key for the server
+     */
+    private void prepareNewSession(PreparedUpload prepared) throws Exception {
+        QueuedUpload image = prepared.image;
+        requireServerPublicKey();
+        // The hash identifies the original photo, also when a re-encoded copy is sent
+        prepared.contentHash = requireContentHash(image, new File(image.getLocalUrl()));
+
+        long encryptStart = System.nanoTime();
+
+        // Create a JSON metadata object
+        JSONObject metadata = new JSONObject();
+        metadata.put("fileName", image.getFileName());
+        metadata.put("size", image.getSize());
+        metadata.put("resolution", image.getResolution());
+        metadata.put("imageId", image.getImageId());
+        metadata.put("updatedTime", image.getUpdatedTime());
+
+        // Encrypt the metadata
+        String encryptedMetadata = cryptoSession.encryptForServer(metadata.toString());
+
+        // Fresh key material for the image body, wrapped for the server
+        byte[] fileKey = SegmentedAesGcm.newFileKey();
+        byte[] wrappedKey = cryptoSession.encryptForServer(fileKey);
+        if (encryptedMetadata == null || wrappedKey == null) {
+            throw new UploadException("Encryption error");
+        }
+        metrics.encrypt.recordWork(encryptStart, 0);
+
+        prepared.encryptedMetadata = encryptedMetadata;
+        prepared.fileKey = fileKey;
+        prepared.noncePrefix = SegmentedAesGcm.newNoncePrefix();
+        prepared.wrappedKey = wrappedKey;
+    }
+
+    /**
+     * Whether an image is small enough to share a batch request with other images
+     */
+    public static boolean isBatchCandidate(QueuedUpload image) {
+        return image.getSize() <= BATCH_FILE_SIZE_LIMIT && image.getUploadSessionId() == null;
+    }
+
+    /**
+     * Upload several small claimed images in one streamed multipart request. Every image gets
+     * its own body key and nonce prefix; one hybrid-encrypted manifest carries them together with
+     * the metadata, and one encrypted response carries the per-item results.
+     * @param images Images claimed for upload
+     * @return one result per image
+     * @throws Exception if the request as a whole fails, which applies to every image
+     */
+    public List<BatchItemResult> uploadBatch(List<QueuedUpload> images) throws Exception {
+        String bearerToken = requireBearerToken();
+        requireServerPublicKey();
+        cryptoSession.ensureSessionKey(apiService, bearerToken);
+
+        List<BatchItemResult> results = new ArrayList<>();
+        Map<String, QueuedUpload> imagesByPart = new LinkedHashMap<>();
+        List<MultipartBody.Part> parts = new ArrayList<>();
+        JSONArray items = new JSONArray();
+
+        for (QueuedUpload image : images) {
+            File imageFile = new File(image.getLocalUrl());
+            if (!imageFile.exists()) {
+                Log.e(TAG, "Image file does not exist: " + image.getLocalUrl());
+                results.add(BatchItemResult.failed(image, "File not found", false));
+                continue;
+            }
+
+            String partName = "file" + imagesByPart.size();
+            byte[] fileKey = SegmentedAesGcm.newFileKey();
+            byte[] noncePrefix = SegmentedAesGcm.newNoncePrefix();
+            long plainLength = imageFile.length();
+            long encryptedLength = SegmentedAesGcm.encryptedLength(plainLength);
+
+            JSONObject item = new JSONObject();
+            item.put("part", partName);
+            item.put("fileName", image.getFileName());
+            item.put("size", image.getSize());
+            item.put("resolution", image.getResolution());
+            item.put("imageId", image.getImageId());
+            item.put("updatedTime", image.getUpdatedTime());
+            item.put("contentHash", requireContentHash(image, imageFile));
+            item.put("length", encryptedLength);
+            item.put("key", Base64.encodeToString(fileKey, Base64.NO_WRAP));
+            item.put("noncePrefix", Base64.encodeToString(noncePrefix, Base64.NO_WRAP));
+            items.put(item);
+
+            long imageRowId = image.getId();
+            progressTracker.startFile(imageRowId, image.getFileName(), encryptedLength, 0);
+            RequestBody body = new CountingRequestBody(
+                    new EncryptingFileRequestBody(imageFile, SegmentedAesGcm.keyFromBytes(fileKey),
+                            noncePrefix, 0, SegmentedAesGcm.segmentCount(plainLength)),
+                    (bytes, bodyBytesWritten) -> progressTracker.onBytesWritten(imageRowId, bytes, bodyBytesWritten));
+            parts.add(MultipartBody.Part.createFormData(partName, partName, body));
+            imagesByPart.put(partName, image);
+        }
+
+        if (imagesByPart.isEmpty()) {
+            return results;
+        }
+
+        long encryptStart = System.nanoTime();
+        JSONObject manifest = new JSONObject();
+        manifest.put("algorithm", SegmentedAesGcm.ALGORITHM);
+        manifest.put("segmentSize", SegmentedAesGcm.SEGMENT_SIZE);
+        manifest.put("items", items);
+        HybridEncryptionPackage encryptedManifest =
+                cryptoSession.encryptHybridPackage(manifest.toString());
+        if (encryptedManifest == null) {
+            throw new UploadException("Encryption error");
+        }
+        metrics.encrypt.recordWork(encryptStart, 0);
+
+        JSONObject response = decryptUploadResponse(
+                executeUploadCall(apiService.uploadBatch(bearerToken, encryptedManifest, parts)));
+
+        // Per-item results: {part, success, remoteUrl, message, retryable}
+        JSONArray itemResults = response.getJSONArray("results");
+        for (int i = 0; i < itemResults.length(); i++) {
+            JSONObject itemResult = itemResults.getJSONObject(i);
+            QueuedUpload image = imagesByPart.remove(itemResult.optString("part"));
+            if (image == null) {
+                continue;
+            }
+            if (itemResult.optBoolean("success") && itemResult.has("remoteUrl")) {
+                results.add(BatchItemResult.uploaded(image, itemResult.getString("remoteUrl")));
+            } else {
+                results.add(BatchItemResult.failed(image,
+                        itemResult.optString("message", "Upload failed on server"),
+                        itemResult.optBoolean("retryable", false)));
+            }
+        }
+        for (QueuedUpload image : imagesByPart.values()) {
+            results.add(BatchItemResult.failed(image, "No result from server", true));
+        }
+        return results;
+    }
+
+    private String requireBearerToken() throws UploadException {
+        String authToken = preferenceManager.getAuthToken();
+        if (authToken == null) {
+            Log.e(TAG, "No auth token available");
+            throw new UploadException("Authentication error");
+        }
+        return "Bearer " + authToken;
+    }
+
+    private void requireServerPublicKey() throws Exception {
+        // Parsed once per process, later calls only check the cached key
+        if (cryptoSession.getServerPublicKey() == null) {
+            Log.e(TAG, "Server public key not found");
+            throw new UploadException("Encryption error");
+        }
+    }
+
+    /**
+     * Rows queued after the dedup pass are hashed here
+     */
+    private String requireContentHash(ImageEntity image, File imageFile) throws IOException {
+        String contentHash = image.getContentHash();
+        if (contentHash == null) {
+            long hashStart = System.nanoTime();
+            contentHash = SecurityUtils.sha256(imageFile);
+            metrics.hash.recordWork(hashStart, imageFile.length());
+            imageRepository.saveContentHash(image.getId(), contentHash).blockingAwait();
+            image.setContentHash(contentHash);
+        }
+        return contentHash;
+    }
+
+    /**
+     * Ask the server how much of an existing session it holds
+     * @return the confirmed offset, or -1 if the session is gone and a new one must be opened
+     */
+    private long resumeUploadSession(String bearerToken, String sessionId) throws UploadException {
+        Response<UploadSessionResponse> response;
+        try {
+            response = apiService.getUploadSession(bearerToken, sessionId).execute();
+        } catch (IOException e) {
+            throw new UploadException("Network error: " + e.getMessage());
+        }
+
+        if (response.code() == 404 || response.code() == 410) {
+            Log.d(TAG, "Upload session " + sessionId + " expired, starting over");
+            return -1;
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            throw UploadException.fromHttpStatus(response.code(), "Server error: Error code " + response.code());
+        }
+        return response.body().getOffset();
+    }
+
+    /**
+     * Execute an upload call on the calling thread and unwrap its body
+     */
+    private <T> T executeUploadCall(Call<T> call) throws UploadException {
+        Response<T> response;
+        try {
+            response = call.execute();
+        } catch (IOException e) {
+            Log.e(TAG, "Upload failed", e);
+            throw new UploadException("Network error: " + e.getMessage());
+        }
+
+        if (!response.isSuccessful() || response.body() == null) {
+            String errorMessage = "Server error: " + (response.code() == 401 ? "Unauthorized" :
+                    response.code() == 404 ? "Not found" :
+                            "Error code " + response.code());
+            Log.e(TAG, errorMessage);
+            throw UploadException.fromHttpStatus(response.code(), errorMessage);
+        }
+        return response.body();
+    }
+
+    /**
+     * Decrypt the server's response and extract the remote URL
+     */
+    private String readUploadResponse(ImageUploadResponse response) throws Exception {
+        // Extract the remote URL
+        return decryptUploadResponse(response).getString("remoteUrl");
+    }
+
+    /**
+     * Decrypt the server's response and fail if the server rejected the upload
+     */
+    private JSONObject decryptUploadResponse(ImageUploadResponse response) throws Exception {
+        // Decrypt the server's response
+        String decryptedJson = cryptoSession.decryptHybridPackage(response.getEncryptedResponse());
+
+        if (decryptedJson == null) {
+            Log.e(TAG, "Failed to decrypt server response");
+            throw new UploadException("Decryption error");
+        }
+
+        // Parse the response
+        JSONObject jsonResponse = new JSONObject(decryptedJson);
+        if (!jsonResponse.getBoolean("success")) {
+            String errorMessage = jsonResponse.optString("message", "Upload failed on server");
+            Log.e(TAG, errorMessage);
+            // The server processed the upload and rejected it, sending it again will not help
+            throw new UploadException(errorMessage, false);
+        }
+        return jsonResponse;
+    }
+}
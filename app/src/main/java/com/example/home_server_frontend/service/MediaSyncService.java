@@ -16,10 +16,12 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.home_server_frontend.R;
 import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
 import com.example.home_server_frontend.repository.ImageRepository;
 import com.example.home_server_frontend.ui.MainActivity;
 import com.example.home_server_frontend.utils.ImageUtils;
 import com.example.home_server_frontend.utils.PreferenceManager;
+import com.example.home_server_frontend.workers.UploadWorker;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -35,9 +37,12 @@ public class MediaSyncService extends Service {
     private static final String TAG = "MediaSyncService";
     private static final String CHANNEL_ID = "MediaSyncChannel";
     private static final int NOTIFICATION_ID = 1002;
+    private static final long NOTIFICATION_INTERVAL_MS = 1000;
+    private static final String NOTIFICATION_TITLE = "Media Sync Service";
 
     private ImageRepository imageRepository;
     private PreferenceManager preferenceManager;
+    private NotificationDispatcher notificationDispatcher;
     private final CompositeDisposable disposables = new CompositeDisposable();
 
     @Override
@@ -48,7 +53,10 @@ public class MediaSyncService extends Service {
         preferenceManager = new PreferenceManager(this);
 
         createNotificationChannel();
-        startForeground(NOTIFICATION_ID, createNotification("Checking for new images...").build());
+        notificationDispatcher = new NotificationDispatcher(this, NOTIFICATION_ID,
+                createNotificationBuilder(), NOTIFICATION_INTERVAL_MS);
+        startForeground(NOTIFICATION_ID,
+                notificationDispatcher.buildInitial(NOTIFICATION_TITLE, "Checking for new images..."));
 
         disposables.add(imageRepository
                 .getMostRecentImageTimestamp()
@@ -141,7 +149,7 @@ public class MediaSyncService extends Service {
             long fileSize = ImageUtils.getImageSize(imageData.getPath());
             String resolution = ImageUtils.getImageResolution(imageData.getPath());
 
-            ImageEntity entity = new ImageEntity(imageData.getPath(), preferenceManager.isAutoUploadEnabled() ? "PENDING" : "LOCAL", fileSize, resolution, file.getName(), imageData.getId(), imageData.getUpdatedTime());
+            ImageEntity entity = new ImageEntity(imageData.getPath(), preferenceManager.isAutoUploadEnabled() ? ImageStatus.PENDING : ImageStatus.LOCAL, fileSize, resolution, file.getName(), imageData.getId(), imageData.getUpdatedTime());
             entities.add(entity);
         }
 
@@ -153,9 +161,9 @@ public class MediaSyncService extends Service {
         // Insert all entities
         disposables.add(imageRepository.insertImages(entities).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread()).subscribe(ids -> {
             Log.d(TAG, "Added " + ids.size() + " images to database");
-            // If auto-upload is enabled, start the upload service
+            // If auto-upload is enabled, queue the backup upload work
             if (preferenceManager.isAutoUploadEnabled()) {
-                startUploadService();
+                UploadWorker.enqueueBackup(this);
             }
             onComplete.run();
         }, error -> {
@@ -164,15 +172,6 @@ public class MediaSyncService extends Service {
         }));
     }
 
-    private void startUploadService() {
-        Intent serviceIntent = new Intent(this, UploadService.class);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-    }
-
     // Notification methods
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -183,14 +182,12 @@ public class MediaSyncService extends Service {
         }
     }
 
-    private NotificationCompat.Builder createNotification(String content) {
-        return new NotificationCompat.Builder(this, CHANNEL_ID).setContentTitle("Media Sync Service").setContentText(content).setSmallIcon(R.drawable.ic_launcher_foreground).setPriority(NotificationCompat.PRIORITY_LOW);
+    private NotificationCompat.Builder createNotificationBuilder() {
+        return new NotificationCompat.Builder(this, CHANNEL_ID).setSmallIcon(R.drawable.ic_launcher_foreground).setPriority(NotificationCompat.PRIORITY_LOW);
     }
 
     private void updateNotification(String content) {
-        NotificationManager manager = getSystemService(NotificationManager.class);
-        NotificationCompat.Builder builder = createNotification(content);
-        manager.notify(NOTIFICATION_ID, builder.build());
+        notificationDispatcher.update(NOTIFICATION_TITLE, content);
     }
 
     @Override
@@ -208,6 +205,7 @@ public class MediaSyncService extends Service {
     @Override
     public void onDestroy() {
         disposables.clear();
+        notificationDispatcher.cancel();
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.example.home_server_frontend.service;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.Objects;
+
+/**
+ * Posts the status notification of a foreground service without flooding the system.
+ *
+ * Callers may report state from any thread as often as they like. Only the latest state is
+ * kept, and it is flushed on one long-lived main-thread handler at most once per interval,
+ * reusing the same builder. Identical states are not posted again.
+ */
+public class NotificationDispatcher {
+    private static final String TAG = "NotificationDispatcher";
+    private static final int NO_PROGRESS = -1;
+
+    private final NotificationManager notificationManager;
+    private final NotificationCompat.Builder builder;
+    private final int notificationId;
+    private final long minIntervalMs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    // All state below is guarded by this
+    private String pendingTitle;
+    private String pendingContent;
+    private int pendingProgress = NO_PROGRESS;
+    private boolean flushScheduled;
+
+    private String shownTitle;
+    private String shownContent;
+    private int shownProgress = NO_PROGRESS;
+    private long lastFlush;
+
+    /**
+     * @param context Service context
+     * @param notificationId Id of the foreground notification
+     * @param builder Builder with channel, icon and flags already set, reused for every post
+     * @param minIntervalMs Minimum time between two posts
+     */
+    public NotificationDispatcher(Context context, int notificationId,
+                                  NotificationCompat.Builder builder, long minIntervalMs) {
+        this.notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.notificationId = notificationId;
+        this.builder = builder;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    /**
+     * Build the notification for startForeground and remember it as the posted state
+     */
+    public synchronized Notification buildInitial(String title, String content) {
+        pendingTitle = title;
+        pendingContent = content;
+        pendingProgress = NO_PROGRESS;
+        shownTitle = title;
+        shownContent = content;
+        shownProgress = NO_PROGRESS;
+        lastFlush = SystemClock.elapsedRealtime();
+        return apply(title, content, NO_PROGRESS).build();
+    }
+
+    /**
+     * Show a status line without a progress bar
+     */
+    public void update(String title, String content) {
+        update(title, content, NO_PROGRESS);
+    }
+
+    /**
+     * Show a status line with a determinate progress bar
+     * @param percent Progress from 0 to 100
+     */
+    public void updateProgress(String title, String content, int percent) {
+        update(title, content, Math.max(0, Math.min(100, percent)));
+    }
+
+    /**
+     * Drop any state that has not been posted yet, e.g. when the service is destroyed
+     */
+    public synchronized void cancel() {
+        mainHandler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+    }
+
+    /**
+     * Drop pending state and remove the posted notification, for work that was never promoted
+     * to the foreground and so has nobody to take its notification down
+     */
+    public synchronized void dismiss() {
+        cancel();
+        notificationManager.cancel(notificationId);
+        shownTitle = null;
+        shownContent = null;
+        shownProgress = NO_PROGRESS;
+    }
+
+    private synchronized void update(String title, String content, int progress) {
+        pendingTitle = title;
+        pendingContent = content;
+        pendingProgress = progress;
+        if (flushScheduled) {
+            return;
+        }
+
+        flushScheduled = true;
+        long wait = lastFlush + minIntervalMs - SystemClock.elapsedRealtime();
+        mainHandler.postDelayed(flushRunnable, Math.max(0, wait));
+    }
+
+    private synchronized void flush() {
+        flushScheduled = false;
+        if (pendingProgress == shownProgress && Objects.equals(pendingTitle, shownTitle)
+                && Objects.equals(pendingContent, shownContent)) {
+            return;
+        }
+
+        try {
+            notificationManager.notify(notificationId,
+                    apply(pendingTitle, pendingContent, pendingProgress).build());
+            shownTitle = pendingTitle;
+            shownContent = pendingContent;
+            shownProgress = pendingProgress;
+            lastFlush = SystemClock.elapsedRealtime();
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating notification", e);
+        }
+    }
+
+    private NotificationCompat.Builder apply(String title, String content, int progress) {
+        builder.setContentTitle(title).setContentText(content);
+        if (progress == NO_PROGRESS) {
+            builder.setProgress(0, 0, false);
+        } else {
+            builder.setProgress(100, progress, false);
+        }
+        return builder;
+    }
+}
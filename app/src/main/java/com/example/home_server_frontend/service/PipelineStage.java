@@ -0,0 +1,72 @@
+package com.example.home_server_frontend.service;
+
+import com.example.home_server_frontend.utils.ImageUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one stage of the upload pipeline. Busy time is spent on the stage's own work,
+ * wait time blocked on a neighbouring stage: an empty input queue means the stage is starved,
+ * a full output queue means the next stage is the bottleneck.
+ */
+public class PipelineStage {
+    private final String name;
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    public PipelineStage(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Count one unit of work that started at the given time
+     * @param startNanos Value of System.nanoTime() when the work started
+     * @param byteCount Bytes processed, 0 if not applicable
+     */
+    public void recordWork(long startNanos, long byteCount) {
+        items.incrementAndGet();
+        bytes.addAndGet(byteCount);
+        busyNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Count time spent blocked on a queue since the given time
+     */
+    public void recordWait(long startNanos) {
+        waitNanos.addAndGet(System.nanoTime() - startNanos);
+    }
+
+    public String getName() { return name; }
+    public long getItems() { return items.get(); }
+    public long getBytes() { return bytes.get(); }
+    public long getBusyMillis() { return TimeUnit.NANOSECONDS.toMillis(busyNanos.get()); }
+    public long getWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.get()); }
+
+    public void reset() {
+        items.set(0);
+        bytes.set(0);
+        busyNanos.set(0);
+        waitNanos.set(0);
+    }
+
+    /**
+     * One-line description such as "send: 120 items, 48 MB, busy 9000 ms (5.3 MB/s), waiting 40 ms"
+     */
+    public String summary() {
+        long busyMillis = getBusyMillis();
+        StringBuilder summary = new StringBuilder()
+                .append(name).append(": ")
+                .append(getItems()).append(" items");
+        if (getBytes() > 0) {
+            summary.append(", ").append(ImageUtils.formatFileSize(getBytes()));
+        }
+        summary.append(", busy ").append(busyMillis).append(" ms");
+        if (getBytes() > 0 && busyMillis > 0) {
+            summary.append(" (").append(ImageUtils.formatFileSize(getBytes() * 1000 / busyMillis)).append("/s)");
+        }
+        return summary.append(", waiting ").append(getWaitMillis()).append(" ms").toString();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.home_server_frontend.service;
+
+/**
+ * Raised when a single image upload cannot be completed. Retryable failures (network errors,
+ * 5xx, throttling) are retried with backoff, permanent ones (missing file, rejected request)
+ * stay FAILED until the user queues the image again.
+ */
+public class UploadException extends Exception {
+    private final boolean retryable;
+
+    public UploadException(String message) {
+        this(message, true);
+    }
+
+    public UploadException(String message, boolean retryable) {
+        super(message);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * Classify an unsuccessful HTTP response
+     * @param code HTTP status code
+     * @param message Error message
+     * @return exception that is retryable for 5xx, 408, 429 and 401, permanent for other 4xx
+     */
+    public static UploadException fromHttpStatus(int code, String message) {
+        boolean retryable = code >= 500 || code == 408 || code == 429
+                // An expired token is fixed by logging in again, so keep the image queued
+                || code == 401;
+        return new UploadException(message, retryable);
+    }
+
+    /**
+     * Whether a failure should be retried later
+     * @param error Failure of an upload attempt
+     * @return true for retryable upload errors and any unexpected exception
+     */
+    public static boolean isRetryable(Throwable error) {
+        return !(error instanceof UploadException) || ((UploadException) error).isRetryable();
+    }
+}
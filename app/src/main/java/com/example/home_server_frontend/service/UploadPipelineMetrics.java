@@ -0,0 +1,38 @@
+package com.example.home_server_frontend.service;
+
+import android.util.Log;
+
+/**
+ * Process-wide metrics of the staged upload pipeline: read (claiming rows, checking files),
+ * transcode (storage saver), hash, encrypt (metadata, keys and body segments) and send.
+ */
+public class UploadPipelineMetrics {
+    private static UploadPipelineMetrics instance;
+
+    public final PipelineStage read = new PipelineStage("read");
+    public final PipelineStage transcode = new PipelineStage("transcode");
+    public final PipelineStage hash = new PipelineStage("hash");
+    public final PipelineStage encrypt = new PipelineStage("encrypt");
+    public final PipelineStage send = new PipelineStage("send");
+
+    public static synchronized UploadPipelineMetrics getInstance() {
+        if (instance == null) {
+            instance = new UploadPipelineMetrics();
+        }
+        return instance;
+    }
+
+    public PipelineStage[] getStages() {
+        return new PipelineStage[]{read, transcode, hash, encrypt, send};
+    }
+
+    /**
+     * Log one line per stage and start counting afresh
+     */
+    public void logAndReset(String tag) {
+        for (PipelineStage stage : getStages()) {
+            Log.d(tag, "Pipeline " + stage.summary());
+            stage.reset();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.home_server_frontend.service;
+
+import com.example.home_server_frontend.utils.ImageUtils;
+
+/**
+ * Immutable snapshot of upload progress, published by {@link UploadProgressTracker}
+ */
+public class UploadProgress {
+    public static final long UNKNOWN_ETA = -1;
+
+    private final String currentFileName;
+    private final int currentFilePercent;
+    private final int activeFiles;
+    private final int remainingFiles;
+    private final int completedFiles;
+    private final long sentBytes;
+    private final long remainingBytes;
+    private final long bytesPerSecond;
+    private final long etaSeconds;
+
+    public UploadProgress(String currentFileName, int currentFilePercent, int activeFiles, int remainingFiles,
+                          int completedFiles, long sentBytes, long remainingBytes, long bytesPerSecond,
+                          long etaSeconds) {
+        this.currentFileName = currentFileName;
+        this.currentFilePercent = currentFilePercent;
+        this.activeFiles = activeFiles;
+        this.remainingFiles = remainingFiles;
+        this.completedFiles = completedFiles;
+        this.sentBytes = sentBytes;
+        this.remainingBytes = remainingBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.etaSeconds = etaSeconds;
+    }
+
+    public static UploadProgress idle() {
+        return new UploadProgress(null, 0, 0, 0, 0, 0, 0, 0, UNKNOWN_ETA);
+    }
+
+    public boolean isActive() {
+        return activeFiles > 0;
+    }
+
+    /**
+     * Most recently started file among those in flight
+     */
+    public String getCurrentFileName() { return currentFileName; }
+    public int getCurrentFilePercent() { return currentFilePercent; }
+    public int getActiveFiles() { return activeFiles; }
+    public int getRemainingFiles() { return remainingFiles; }
+    public int getCompletedFiles() { return completedFiles; }
+    public long getSentBytes() { return sentBytes; }
+    public long getRemainingBytes() { return remainingBytes; }
+    public long getBytesPerSecond() { return bytesPerSecond; }
+    public long getEtaSeconds() { return etaSeconds; }
+
+    /**
+     * One-line description such as "Uploaded 3, 117 left - 2.4 MB/s - about 5 min"
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder()
+                .append("Uploaded ").append(completedFiles)
+                .append(", ").append(remainingFiles).append(" left");
+        if (bytesPerSecond > 0) {
+            summary.append(" - ").append(ImageUtils.formatFileSize(bytesPerSecond)).append("/s");
+        }
+        if (etaSeconds >= 0) {
+            summary.append(" - about ").append(formatDuration(etaSeconds));
+        }
+        return summary.toString();
+    }
+
+    private static String formatDuration(long seconds) {
+        if (seconds < 60) {
+            return seconds + " s";
+        }
+        if (seconds < 3600) {
+            return (seconds / 60) + " min";
+        }
+        return (seconds / 3600) + " h " + ((seconds % 3600) / 60) + " min";
+    }
+
+    /**
+     * Whole-queue progress since uploads started
+     * @return percentage between 0 and 100
+     */
+    public int getQueuePercent() {
+        long total = sentBytes + remainingBytes;
+        return total <= 0 ? 0 : (int) (sentBytes * 100 / total);
+    }
+}
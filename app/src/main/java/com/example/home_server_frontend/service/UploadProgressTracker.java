@@ -0,0 +1,204 @@
+package com.example.home_server_frontend.service;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+
+/**
+ * Process-wide aggregator for upload progress.
+ *
+ * Upload slots report bytes as they are written to the socket. The tracker keeps per-file
+ * progress, whole-queue totals, a moving-average throughput and an ETA, and publishes
+ * {@link UploadProgress} snapshots that the UI and the notification can both subscribe to.
+ * Snapshots are published at most every {@link #PUBLISH_INTERVAL_MS}; subscribers that
+ * redraw expensive views should throttle further.
+ */
+public class UploadProgressTracker {
+    private static final long PUBLISH_INTERVAL_MS = 100;
+    private static final long THROUGHPUT_SAMPLE_MS = 500;
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private static UploadProgressTracker instance;
+
+    private final BehaviorSubject<UploadProgress> progressSubject =
+            BehaviorSubject.createDefault(UploadProgress.idle());
+    private final Map<Long, FileProgress> activeFiles = new LinkedHashMap<>();
+
+    private int completedFiles;
+    private int queuedFiles;
+    private long queuedBytes;
+    private long sentBytes;
+
+    private long sampleStart;
+    private long sampleBytes;
+    private double bytesPerSecond;
+    private long lastPublish;
+
+    public static synchronized UploadProgressTracker getInstance() {
+        if (instance == null) {
+            instance = new UploadProgressTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Stream of progress snapshots, starting with the latest one
+     */
+    public Observable<UploadProgress> observe() {
+        return progressSubject;
+    }
+
+    /**
+     * Count completed files and sent bytes from 0 for a new upload run
+     */
+    public synchronized void startRun() {
+        completedFiles = 0;
+        sentBytes = 0;
+        publish(true);
+    }
+
+    /**
+     * Update the part of the queue that has not been started yet
+     * @param files Number of images waiting
+     * @param bytes Their total size
+     */
+    public synchronized void setQueuedTotals(int files, long bytes) {
+        queuedFiles = files;
+        queuedBytes = bytes;
+        publish(true);
+    }
+
+    /**
+     * Register a file that a slot starts sending
+     * @param id Image row id
+     * @param fileName Name shown to the user
+     * @param totalBytes Bytes to send for the whole file
+     * @param confirmedBytes Bytes the server already holds from a previous attempt
+     */
+    public synchronized void startFile(long id, String fileName, long totalBytes, long confirmedBytes) {
+        activeFiles.put(id, new FileProgress(fileName, totalBytes, confirmedBytes));
+        if (sampleStart == 0) {
+            sampleStart = SystemClock.elapsedRealtime();
+        }
+        publish(true);
+    }
+
+    /**
+     * A new request for the file starts at the given offset, dropping bytes of a failed attempt
+     */
+    public synchronized void startChunk(long id, long offset) {
+        FileProgress file = activeFiles.get(id);
+        if (file != null) {
+            sentBytes += offset - file.sent;
+            file.sent = offset;
+            file.requestOffset = offset;
+        }
+    }
+
+    /**
+     * Whether a slot is sending the image right now; the gallery shows it as uploading
+     */
+    public synchronized boolean isUploading(long id) {
+        return activeFiles.containsKey(id);
+    }
+
+    /**
+     * Bytes written to the socket for the current request of a file
+     * @param bytes Bytes written since the previous call, all of them count for throughput
+     * @param requestBytesWritten Bytes of the request body written so far; a body that OkHttp
+     *                            writes again starts from 0 and replaces the earlier progress
+     */
+    public synchronized void onBytesWritten(long id, long bytes, long requestBytesWritten) {
+        FileProgress file = activeFiles.get(id);
+        if (file != null) {
+            long sent = Math.min(file.total, file.requestOffset + requestBytesWritten);
+            sentBytes += sent - file.sent;
+            file.sent = sent;
+        }
+        sampleThroughput(bytes);
+        publish(false);
+    }
+
+    public synchronized void finishFile(long id, boolean success) {
+        FileProgress file = activeFiles.remove(id);
+        if (success) {
+            completedFiles++;
+        } else if (file != null) {
+            // The file goes back to the queue and is counted in its totals again
+            sentBytes -= file.sent;
+        }
+        if (activeFiles.isEmpty() && queuedFiles == 0) {
+            // Queue drained, the next burst starts its own throughput average
+            sampleStart = 0;
+            sampleBytes = 0;
+            bytesPerSecond = 0;
+        }
+        publish(true);
+    }
+
+    private void sampleThroughput(long bytes) {
+        long now = SystemClock.elapsedRealtime();
+        sampleBytes += bytes;
+        long elapsed = now - sampleStart;
+        if (elapsed < THROUGHPUT_SAMPLE_MS) {
+            return;
+        }
+
+        double rate = sampleBytes * 1000.0 / elapsed;
+        bytesPerSecond = bytesPerSecond == 0
+                ? rate
+                : THROUGHPUT_SMOOTHING * rate + (1 - THROUGHPUT_SMOOTHING) * bytesPerSecond;
+        sampleStart = now;
+        sampleBytes = 0;
+    }
+
+    private void publish(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastPublish < PUBLISH_INTERVAL_MS) {
+            return;
+        }
+        lastPublish = now;
+
+        long remainingBytes = queuedBytes;
+        String currentFileName = null;
+        int currentFilePercent = 0;
+        for (FileProgress file : activeFiles.values()) {
+            remainingBytes += file.total - file.sent;
+            currentFileName = file.fileName;
+            currentFilePercent = file.total <= 0 ? 100 : (int) (file.sent * 100 / file.total);
+        }
+
+        long eta = bytesPerSecond > 0
+                ? (long) (remainingBytes / bytesPerSecond)
+                : UploadProgress.UNKNOWN_ETA;
+
+        progressSubject.onNext(new UploadProgress(
+                currentFileName,
+                currentFilePercent,
+                activeFiles.size(),
+                queuedFiles + activeFiles.size(),
+                completedFiles,
+                sentBytes,
+                remainingBytes,
+                (long) bytesPerSecond,
+                eta));
+    }
+
+    private static class FileProgress {
+        final String fileName;
+        final long total;
+        long sent;
+        long requestOffset;
+
+        FileProgress(String fileName, long total, long sent) {
+            this.fileName = fileName;
+            this.total = total;
+            this.sent = sent;
+            this.requestOffset = sent;
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.home_server_frontend.ui;
 
 import android.annotation.SuppressLint;
-import android.content.Intent;
-import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Menu;
@@ -16,10 +14,12 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.home_server_frontend.R;
 import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
 import com.example.home_server_frontend.repository.ImageRepository;
-import com.example.home_server_frontend.service.UploadService;
+import com.example.home_server_frontend.repository.UploadScheduler;
 import com.example.home_server_frontend.utils.ImageUtils;
 import com.example.home_server_frontend.utils.PreferenceManager;
+import com.example.home_server_frontend.workers.UploadWorker;
 import com.github.chrisbanes.photoview.PhotoView;
 import com.google.gson.Gson;
 import com.squareup.picasso.Callback;
@@ -133,26 +133,30 @@ public class ImageDetailsActivity extends AppCompatActivity {
         // Create a new image entity for the database
         ImageEntity imageEntity = new ImageEntity(
                 imagePath,
-                "PENDING",  // Initial status
+                ImageStatus.PENDING,  // Initial status
                 fileSize,
                 resolution,
                 imageFileName,
                 imageID,
                 imageUpdateTime
         );
-
         // Save to database
         disposables.add(
                 imageRepository.getImageByLocalUrl(imagePath)
                         .subscribe(
                                 existingImage -> {
-                                    // Image already exists in database, show message
-                                    if(existingImage.getStatus().equals("PENDING")){
-                                        Toast.makeText(this, "Image already queued for upload", Toast.LENGTH_SHORT).show();
-                                    }
-                                    else{
-                                        updateImageStatusToPending(existingImage);
-                                    }
+                                    // Image already exists in database, show message if it is already in the priority lane
+                                    disposables.add(imageRepository.getUploadPriority(existingImage.getId())
+                                            .defaultIfEmpty(-1)
+                                            .subscribe(priority -> {
+                                                if(existingImage.getStatus() == ImageStatus.PENDING
+                                                        && priority >= UploadScheduler.PRIORITY_HIGH){
+                                                    Toast.makeText(this, "Image already queued for upload", Toast.LENGTH_SHORT).show();
+                                                }
+                                                else{
+                                                    updateImageStatusToPending(existingImage);
+                                                }
+                                            }, error -> Log.e(TAG, "Error reading upload queue", error)));
                                 },
                                 error -> {
                                     // Image doesn't exist, insert it
@@ -164,11 +168,12 @@ public class ImageDetailsActivity extends AppCompatActivity {
 
     @SuppressLint("CheckResult")
     private void updateImageStatusToPending(ImageEntity existingImage) {
-        imageRepository.updateImageStatus(existingImage.getId(), "PENDING")
+        imageRepository.queueForPriorityUpload(existingImage.getId())
                 .subscribeOn(Schedulers.io())
                 .subscribe(
                         () -> {
                             Toast.makeText(this, "Image added to upload queue", Toast.LENGTH_SHORT).show();
+                            UploadWorker.enqueueManual(this);
                         },
                         error -> {
                             Log.e(TAG, "Error updating image status to UPLOADING", error);
@@ -178,10 +183,12 @@ public class ImageDetailsActivity extends AppCompatActivity {
     private void addImageToUploadQueue(ImageEntity imageEntity) {
         disposables.add(
                 imageRepository.insertImage(imageEntity)
+                        // Picked by hand, so it goes ahead of the background backlog
+                        .flatMapCompletable(imageRepository::queueForPriorityUpload)
                         .subscribe(
-                                id -> {
+                                () -> {
                                     Toast.makeText(this, "Image added to upload queue", Toast.LENGTH_SHORT).show();
-                                    startUploadService();
+                                    UploadWorker.enqueueManual(this);
                                 },
                                 error -> {
                                     Toast.makeText(this, "Failed to add image to upload queue", Toast.LENGTH_SHORT).show();
@@ -191,16 +198,6 @@ public class ImageDetailsActivity extends AppCompatActivity {
         );
     }
 
-    private void startUploadService() {
-        Intent serviceIntent = new Intent(this, UploadService.class);
-        // Starting service as foreground service for Android O and higher
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-    }
-
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -14,11 +14,9 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.home_server_frontend.R;
 import com.example.home_server_frontend.api.ApiClient;
-import com.example.home_server_frontend.api.models.KeyExchangeResponse;
 import com.example.home_server_frontend.api.models.LoginRequest;
 import com.example.home_server_frontend.api.models.LoginResponse;
-import com.example.home_server_frontend.api.models.RegisterClientKeyRequest;
-import com.example.home_server_frontend.api.models.RegisterClientKeyResponse;
+import com.example.home_server_frontend.crypto.CryptoSession;
 import com.example.home_server_frontend.crypto.CryptoUtils;
 import com.example.home_server_frontend.crypto.KeyManager;
 import com.example.home_server_frontend.utils.PreferenceManager;
@@ -27,6 +25,11 @@ import org.json.JSONObject;
 
 import java.security.PublicKey;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -42,6 +45,7 @@ public class LoginActivity extends AppCompatActivity {
 
     private KeyManager keyManager;
     private PreferenceManager preferenceManager;
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -89,71 +93,6 @@ public class LoginActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Exchange public keys with the server
-     */
-    private void exchangeKeys() {
-        showProgress(true);
-
-        String baseUrl = preferenceManager.getBaseUrl();
-
-        // Get server's public key
-        ApiClient.getApiService(baseUrl).getServerPublicKey().enqueue(new Callback<KeyExchangeResponse>() {
-            @Override
-            public void onResponse(Call<KeyExchangeResponse> call, Response<KeyExchangeResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    // Store the server's public key
-                    keyManager.storeServerPublicKey(response.body().getPublicKey());
-
-                    // Register our public key with the server
-                    registerClientKey();
-                } else {
-                    showProgress(false);
-                    Toast.makeText(LoginActivity.this, "Failed to get server key", Toast.LENGTH_SHORT).show();
-                }
-            }
-
-            @Override
-            public void onFailure(Call<KeyExchangeResponse> call, Throwable t) {
-                showProgress(false);
-                Toast.makeText(LoginActivity.this, "Network error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
-            }
-        });
-    }
-
-    /**
-     * Register our public key with the server
-     */
-    private void registerClientKey() {
-        String username = preferenceManager.getUsername();
-        if (username == null || username.isEmpty()) {
-            // We don't have a username yet, that's fine for now
-            showProgress(false);
-            return;
-        }
-
-        String publicKeyPem = keyManager.getPublicKeyPem();
-        RegisterClientKeyRequest request = new RegisterClientKeyRequest(username, publicKeyPem);
-
-        String baseUrl = preferenceManager.getBaseUrl();
-        ApiClient.getApiService(baseUrl).registerClientKey(request).enqueue(new Callback<RegisterClientKeyResponse>() {
-            @Override
-            public void onResponse(Call<RegisterClientKeyResponse> call, Response<RegisterClientKeyResponse> response) {
-                showProgress(false);
-                if (!response.isSuccessful() || response.body() == null || !response.body().isSuccess()) {
-                    Log.w(TAG, "Failed to register client key: " +
-                            (response.body() != null ? response.body().getMessage() : "Unknown error"));
-                }
-            }
-
-            @Override
-            public void onFailure(Call<RegisterClientKeyResponse> call, Throwable t) {
-                showProgress(false);
-                Log.e(TAG, "Network error registering client key: " + t.getMessage());
-            }
-        });
-    }
-
     /**
      * Attempt to log in with the provided credentials
      */
@@ -180,6 +119,23 @@ public class LoginActivity extends AppCompatActivity {
 
         showProgress(true);
 
+        // Devices registered before ECDH existed offer it before logging in; login goes ahead either way
+        String baseUrl = preferenceManager.getBaseUrl();
+        CryptoSession cryptoSession = CryptoSession.getInstance(this);
+        disposables.add(Completable.fromAction(() ->
+                        cryptoSession.negotiateKeyAgreement(ApiClient.getApiService(baseUrl)))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> sendLogin(username, password, serverPublicKeyPem), error -> {
+                    Log.e(TAG, "Error negotiating key agreement", error);
+                    sendLogin(username, password, serverPublicKeyPem);
+                }));
+    }
+
+    /**
+     * Send the encrypted credentials
+     */
+    private void sendLogin(String username, String password, String serverPublicKeyPem) {
         try {
             // Get server's public key
             PublicKey serverPublicKey = CryptoUtils.publicKeyFromPem(serverPublicKeyPem);
@@ -229,10 +185,8 @@ public class LoginActivity extends AppCompatActivity {
     private void handleLoginResponse(LoginResponse response) {
         try {
             // Decrypt the hybrid encryption package
-            String decryptedJson = CryptoUtils.decryptHybridPackage(
-                    response.getEncryptedResponse(),
-                    keyManager.getPrivateKey()
-            );
+            CryptoSession cryptoSession = CryptoSession.getInstance(this);
+            String decryptedJson = cryptoSession.decryptHybridPackage(response.getEncryptedResponse());
 
             if (decryptedJson == null) {
                 Toast.makeText(this, "Error decrypting response", Toast.LENGTH_SHORT).show();
@@ -248,6 +202,10 @@ public class LoginActivity extends AppCompatActivity {
                 String token = jsonResponse.getString("token");
                 preferenceManager.setAuthToken(token);
 
+                // Later responses are encrypted with the session key, not RSA
+                cryptoSession.endSession();
+                cryptoSession.startSession(jsonResponse.optJSONObject("session"));
+
                 // Navigate to main activity
                 Intent intent = new Intent(this, MainActivity.class);
                 intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
@@ -279,6 +237,12 @@ public class LoginActivity extends AppCompatActivity {
         finish();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        disposables.clear();
+    }
+
     /**
      * Show or hide the progress indicator
      */
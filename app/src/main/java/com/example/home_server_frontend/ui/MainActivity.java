@@ -14,6 +14,7 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.GridView;
 import android.widget.ProgressBar;
 import android.widget.Toast;
@@ -28,18 +29,23 @@ import androidx.core.content.ContextCompat;
 
 import com.example.home_server_frontend.R;
 import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.example.home_server_frontend.repository.GalleryPager;
 import com.example.home_server_frontend.repository.ImageRepository;
 import com.example.home_server_frontend.service.MediaSyncService;
-import com.example.home_server_frontend.service.UploadService;
+import com.example.home_server_frontend.service.UploadProgressTracker;
 import com.example.home_server_frontend.ui.adapters.ImageAdapter;
 import com.example.home_server_frontend.utils.ImageUtils;
 import com.example.home_server_frontend.utils.PreferenceManager;
 import com.example.home_server_frontend.workers.MediaSyncWorker;
+import com.example.home_server_frontend.workers.UploadWorker;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
@@ -49,16 +55,20 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
     private static final int BATCH_SIZE = 10;
+    private static final long UPLOAD_PROGRESS_INTERVAL_MS = 500;
 
     private GridView gridView;
     private ImageAdapter imageAdapter;
     private ProgressBar progressBar;
     private PreferenceManager preferenceManager;
     private ImageRepository imageRepository;
-    private List<ImageEntity> imageEntities = new ArrayList<>();
+    private GalleryPager galleryPager;
     private final CompositeDisposable compositeDisposable = new CompositeDisposable();
 
     private boolean isLoadingBatch = false;
+    // Files in flight at the last progress update, the grid redraws their icons when it changes
+    private int lastActiveFiles;
+    private String lastActiveFileName;
     private long lastLoadedTimestamp = Long.MAX_VALUE; // Start with max value to get the newest images first
 
     // Activity result launcher for storage permission handling
@@ -77,13 +87,13 @@ public class MainActivity extends AppCompatActivity {
     private final ActivityResultLauncher<String> requestNotificationPermissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
                 if (isGranted) {
-                    startUploadService();
+                    enqueueUploads();
                 } else {
-                    // We can still start the service, but warn the user about limited functionality
+                    // We can still upload, but warn the user about limited functionality
                     Toast.makeText(this,
-                            "Upload service will run with limited notifications",
+                            "Uploads will run with limited notifications",
                             Toast.LENGTH_LONG).show();
-                    startUploadService();
+                    enqueueUploads();
                 }
             });
 
@@ -115,14 +125,28 @@ public class MainActivity extends AppCompatActivity {
 
         getlastLoadedTimestampValue();
 
-        imageAdapter = new ImageAdapter(this, imageEntities, bottomReached);
+        galleryPager = imageRepository.createGalleryPager();
+        imageAdapter = new ImageAdapter(this, galleryPager, bottomReached);
         gridView.setAdapter(imageAdapter);
+        gridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                galleryPager.setVisibleRange(firstVisibleItem, visibleItemCount);
+            }
+        });
 
         // Get all images from server
         fetchServerImages();
 
         // Load local images that are present in the roomDB
         loadLocalImages();
+
+        // Show upload throughput and ETA under the title while uploads run
+        observeUploadProgress();
     }
 
     @SuppressLint("CheckResult")
@@ -193,17 +217,9 @@ public class MainActivity extends AppCompatActivity {
         return super.onOptionsItemSelected(item);
     }
 
-    private void startUploadService() {
-        Intent serviceIntent = new Intent(this, UploadService.class);
-
-        // Starting service as foreground service for Android O and higher
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-
-        Log.d(TAG, "Upload service started");
+    private void enqueueUploads() {
+        UploadWorker.enqueueBackup(this);
+        Log.d(TAG, "Upload work enqueued");
     }
 
     private void checkNotificationPermission() {
@@ -212,14 +228,14 @@ public class MainActivity extends AppCompatActivity {
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
                     == PackageManager.PERMISSION_GRANTED) {
                 // Permission already granted
-                startUploadService();
+                enqueueUploads();
             } else {
                 // Request notification permission
                 requestNotificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
             }
         } else {
             // Notification permission not required for older versions
-            startUploadService();
+            enqueueUploads();
         }
     }
 
@@ -337,7 +353,7 @@ public class MainActivity extends AppCompatActivity {
 
             ImageEntity imageEntity = new ImageEntity(
                     imageData.path,
-                    "",  // Initial status
+                    ImageStatus.LOCAL,  // Initial status
                     fileSize,
                     resolution,
                     file.getName(),
@@ -390,15 +406,29 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadLocalImages() {
+        // Only pages around the visible range are loaded, and only changed pages trigger a redraw
+        galleryPager.start(imageAdapter::notifyDataSetChanged);
+    }
+
+    private void observeUploadProgress() {
         compositeDisposable.add(
-                imageRepository
-                        .getAllImages()
-                        .subscribe(images -> {
-                            imageEntities.clear();
-                            imageEntities.addAll(images);
-                            imageAdapter.notifyDataSetChanged();
+                UploadProgressTracker.getInstance()
+                        .observe()
+                        .throttleLatest(UPLOAD_PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS, true)
+                        .observeOn(AndroidSchedulers.mainThread())
+                        .subscribe(progress -> {
+                            if (getSupportActionBar() != null) {
+                                getSupportActionBar().setSubtitle(
+                                        progress.isActive() ? progress.getSummary() : null);
+                            }
+                            if (progress.getActiveFiles() != lastActiveFiles
+                                    || !Objects.equals(progress.getCurrentFileName(), lastActiveFileName)) {
+                                lastActiveFiles = progress.getActiveFiles();
+                                lastActiveFileName = progress.getCurrentFileName();
+                                imageAdapter.notifyDataSetChanged();
+                            }
                         }, error -> {
-                            Log.d(TAG, "loadLocalImages: " + error);
+                            Log.d(TAG, "observeUploadProgress: " + error);
                         })
         );
     }
@@ -459,6 +489,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        galleryPager.stop();
+        imageAdapter.clear();
         compositeDisposable.clear();
     }
 }
\ No newline at end of file
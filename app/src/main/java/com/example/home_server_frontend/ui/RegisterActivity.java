@@ -19,6 +19,7 @@ import com.example.home_server_frontend.api.models.RegisterClientKeyRequest;
 import com.example.home_server_frontend.api.models.RegisterClientKeyResponse;
 import com.example.home_server_frontend.api.models.RegistrationRequest;
 import com.example.home_server_frontend.api.models.RegistrationResponse;
+import com.example.home_server_frontend.crypto.CryptoSession;
 import com.example.home_server_frontend.crypto.CryptoUtils;
 import com.example.home_server_frontend.crypto.KeyManager;
 import com.example.home_server_frontend.utils.PreferenceManager;
@@ -108,14 +109,15 @@ public class RegisterActivity extends AppCompatActivity {
     private void registerClientKey(String username, Runnable onSuccess) {
         showProgress(true);
 
-        String publicKeyPem = keyManager.getPublicKeyPem();
-        RegisterClientKeyRequest request = new RegisterClientKeyRequest(username, publicKeyPem);
+        CryptoSession cryptoSession = CryptoSession.getInstance(this);
+        RegisterClientKeyRequest request = cryptoSession.newKeyRegistration(username);
 
         ApiClient.getApiService(preferenceManager.getBaseUrl()).registerClientKey(request).enqueue(new Callback<RegisterClientKeyResponse>() {
             @Override
             public void onResponse(Call<RegisterClientKeyResponse> call, Response<RegisterClientKeyResponse> response) {
                 if (response.isSuccessful() && response.body() != null && response.body().isSuccess()) {
                     // Key registered successfully, proceed with registration
+                    cryptoSession.onKeyRegistered(response.body());
                     onSuccess.run();
                 } else {
                     showProgress(false);
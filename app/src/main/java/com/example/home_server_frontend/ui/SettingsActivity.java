@@ -5,26 +5,48 @@ import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.Spinner;
+import android.text.format.Formatter;
 import android.widget.Switch;
+import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.home_server_frontend.R;
+import com.example.home_server_frontend.api.NetworkStack;
 import com.example.home_server_frontend.database.AppDatabase;
 import com.example.home_server_frontend.database.ImageDao;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.example.home_server_frontend.repository.ImageRepository;
+import com.example.home_server_frontend.repository.UploadScheduler;
 import com.example.home_server_frontend.service.MediaSyncService;
-import com.example.home_server_frontend.service.UploadService;
 import com.example.home_server_frontend.utils.PreferenceManager;
 import com.example.home_server_frontend.workers.MediaSyncWorker;
+import com.example.home_server_frontend.workers.UploadWorker;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
-import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class SettingsActivity extends AppCompatActivity {
     private static final String TAG = "SettingsActivity";
 
+    // Values behind the storage saver spinners, in the order of their labels
+    private static final int[] STORAGE_SAVER_DIMENSIONS = {1280, 2048, 3072, 4096};
+    private static final int[] STORAGE_SAVER_QUALITIES = {70, 85, 95};
+
     private Switch switchAutoUpload;
+    private Spinner spinnerUploadPolicy;
+    private Spinner spinnerUploadConcurrency;
+    private Switch switchUnmeteredOnly;
+    private Switch switchChargingOnly;
+    private Switch switchBatteryNotLow;
+    private Switch switchStorageSaver;
+    private Spinner spinnerStorageSaverDimension;
+    private Spinner spinnerStorageSaverQuality;
+    private TextView tvStorageSaverSavings;
+    private Switch switchHttpBodyCapture;
     private PreferenceManager preferenceManager;
     private ImageDao imageDao;
 
@@ -58,7 +80,7 @@ public class SettingsActivity extends AppCompatActivity {
             if (isChecked) {
                 Log.d(TAG, "Auto-upload enabled, setting up services");
 
-                ChangeStatusOfAllTheRows("", "PENDING");
+                queueLocalImages();
 
                 // Enable periodic background sync as fallback
                 MediaSyncWorker.schedulePeriodicSync(this);
@@ -75,37 +97,154 @@ public class SettingsActivity extends AppCompatActivity {
 
                 // Disable periodic sync
                 MediaSyncWorker.cancelPeriodicSync(this);
-                ChangeStatusOfAllTheRows("PENDING", "");
+                UploadWorker.cancelBackup(this);
+                unqueueBackupImages();
+            }
+        });
+
+        // Upload order
+        spinnerUploadPolicy = findViewById(R.id.spinner_upload_policy);
+        UploadScheduler.Policy currentPolicy = UploadScheduler.policyFromName(preferenceManager.getUploadPolicy());
+        spinnerUploadPolicy.setSelection(currentPolicy.ordinal());
+        spinnerUploadPolicy.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                UploadScheduler.Policy policy = UploadScheduler.Policy.values()[position];
+                preferenceManager.setUploadPolicy(policy.name());
+                Log.d(TAG, "Upload policy set to " + policy);
+            }
 
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        // Parallel uploads, picked up by the next upload run
+        spinnerUploadConcurrency = findViewById(R.id.spinner_upload_concurrency);
+        int concurrency = preferenceManager.getUploadConcurrency();
+        if (concurrency < spinnerUploadConcurrency.getCount()) {
+            spinnerUploadConcurrency.setSelection(concurrency);
+        }
+        spinnerUploadConcurrency.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                preferenceManager.setUploadConcurrency(position);
+                Log.d(TAG, "Upload concurrency set to " + position);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+
+        // Background upload conditions, applied to the queued backup work right away
+        switchUnmeteredOnly = findViewById(R.id.switch_upload_unmetered);
+        switchUnmeteredOnly.setChecked(preferenceManager.isUploadUnmeteredOnly());
+        switchUnmeteredOnly.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            preferenceManager.setUploadUnmeteredOnly(isChecked);
+            UploadWorker.rescheduleBackup(this);
+        });
+
+        switchChargingOnly = findViewById(R.id.switch_upload_charging);
+        switchChargingOnly.setChecked(preferenceManager.isUploadChargingOnly());
+        switchChargingOnly.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            preferenceManager.setUploadChargingOnly(isChecked);
+            UploadWorker.rescheduleBackup(this);
+        });
+
+        switchBatteryNotLow = findViewById(R.id.switch_upload_battery_not_low);
+        switchBatteryNotLow.setChecked(preferenceManager.isUploadBatteryNotLow());
+        switchBatteryNotLow.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            preferenceManager.setUploadBatteryNotLow(isChecked);
+            UploadWorker.rescheduleBackup(this);
+        });
+
+        // Storage saver, applies to images prepared from now on
+        switchStorageSaver = findViewById(R.id.switch_storage_saver);
+        switchStorageSaver.setChecked(preferenceManager.isStorageSaverEnabled());
+        switchStorageSaver.setOnCheckedChangeListener((buttonView, isChecked) ->
+                preferenceManager.setStorageSaverEnabled(isChecked));
+
+        spinnerStorageSaverDimension = findViewById(R.id.spinner_storage_saver_dimension);
+        bindValueSpinner(spinnerStorageSaverDimension, STORAGE_SAVER_DIMENSIONS,
+                preferenceManager.getStorageSaverMaxDimension(), preferenceManager::setStorageSaverMaxDimension);
+
+        spinnerStorageSaverQuality = findViewById(R.id.spinner_storage_saver_quality);
+        bindValueSpinner(spinnerStorageSaverQuality, STORAGE_SAVER_QUALITIES,
+                preferenceManager.getStorageSaverQuality(), preferenceManager::setStorageSaverQuality);
+
+        tvStorageSaverSavings = findViewById(R.id.tv_storage_saver_savings);
+        showStorageSaverSavings();
+
+        // Body logging is a debugging aid, hidden in release builds
+        NetworkStack networkStack = NetworkStack.getInstance();
+        switchHttpBodyCapture = findViewById(R.id.switch_http_body_capture);
+        if (networkStack.isBodyCaptureAvailable()) {
+            switchHttpBodyCapture.setVisibility(View.VISIBLE);
+            switchHttpBodyCapture.setChecked(preferenceManager.isHttpBodyCaptureEnabled());
+            switchHttpBodyCapture.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                preferenceManager.setHttpBodyCaptureEnabled(isChecked);
+                networkStack.setBodyCaptureEnabled(isChecked);
+            });
+        }
+    }
+
+    private interface IntSetter {
+        void set(int value);
+    }
+
+    /**
+     * Select the entry of a spinner whose value is current and save the value of every new selection
+     */
+    private void bindValueSpinner(Spinner spinner, int[] values, int current, IntSetter setter) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == current) {
+                spinner.setSelection(i);
+            }
+        }
+        spinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                setter.set(values[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
             }
         });
     }
 
     @SuppressLint("CheckResult")
-    private void ChangeStatusOfAllTheRows(String fromStatus, String toStatus) {
-        imageDao.updateAllRowsToStatus(fromStatus, toStatus)  // Directly subscribe to Completable
+    private void showStorageSaverSavings() {
+        new ImageRepository(this).getBytesSavedByReencoding()
+                .subscribe(
+                        saved -> tvStorageSaverSavings.setText("Saved so far: "
+                                + Formatter.formatShortFileSize(this, saved)),
+                        throwable -> Log.e(TAG, "Error loading storage saver savings", throwable));
+    }
+
+    @SuppressLint("CheckResult")
+    private void queueLocalImages() {
+        imageDao.updateAllRowsToStatus(ImageStatus.LOCAL, ImageStatus.PENDING)
                 .subscribeOn(Schedulers.io())                // Run on background thread
                 .observeOn(AndroidSchedulers.mainThread())   // Observe on UI thread
                 .subscribe(() -> {
                     Log.d(TAG, "Status updated successfully");
-                    startUploadService();
+                    UploadWorker.enqueueBackup(this);
                 }, error -> {
                     Log.e(TAG, "Error updating status", error);
                 });
-
     }
 
-    private void startUploadService() {
-        Intent serviceIntent = new Intent(this, UploadService.class);
-
-        // Starting service as foreground service for Android O and higher
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            startForegroundService(serviceIntent);
-        } else {
-            startService(serviceIntent);
-        }
-
-        Log.d(TAG, "Upload service started");
+    /**
+     * Take pending images back out of the backup, images queued by hand stay pending
+     */
+    @SuppressLint("CheckResult")
+    private void unqueueBackupImages() {
+        imageDao.updateBackupRowsToStatus(ImageStatus.PENDING, ImageStatus.LOCAL, UploadScheduler.PRIORITY_NORMAL)
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> Log.d(TAG, "Status updated successfully"),
+                        error -> Log.e(TAG, "Error updating status", error));
     }
 
     @Override
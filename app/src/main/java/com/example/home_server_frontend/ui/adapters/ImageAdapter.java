@@ -15,7 +15,10 @@ import android.widget.GridView;
 import android.widget.ImageView;
 
 import com.example.home_server_frontend.R;
-import com.example.home_server_frontend.database.ImageEntity;
+import com.example.home_server_frontend.database.ImageStatus;
+import com.example.home_server_frontend.repository.GalleryPage;
+import com.example.home_server_frontend.repository.GalleryPager;
+import com.example.home_server_frontend.service.UploadProgressTracker;
 import com.example.home_server_frontend.ui.BottomReached;
 import com.example.home_server_frontend.ui.ImageDetailsActivity;
 import com.example.home_server_frontend.utils.PicassoAuth;
@@ -23,37 +26,41 @@ import com.example.home_server_frontend.utils.PreferenceManager;
 import com.google.gson.Gson;
 import com.squareup.picasso.Picasso;
 
-import java.util.List;
-
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class ImageAdapter extends BaseAdapter {
     private final BottomReached bottomReached;
     private Context mContext;
-    private List<ImageEntity> mImageList;
+    private final GalleryPager mPager;
     private PreferenceManager preferenceManager;
     private Picasso picassoAuth;
     private LayoutInflater inflater;
+    private final UploadProgressTracker progressTracker = UploadProgressTracker.getInstance();
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
-    public ImageAdapter(Context context, List<ImageEntity> imageList, BottomReached bottomReached) {
+    public ImageAdapter(Context context, GalleryPager pager, BottomReached bottomReached) {
         mContext = context;
-        mImageList = imageList;
+        mPager = pager;
         this.bottomReached = bottomReached;
         preferenceManager = new PreferenceManager(context);
-        picassoAuth = PicassoAuth.getPicassoInstance(context, preferenceManager.getAuthToken());
+        picassoAuth = PicassoAuth.getPicassoInstance();
         inflater = LayoutInflater.from(context);
     }
 
     @Override
     public int getCount() {
-        return mImageList.size();
+        return mPager.getCount();
     }
 
     @Override
     public Object getItem(int position) {
-        return mImageList.get(position);
+        // Row id of the image, or null while its page is loading
+        GalleryPage page = mPager.getPage(position);
+        int index = GalleryPager.indexInPage(position);
+        return page != null && index < page.size() ? page.getId(index) : null;
     }
 
     @Override
@@ -86,25 +93,34 @@ public class ImageAdapter extends BaseAdapter {
             holder = (ViewHolder) convertView.getTag();
         }
 
-        // Get the current image entity
-        ImageEntity imageEntity = mImageList.get(position);
+        // Get the page holding the current cell
+        GalleryPage page = mPager.getPage(position);
+        int index = GalleryPager.indexInPage(position);
+        if (page == null || index >= page.size()) {
+            // Page still loading, show an empty cell until the pager notifies
+            holder.imageView.setImageDrawable(null);
+            holder.statusIcon.setVisibility(View.GONE);
+            convertView.setOnClickListener(null);
+            return convertView;
+        }
 
         // Set the status icon based on image status
-        updateStatusIcon(holder.statusIcon, imageEntity.getStatus());
+        updateStatusIcon(holder.statusIcon, page.getStatus(index), page.getId(index));
 
         // Load the image
-        if (imageEntity.getLocalUrl().isEmpty()) {
+        if (!page.isLocal(index)) {
             // This is a remote image
             picassoAuth.get()
-                    .load(preferenceManager.getBaseUrl() + imageEntity.getRemoteUrl())
+                    .load(preferenceManager.getBaseUrl() + page.getRemoteUrl(index))
                     .resize(400, 400)
                     .centerCrop()
                     .into(holder.imageView);
         } else {
             // This is a local image, load thumbnail
+            long mediaId = page.getMediaId(index);
             Single.fromCallable(() -> MediaStore.Images.Thumbnails.getThumbnail(
                             mContext.getContentResolver(),
-                            Long.parseLong(imageEntity.getImageId()),
+                            mediaId,
                             MediaStore.Images.Thumbnails.MINI_KIND,
                             null
                     )).subscribeOn(Schedulers.io())
@@ -117,43 +133,56 @@ public class ImageAdapter extends BaseAdapter {
         }
 
         // Trigger bottom reached callback if necessary
-        if (position >= mImageList.size() - 1) {
+        if (position >= mPager.getCount() - 1) {
             bottomReached.onBottomReached();
         }
 
-        // Set click listener for the image item
-        convertView.setOnClickListener(view -> {
-            Intent intent = new Intent(mContext, ImageDetailsActivity.class);
-            intent.putExtra("selectedImage", new Gson().toJson(imageEntity));
-            mContext.startActivity(intent);
-        });
+        // Set click listener for the image item, the full row is only read when opened
+        long id = page.getId(index);
+        convertView.setOnClickListener(view -> disposables.add(mPager.loadImage(id)
+                .subscribe(imageEntity -> {
+                    Intent intent = new Intent(mContext, ImageDetailsActivity.class);
+                    intent.putExtra("selectedImage", new Gson().toJson(imageEntity));
+                    mContext.startActivity(intent);
+                }, error -> {
+                    Log.d("ImageAdapter", "Error loading image " + id + ": " + error);
+                })));
 
         return convertView;
     }
 
+    /**
+     * Drop pending image loads started from clicks, call when the activity is destroyed
+     */
+    public void clear() {
+        disposables.clear();
+    }
+
     /**
      * Update the status icon based on the image status
      */
-    private void updateStatusIcon(ImageView statusIcon, String status) {
+    private void updateStatusIcon(ImageView statusIcon, int status, long id) {
         statusIcon.setVisibility(View.VISIBLE);
 
+        // Claims live in upload_queue, the tracker knows which queued images are being sent
+        if (status == ImageStatus.PENDING && progressTracker.isUploading(id)) {
+            statusIcon.setImageResource(R.drawable.ic_sync_progress);
+            statusIcon.setContentDescription("Upload in progress");
+            return;
+        }
+
         switch (status) {
-            case "UPLOADED":
+            case ImageStatus.UPLOADED:
                 // Image is synced with server
                 statusIcon.setImageResource(R.drawable.ic_sync_complete);
                 statusIcon.setContentDescription("Image synced");
                 break;
-            case "UPLOADING":
-                // Image is currently uploading
-                statusIcon.setImageResource(R.drawable.ic_sync_progress);
-                statusIcon.setContentDescription("Upload in progress");
-                break;
-            case "PENDING":
+            case ImageStatus.PENDING:
                 // Image is waiting to be uploaded
                 statusIcon.setImageResource(R.drawable.ic_sync_pending);
                 statusIcon.setContentDescription("Upload pending");
                 break;
-            case "FAILED":
+            case ImageStatus.FAILED:
                 // Upload failed
                 statusIcon.setImageResource(R.drawable.ic_sync_failed);
                 statusIcon.setContentDescription("Upload failed");
@@ -170,15 +199,4 @@ public class ImageAdapter extends BaseAdapter {
         ImageView imageView;
         ImageView statusIcon;
     }
-
-    // Method to update the image list
-    public void updateImages(List<ImageEntity> newImages) {
-        mImageList = newImages;
-        notifyDataSetChanged();
-    }
-
-    public void addImages(List<ImageEntity> newImages) {
-        mImageList.addAll(newImages);
-        notifyDataSetChanged();
-    }
 }
\ No newline at end of file
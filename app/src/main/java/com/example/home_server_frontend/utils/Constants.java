@@ -13,6 +13,17 @@ public class Constants {
     public static final String PREF_SERVER_PORT = "server_port";
     public static final String PREF_AUTO_UPLOAD_ENABLED = "auto_upload_enabled";
     public static final String IS_FIRST_INSALL = "is_first_install";
+    public static final String PREF_UPLOAD_CONCURRENCY = "upload_concurrency";
+    public static final String PREF_UPLOAD_POLICY = "upload_policy";
+    public static final String PREF_UPLOAD_REQUIRE_UNMETERED = "upload_require_unmetered";
+    public static final String PREF_UPLOAD_REQUIRE_CHARGING = "upload_require_charging";
+    public static final String PREF_UPLOAD_REQUIRE_BATTERY_NOT_LOW = "upload_require_battery_not_low";
+    public static final String PREF_STORAGE_SAVER_ENABLED = "storage_saver_enabled";
+    public static final String PREF_STORAGE_SAVER_MAX_DIMENSION = "storage_saver_max_dimension";
+    public static final String PREF_STORAGE_SAVER_QUALITY = "storage_saver_quality";
+    public static final String PREF_HTTP_BODY_CAPTURE = "http_body_capture";
+    public static final String PREF_SERVER_SYNC_CURSOR_TIME = "server_sync_cursor_time";
+    public static final String PREF_SERVER_SYNC_CURSOR_ID = "server_sync_cursor_id";
 
     // New preference for last image sync time
     public static final String PREF_LAST_IMAGE_SYNC_TIME = "last_image_sync_time";
@@ -0,0 +1,218 @@
+package com.example.home_server_frontend.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-encodes images for "storage saver" uploads.
+ *
+ * JPEGs are downscaled to a maximum dimension and re-encoded at a target quality, PNGs are only
+ * downscaled since they are lossless. Decoding is subsampled so a large photo never has to be
+ * held in memory at full resolution, and all work runs on a small shared pool so uploads cannot
+ * pin every core. Results go to a cache directory, keyed by image row id so a resumed upload
+ * finds the exact bytes it started with; callers delete them once the upload is settled.
+ */
+public class ImageTranscoder {
+    private static final String TAG = "ImageTranscoder";
+    private static final String CACHE_DIR = "upload_transcode";
+    private static final long MAX_CACHE_AGE_MS = TimeUnit.DAYS.toMillis(7);
+
+    // Decoding and compressing are CPU and memory heavy, two at a time is plenty
+    private static final ExecutorService TRANSCODE_POOL = Executors.newFixedThreadPool(
+            Math.min(2, Runtime.getRuntime().availableProcessors()));
+
+    private final File cacheDir;
+
+    public ImageTranscoder(Context context) {
+        this.cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+    }
+
+    /**
+     * Re-encode an image on the transcode pool and wait for the result. Blocks the calling thread.
+     * @param id Image row id, names the cached file
+     * @param source Original image file
+     * @param maxDimension Longest edge of the result in pixels
+     * @param quality JPEG quality from 0 to 100
+     * @return the re-encoded file, or the source if it is not a JPEG/PNG or would not get smaller
+     */
+    public File transcode(long id, File source, int maxDimension, int quality)
+            throws IOException, InterruptedException {
+        Future<File> result = TRANSCODE_POOL.submit(() -> transcodeNow(id, source, maxDimension, quality));
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Transcoding failed", cause);
+        }
+    }
+
+    /**
+     * Delete the cached copy of an image, if any
+     * @param id Image row id
+     */
+    public void delete(long id) {
+        File cached = cachedFile(id);
+        if (cached.exists() && !cached.delete()) {
+            Log.w(TAG, "Could not delete " + cached);
+        }
+    }
+
+    /**
+     * Delete cached copies that were left behind, e.g. by images removed from the queue
+     */
+    public void pruneCache() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - MAX_CACHE_AGE_MS;
+        for (File file : files) {
+            if (file.lastModified() < cutoff && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    private File transcodeNow(long id, File source, int maxDimension, int quality) throws IOException {
+        File cached = cachedFile(id);
+        if (cached.exists() && cached.lastModified() >= source.lastModified()) {
+            // Same bytes as the previous attempt, so an upload session can be resumed
+            return cached;
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return source;
+        }
+
+        Bitmap.CompressFormat format;
+        if ("image/jpeg".equals(bounds.outMimeType)) {
+            format = Bitmap.CompressFormat.JPEG;
+        } else if ("image/png".equals(bounds.outMimeType)) {
+            format = Bitmap.CompressFormat.PNG;
+        } else {
+            return source;
+        }
+
+        int longestEdge = Math.max(bounds.outWidth, bounds.outHeight);
+        if (format == Bitmap.CompressFormat.PNG && longestEdge <= maxDimension) {
+            // Re-encoding a lossless image at the same size gains nothing
+            return source;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(longestEdge, maxDimension);
+        if (format == Bitmap.CompressFormat.JPEG) {
+            // No alpha channel, half the memory of ARGB_8888
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(source.getPath(), options);
+        if (bitmap == null) {
+            return source;
+        }
+
+        File temp = new File(cacheDir, id + ".tmp");
+        try {
+            bitmap = scaleDown(bitmap, maxDimension);
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                throw new IOException("Could not create " + cacheDir);
+            }
+            try (OutputStream out = new FileOutputStream(temp)) {
+                if (!bitmap.compress(format, quality, out)) {
+                    throw new IOException("Could not encode " + source.getName());
+                }
+            }
+        } finally {
+            bitmap.recycle();
+        }
+
+        if (temp.length() >= source.length()) {
+            temp.delete();
+            return source;
+        }
+        if (format == Bitmap.CompressFormat.JPEG) {
+            copyExif(source, temp);
+        }
+        if (!temp.renameTo(cached)) {
+            temp.delete();
+            throw new IOException("Could not move " + temp + " to " + cached);
+        }
+        Log.d(TAG, source.getName() + ": " + source.length() + " -> " + cached.length() + " bytes");
+        return cached;
+    }
+
+    /**
+     * Largest power of two that still decodes to at least maxDimension
+     */
+    private static int sampleSize(int longestEdge, int maxDimension) {
+        int sampleSize = 1;
+        while (longestEdge / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleDown(Bitmap bitmap, int maxDimension) {
+        int longestEdge = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longestEdge <= maxDimension) {
+            return bitmap;
+        }
+        float scale = (float) maxDimension / longestEdge;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Keep orientation and capture time, which the decoder does not carry over
+     */
+    private static void copyExif(File source, File target) {
+        try {
+            ExifInterface from = new ExifInterface(source.getPath());
+            ExifInterface to = new ExifInterface(target.getPath());
+            boolean changed = false;
+            for (String tag : new String[]{ExifInterface.TAG_ORIENTATION, ExifInterface.TAG_DATETIME}) {
+                String value = from.getAttribute(tag);
+                if (value != null) {
+                    to.setAttribute(tag, value);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                to.saveAttributes();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not copy EXIF of " + source.getName(), e);
+        }
+    }
+
+    private File cachedFile(long id) {
+        return new File(cacheDir, String.valueOf(id));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.home_server_frontend.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+/**
+ * Helpers for inspecting the current network connection
+ */
+public class NetworkUtils {
+    private static final int UNMETERED_UPLOAD_CONCURRENCY = 4;
+    private static final int CELLULAR_UPLOAD_CONCURRENCY = 2;
+    private static final int FALLBACK_UPLOAD_CONCURRENCY = 1;
+
+    /**
+     * Get the default number of concurrent uploads for the active network
+     * @param context Context used to reach the ConnectivityManager
+     * @return 4 on Wi-Fi/Ethernet, 2 on cellular, 1 otherwise
+     */
+    public static int getDefaultUploadConcurrency(Context context) {
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return FALLBACK_UPLOAD_CONCURRENCY;
+        }
+
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
+        if (capabilities == null) {
+            return FALLBACK_UPLOAD_CONCURRENCY;
+        }
+
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI) ||
+                capabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return UNMETERED_UPLOAD_CONCURRENCY;
+        }
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return CELLULAR_UPLOAD_CONCURRENCY;
+        }
+        return FALLBACK_UPLOAD_CONCURRENCY;
+    }
+
+    /**
+     * Resolve the number of upload slots from preferences, falling back to the network default
+     * @param context Context used to reach the ConnectivityManager
+     * @param preferenceManager Preferences holding the user override
+     * @return number of upload slots, at least 1
+     */
+    public static int resolveUploadConcurrency(Context context, PreferenceManager preferenceManager) {
+        int configured = preferenceManager.getUploadConcurrency();
+        if (configured > 0) {
+            return configured;
+        }
+        return getDefaultUploadConcurrency(context);
+    }
+}
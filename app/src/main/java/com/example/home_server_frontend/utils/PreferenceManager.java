@@ -123,6 +123,178 @@ public class PreferenceManager {
         }
     }
 
+    /**
+     * Get the configured number of concurrent uploads
+     * @return number of upload slots, or 0 to size it from the network type
+     */
+    public int getUploadConcurrency() {
+        return sharedPreferences.getInt(Constants.PREF_UPLOAD_CONCURRENCY, 0);
+    }
+
+    /**
+     * Set the number of concurrent uploads
+     * @param concurrency number of upload slots, or 0 to size it from the network type
+     */
+    public void setUploadConcurrency(int concurrency) {
+        sharedPreferences.edit().putInt(Constants.PREF_UPLOAD_CONCURRENCY, concurrency).apply();
+    }
+
+    /**
+     * Get the name of the selected upload scheduling policy
+     * @return policy name, or null for the default
+     */
+    public String getUploadPolicy() {
+        return sharedPreferences.getString(Constants.PREF_UPLOAD_POLICY, null);
+    }
+
+    /**
+     * Set the upload scheduling policy
+     * @param policy name of the policy
+     */
+    public void setUploadPolicy(String policy) {
+        sharedPreferences.edit().putString(Constants.PREF_UPLOAD_POLICY, policy).apply();
+    }
+
+    /**
+     * Check if background uploads wait for an unmetered network
+     * @return true if only unmetered networks may be used, false by default
+     */
+    public boolean isUploadUnmeteredOnly() {
+        return sharedPreferences.getBoolean(Constants.PREF_UPLOAD_REQUIRE_UNMETERED, false);
+    }
+
+    /**
+     * Set whether background uploads wait for an unmetered network
+     * @param required true to upload on unmetered networks only
+     */
+    public void setUploadUnmeteredOnly(boolean required) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_UPLOAD_REQUIRE_UNMETERED, required).apply();
+    }
+
+    /**
+     * Check if background uploads wait for the device to charge
+     * @return true if uploads only run while charging, false by default
+     */
+    public boolean isUploadChargingOnly() {
+        return sharedPreferences.getBoolean(Constants.PREF_UPLOAD_REQUIRE_CHARGING, false);
+    }
+
+    /**
+     * Set whether background uploads wait for the device to charge
+     * @param required true to upload only while charging
+     */
+    public void setUploadChargingOnly(boolean required) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_UPLOAD_REQUIRE_CHARGING, required).apply();
+    }
+
+    /**
+     * Check if background uploads pause while the battery is low
+     * @return true if uploads pause on low battery, true by default
+     */
+    public boolean isUploadBatteryNotLow() {
+        return sharedPreferences.getBoolean(Constants.PREF_UPLOAD_REQUIRE_BATTERY_NOT_LOW, true);
+    }
+
+    /**
+     * Set whether background uploads pause while the battery is low
+     * @param required true to pause uploads on low battery
+     */
+    public void setUploadBatteryNotLow(boolean required) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_UPLOAD_REQUIRE_BATTERY_NOT_LOW, required).apply();
+    }
+
+    /**
+     * Check if images are re-encoded to save storage before upload
+     * @return true if storage saver is enabled, false by default
+     */
+    public boolean isStorageSaverEnabled() {
+        return sharedPreferences.getBoolean(Constants.PREF_STORAGE_SAVER_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable re-encoding before upload
+     * @param enabled whether storage saver should be enabled
+     */
+    public void setStorageSaverEnabled(boolean enabled) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_STORAGE_SAVER_ENABLED, enabled).apply();
+    }
+
+    /**
+     * Get the longest edge, in pixels, of images re-encoded by storage saver
+     * @return maximum dimension, 2048 by default
+     */
+    public int getStorageSaverMaxDimension() {
+        return sharedPreferences.getInt(Constants.PREF_STORAGE_SAVER_MAX_DIMENSION, 2048);
+    }
+
+    /**
+     * Set the longest edge of images re-encoded by storage saver
+     * @param maxDimension maximum dimension in pixels
+     */
+    public void setStorageSaverMaxDimension(int maxDimension) {
+        sharedPreferences.edit().putInt(Constants.PREF_STORAGE_SAVER_MAX_DIMENSION, maxDimension).apply();
+    }
+
+    /**
+     * Get the JPEG quality used by storage saver
+     * @return quality from 0 to 100, 85 by default
+     */
+    public int getStorageSaverQuality() {
+        return sharedPreferences.getInt(Constants.PREF_STORAGE_SAVER_QUALITY, 85);
+    }
+
+    /**
+     * Set the JPEG quality used by storage saver
+     * @param quality quality from 0 to 100
+     */
+    public void setStorageSaverQuality(int quality) {
+        sharedPreferences.edit().putInt(Constants.PREF_STORAGE_SAVER_QUALITY, quality).apply();
+    }
+
+    /**
+     * Check if full HTTP bodies of API calls should be logged (debuggable builds only)
+     * @return true if body capture is enabled, false by default
+     */
+    public boolean isHttpBodyCaptureEnabled() {
+        return sharedPreferences.getBoolean(Constants.PREF_HTTP_BODY_CAPTURE, false);
+    }
+
+    /**
+     * Enable or disable logging of full HTTP bodies
+     * @param enabled whether bodies should be logged
+     */
+    public void setHttpBodyCaptureEnabled(boolean enabled) {
+        sharedPreferences.edit().putBoolean(Constants.PREF_HTTP_BODY_CAPTURE, enabled).apply();
+    }
+
+    /**
+     * Get the updated_time of the last server image synced
+     * @return cursor time, 0 before the first sync
+     */
+    public long getServerSyncCursorTime() {
+        return sharedPreferences.getLong(Constants.PREF_SERVER_SYNC_CURSOR_TIME, 0);
+    }
+
+    /**
+     * Get the id of the last server image synced
+     * @return cursor id, 0 before the first sync
+     */
+    public long getServerSyncCursorId() {
+        return sharedPreferences.getLong(Constants.PREF_SERVER_SYNC_CURSOR_ID, 0);
+    }
+
+    /**
+     * Save the position of the server image sync
+     * @param updatedTime updated_time of the last image applied
+     * @param id id of the last image applied
+     */
+    public void setServerSyncCursor(long updatedTime, long id) {
+        sharedPreferences.edit()
+                .putLong(Constants.PREF_SERVER_SYNC_CURSOR_TIME, updatedTime)
+                .putLong(Constants.PREF_SERVER_SYNC_CURSOR_ID, id)
+                .apply();
+    }
+
     /**
      * Save the timestamp of the last image sync
      * @param timestamp Timestamp in milliseconds
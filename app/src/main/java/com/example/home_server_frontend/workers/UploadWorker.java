@@ -0,0 +1,623 @@
+package com.example.home_server_frontend.workers;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.home_server_frontend.R;
+import com.example.home_server_frontend.database.QueuedUpload;
+import com.example.home_server_frontend.repository.ImageRepository;
+import com.example.home_server_frontend.service.ImageUploader;
+import com.example.home_server_frontend.service.NotificationDispatcher;
+import com.example.home_server_frontend.service.UploadException;
+import com.example.home_server_frontend.service.UploadPipelineMetrics;
+import com.example.home_server_frontend.service.UploadProgress;
+import com.example.home_server_frontend.service.UploadProgressTracker;
+import com.example.home_server_frontend.utils.NetworkUtils;
+import com.example.home_server_frontend.utils.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * WorkManager worker that drains the upload queue.
+ *
+ * Images queued by hand run as expedited work that only serves the priority lane. Background
+ * backup runs as long-running work under the constraints chosen in settings and uploads at most
+ * {@link #BATCH_SIZE} images per run; the rest is handed to a follow-up request so the system
+ * can spread the backup over cheap periods.
+ */
+public class UploadWorker extends Worker {
+    private static final String TAG = "UploadWorker";
+    private static final String MANUAL_WORK_NAME = "upload_manual";
+    private static final String BACKUP_WORK_NAME = "upload_backup";
+    private static final String KEY_PRIORITY_ONLY = "priority_only";
+
+    private static final String CHANNEL_ID = "UploadServiceChannel";
+    private static final int BACKUP_NOTIFICATION_ID = 1;
+    private static final int MANUAL_NOTIFICATION_ID = 2;
+    private static final long NOTIFICATION_INTERVAL_MS = 500;
+
+    private static final int BATCH_SIZE = 50;
+
+    // Queue leases held when the first worker of a process starts belong to a dead process
+    private static final AtomicBoolean interruptedUploadsReset = new AtomicBoolean(false);
+
+    // Manual and backup work may run side by side, only one of them posts the shared progress
+    private static final AtomicBoolean progressNotificationClaimed = new AtomicBoolean(false);
+
+    private final ImageRepository imageRepository;
+    private final PreferenceManager preferenceManager;
+    private final UploadProgressTracker progressTracker = UploadProgressTracker.getInstance();
+    private final boolean priorityOnly;
+    private final NotificationDispatcher notificationDispatcher;
+    private volatile ExecutorService uploadSlots;
+
+    public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+        imageRepository = new ImageRepository(context);
+        preferenceManager = new PreferenceManager(context);
+        priorityOnly = params.getInputData().getBoolean(KEY_PRIORITY_ONLY, false);
+
+        createNotificationChannel(context);
+        notificationDispatcher = new NotificationDispatcher(context, getNotificationId(),
+                new NotificationCompat.Builder(context, CHANNEL_ID)
+                        .setSmallIcon(R.drawable.ic_launcher_foreground)
+                        .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                        .setOnlyAlertOnce(true)
+                        .setOngoing(true),
+                NOTIFICATION_INTERVAL_MS);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (!preferenceManager.isLoggedIn()) {
+            return Result.success();
+        }
+
+        if (!priorityOnly) {
+            // Bulk backup may take longer than the 10 minute limit of plain work
+            try {
+                setForegroundAsync(getForegroundInfo()).get();
+            } catch (Exception e) {
+                Log.e(TAG, "Could not promote upload work to foreground", e);
+            }
+        }
+
+        try {
+            if (interruptedUploadsReset.compareAndSet(false, true)) {
+                imageRepository.resetInterruptedUploads().blockingAwait();
+            }
+            // Images inserted or switched to PENDING since the last run get their queue rows
+            imageRepository.syncUploadQueue().blockingAwait();
+            if (!priorityOnly) {
+                // Known content is marked UPLOADED before any bytes are sent
+                imageRepository.deduplicatePendingUploads()
+                        .doOnError(throwable -> Log.e(TAG, "Error deduplicating pending uploads", throwable))
+                        .onErrorComplete()
+                        .blockingAwait();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error preparing upload queue", e);
+            return Result.retry();
+        }
+
+        boolean postsProgress = progressNotificationClaimed.compareAndSet(false, true);
+        if (postsProgress) {
+            progressTracker.startRun();
+        }
+        refreshQueuedTotals();
+        Disposable progressUpdates = postsProgress
+                ? progressTracker.observe()
+                        .filter(UploadProgress::isActive)
+                        .subscribe(this::updateProgressNotification)
+                : Disposable.empty();
+
+        AtomicInteger claimed = new AtomicInteger();
+        AtomicBoolean queueDrained = new AtomicBoolean(false);
+        try {
+            drainQueue(claimed, queueDrained);
+        } finally {
+            progressUpdates.dispose();
+            if (postsProgress) {
+                progressNotificationClaimed.set(false);
+            }
+            if (priorityOnly) {
+                // Not a foreground service, the ongoing notification would outlive the work
+                notificationDispatcher.dismiss();
+            } else {
+                notificationDispatcher.cancel();
+            }
+        }
+
+        if (isStopped()) {
+            return Result.success();
+        }
+        Log.d(TAG, "Upload run finished, " + claimed.get() + " images claimed");
+        refreshQueuedTotals();
+
+        if (!queueDrained.get()) {
+            // Batch limit reached, leave the rest to a fresh request under the same constraints
+            enqueueBackup(getApplicationContext(), 0);
+        } else {
+            scheduleRetry();
+        }
+        return Result.success();
+    }
+
+    /**
+     * Run the upload pipeline until the queue is empty, the batch is full or the work is stopped.
+     *
+     * One prepare thread claims images, checks and hashes the files and encrypts metadata and
+     * keys. Prepared jobs wait in a queue bounded by the number of send slots, which blocks the
+     * prepare stage (and further claims) while every slot is busy. Each send slot streams one
+     * job at a time; its body segments are sealed ahead of the socket by the request body itself.
+     */
+    private void drainQueue(AtomicInteger claimed, AtomicBoolean queueDrained) {
+        int slotCount = priorityOnly
+                ? 1
+                : NetworkUtils.resolveUploadConcurrency(getApplicationContext(), preferenceManager);
+        Log.d(TAG, "Using " + slotCount + " concurrent upload slots");
+
+        ImageUploader uploader = new ImageUploader(getApplicationContext(), imageRepository);
+        uploader.pruneTranscodeCache();
+        BlockingQueue<UploadJob> preparedJobs = new ArrayBlockingQueue<>(slotCount);
+        uploadSlots = Executors.newFixedThreadPool(slotCount + 1);
+        uploadSlots.execute(() -> runPrepareStage(uploader, preparedJobs, slotCount, claimed, queueDrained));
+        for (int i = 0; i < slotCount; i++) {
+            uploadSlots.execute(() -> runSendStage(uploader, preparedJobs));
+        }
+        uploadSlots.shutdown();
+        try {
+            uploadSlots.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Jobs prepared but never sent because the work was stopped
+        for (UploadJob job : preparedJobs) {
+            for (QueuedUpload image : job.images) {
+                releaseClaimedImage(image);
+            }
+        }
+        UploadPipelineMetrics.getInstance().logAndReset(TAG);
+    }
+
+    private void runPrepareStage(ImageUploader uploader, BlockingQueue<UploadJob> preparedJobs, int slotCount,
+                                 AtomicInteger claimed, AtomicBoolean queueDrained) {
+        try {
+            while (!isStopped()) {
+                if (!priorityOnly && claimed.get() >= BATCH_SIZE) {
+                    break;
+                }
+
+                UploadJob job = claimAndPrepare(uploader, claimed, queueDrained);
+                if (job == null) {
+                    break;
+                }
+                if (job.images.isEmpty()) {
+                    continue;
+                }
+
+                long waitStart = System.nanoTime();
+                try {
+                    preparedJobs.put(job);
+                } catch (InterruptedException e) {
+                    for (QueuedUpload image : job.images) {
+                        releaseClaimedImage(image);
+                    }
+                    throw e;
+                }
+                UploadPipelineMetrics.getInstance().read.recordWait(waitStart);
+            }
+
+            for (int i = 0; i < slotCount; i++) {
+                preparedJobs.put(UploadJob.END);
+            }
+        } catch (InterruptedException e) {
+            // Stopped, the send slots are interrupted as well
+        }
+    }
+
+    /**
+     * Claim the next image, or a batch of small ones, and prepare it for sending
+     * @return the job, an empty job if preparation failed, or null when the queue is drained
+     */
+    private UploadJob claimAndPrepare(ImageUploader uploader, AtomicInteger claimed, AtomicBoolean queueDrained) {
+        long claimStart = System.nanoTime();
+        QueuedUpload image;
+        try {
+            image = priorityOnly
+                    ? imageRepository.claimNextPriorityUpload().blockingGet()
+                    : imageRepository.claimNextPendingUpload().blockingGet();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error claiming pending upload", e);
+            return null;
+        }
+        UploadPipelineMetrics.getInstance().read.recordWork(claimStart, 0);
+        if (image == null) {
+            queueDrained.set(true);
+            return null;
+        }
+
+        claimed.incrementAndGet();
+        if (!priorityOnly && ImageUploader.isBatchCandidate(image)) {
+            // Small files ride together so one request and one response cover them all
+            List<QueuedUpload> batch = claimBatchCompanions(image);
+            claimed.addAndGet(batch.size() - 1);
+            refreshQueuedTotals();
+            if (batch.size() > 1) {
+                try {
+                    uploader.prepareBatch(batch);
+                } catch (Exception error) {
+                    for (QueuedUpload member : batch) {
+                        recordFailure(member, error);
+                    }
+                    return UploadJob.EMPTY;
+                }
+                return UploadJob.batch(batch);
+            }
+        } else {
+            refreshQueuedTotals();
+        }
+
+        try {
+            return UploadJob.single(uploader.prepare(image));
+        } catch (Exception error) {
+            recordFailure(image, error);
+            return UploadJob.EMPTY;
+        }
+    }
+
+    private void runSendStage(ImageUploader uploader, BlockingQueue<UploadJob> preparedJobs) {
+        while (true) {
+            UploadJob job;
+            long waitStart = System.nanoTime();
+            try {
+                job = preparedJobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            UploadPipelineMetrics.getInstance().send.recordWait(waitStart);
+            if (job == UploadJob.END) {
+                return;
+            }
+
+            if (isStopped()) {
+                for (QueuedUpload image : job.images) {
+                    releaseClaimedImage(image);
+                }
+            } else if (job.prepared != null) {
+                uploadPreparedImage(uploader, job.prepared);
+            } else {
+                uploadClaimedBatch(uploader, job.images);
+            }
+        }
+    }
+
+    private List<QueuedUpload> claimBatchCompanions(QueuedUpload image) {
+        List<QueuedUpload> batch = new ArrayList<>();
+        batch.add(image);
+        try {
+            batch.addAll(imageRepository.claimSmallUploads(
+                    ImageUploader.BATCH_FILE_SIZE_LIMIT,
+                    ImageUploader.BATCH_MAX_FILES - 1,
+                    ImageUploader.BATCH_MAX_BYTES - image.getSize()).blockingGet());
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error claiming batch uploads", e);
+        }
+        return batch;
+    }
+
+    private void uploadClaimedBatch(ImageUploader uploader, List<QueuedUpload> batch) {
+        Log.d(TAG, "Starting batch upload of " + batch.size() + " images");
+        try {
+            for (ImageUploader.BatchItemResult result : uploader.uploadBatch(batch)) {
+                if (result.isSuccess()) {
+                    recordSuccess(uploader, result.getImage(), result.getRemoteUrl());
+                } else {
+                    progressTracker.finishFile(result.getImage().getId(), false);
+                    recordFailure(result.getImage(),
+                            new UploadException(result.getErrorMessage(), result.isRetryable()));
+                }
+            }
+        } catch (Exception error) {
+            // The request as a whole failed, every image shares the outcome
+            for (QueuedUpload image : batch) {
+                progressTracker.finishFile(image.getId(), false);
+                if (isStopped()) {
+                    releaseClaimedImage(image);
+                } else {
+                    recordFailure(image, error);
+                }
+            }
+        }
+    }
+
+    private void recordSuccess(ImageUploader uploader, QueuedUpload image, String remoteUrl) {
+        try {
+            imageRepository.setImageUploaded(image.getId(), remoteUrl, image.getUploadSize()).blockingAwait();
+            uploader.discardTranscoded(image);
+            progressTracker.finishFile(image.getId(), true);
+            Log.d(TAG, "Image uploaded successfully: " + image.getFileName());
+        } catch (RuntimeException e) {
+            progressTracker.finishFile(image.getId(), false);
+            Log.e(TAG, "Error updating image status to UPLOADED", e);
+        }
+    }
+
+    private void uploadPreparedImage(ImageUploader uploader, ImageUploader.PreparedUpload prepared) {
+        QueuedUpload image = prepared.getImage();
+        Log.d(TAG, "Starting upload for: " + image.getFileName());
+        try {
+            String remoteUrl = uploader.send(prepared, this::isStopped);
+            recordSuccess(uploader, image, remoteUrl);
+        } catch (Exception error) {
+            progressTracker.finishFile(image.getId(), false);
+            if (error instanceof ImageUploader.UploadStoppedException || isStopped()) {
+                // Not the image's fault, resume the session on the next run
+                Log.d(TAG, "Upload stopped for " + image.getFileName());
+                releaseClaimedImage(image);
+            } else {
+                recordFailure(image, error);
+                if (!UploadException.isRetryable(error)) {
+                    // A retry keeps the re-encoded copy so its session can be resumed
+                    uploader.discardTranscoded(image);
+                }
+            }
+        }
+    }
+
+    private void recordFailure(QueuedUpload image, Throwable error) {
+        String errorMessage = error instanceof UploadException
+                ? error.getMessage()
+                : "Upload error: " + error.getMessage();
+        boolean retryable = UploadException.isRetryable(error);
+        Log.e(TAG, "Upload failed for " + image.getFileName() + ": " + errorMessage +
+                (retryable ? " (will retry)" : " (permanent)"));
+
+        try {
+            // The failed row is skipped until its backoff expires
+            imageRepository.markUploadFailed(image, retryable).blockingAwait();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error updating image status to FAILED", e);
+        }
+    }
+
+    private void releaseClaimedImage(QueuedUpload image) {
+        try {
+            imageRepository.releaseClaimedUpload(image.getId()).blockingAwait();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error returning image to the queue", e);
+        }
+    }
+
+    private void refreshQueuedTotals() {
+        imageRepository.getQueuedUploadTotals()
+                .blockingSubscribe(
+                        totals -> progressTracker.setQueuedTotals(totals.count, totals.bytes),
+                        throwable -> Log.e(TAG, "Error reading queue totals", throwable));
+    }
+
+    /**
+     * Wake up when the earliest failed upload becomes due again instead of polling
+     */
+    private void scheduleRetry() {
+        try {
+            Long nextAttemptAt = imageRepository.getNextRetryTime().blockingGet();
+            if (nextAttemptAt != null) {
+                long delay = Math.max(0, nextAttemptAt - System.currentTimeMillis());
+                Log.d(TAG, "Next retry in " + (delay / 1000) + " s");
+                enqueueBackup(getApplicationContext(), delay);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error reading next retry time", e);
+        }
+    }
+
+    @Override
+    public void onStopped() {
+        super.onStopped();
+        // Interrupt blocking requests, the slots put their images back in the queue
+        ExecutorService slots = uploadSlots;
+        if (slots != null) {
+            slots.shutdownNow();
+        }
+    }
+
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        String content = priorityOnly ? "Uploading selected images" : "Backing up images";
+        Notification notification =
+                notificationDispatcher.buildInitial("Image Upload", content);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(getNotificationId(), notification,
+                    ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(getNotificationId(), notification);
+    }
+
+    private void updateProgressNotification(UploadProgress progress) {
+        if (!canPostNotifications()) {
+            return;
+        }
+        String title = progress.getCurrentFileName() != null
+                ? "Uploading " + progress.getCurrentFileName()
+                : "Uploading";
+        notificationDispatcher.updateProgress(title, progress.getSummary(), progress.getQueuePercent());
+    }
+
+    private boolean canPostNotifications() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU
+                || ContextCompat.checkSelfPermission(getApplicationContext(),
+                Manifest.permission.POST_NOTIFICATIONS) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private int getNotificationId() {
+        return priorityOnly ? MANUAL_NOTIFICATION_ID : BACKUP_NOTIFICATION_ID;
+    }
+
+    private static void createNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel serviceChannel = new NotificationChannel(
+                    CHANNEL_ID,
+                    "Image Upload Service Channel",
+                    NotificationManager.IMPORTANCE_DEFAULT
+            );
+            serviceChannel.setDescription("Shows status of image uploads");
+
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            manager.createNotificationChannel(serviceChannel);
+        }
+    }
+
+    /**
+     * Upload images the user queued by hand as soon as there is a network, ahead of the backup
+     */
+    public static void enqueueManual(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest uploadRequest = new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putBoolean(KEY_PRIORITY_ONLY, true).build())
+                .build();
+
+        // Appending lets a running worker finish before the new one looks at the queue
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                MANUAL_WORK_NAME,
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                uploadRequest);
+
+        Log.d(TAG, "Enqueued manual upload work");
+    }
+
+    /**
+     * Back up the pending queue under the constraints chosen in settings
+     */
+    public static void enqueueBackup(Context context) {
+        enqueueBackup(context, 0);
+    }
+
+    /**
+     * Stop the backup work, images queued by hand keep uploading
+     */
+    public static void cancelBackup(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(BACKUP_WORK_NAME);
+        Log.d(TAG, "Cancelled backup upload work");
+    }
+
+    /**
+     * Apply changed upload constraints to the backup work. Work that has not started yet is
+     * replaced; a running backup finishes its batch and the new constraints apply to the next.
+     */
+    @SuppressLint("CheckResult")
+    public static void rescheduleBackup(Context context) {
+        if (!new PreferenceManager(context).isAutoUploadEnabled()) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        Completable.fromAction(() -> {
+                    WorkManager workManager = WorkManager.getInstance(appContext);
+                    boolean running = false;
+                    for (WorkInfo info : workManager.getWorkInfosForUniqueWork(BACKUP_WORK_NAME).get()) {
+                        running |= info.getState() == WorkInfo.State.RUNNING;
+                    }
+                    workManager.enqueueUniqueWork(
+                            BACKUP_WORK_NAME,
+                            running ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.REPLACE,
+                            buildBackupRequest(appContext, 0));
+                })
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> Log.d(TAG, "Rescheduled backup upload work"),
+                        error -> Log.e(TAG, "Error rescheduling backup upload work", error));
+    }
+
+    private static void enqueueBackup(Context context, long delayMs) {
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                BACKUP_WORK_NAME,
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                buildBackupRequest(context, delayMs));
+
+        Log.d(TAG, "Enqueued backup upload work");
+    }
+
+    /**
+     * Unit of work handed from the prepare stage to a send slot
+     */
+    private static class UploadJob {
+        static final UploadJob END = new UploadJob(Collections.emptyList(), null);
+        static final UploadJob EMPTY = new UploadJob(Collections.emptyList(), null);
+
+        final List<QueuedUpload> images;
+        final ImageUploader.PreparedUpload prepared;
+
+        private UploadJob(List<QueuedUpload> images, ImageUploader.PreparedUpload prepared) {
+            this.images = images;
+            this.prepared = prepared;
+        }
+
+        static UploadJob single(ImageUploader.PreparedUpload prepared) {
+            return new UploadJob(Collections.singletonList(prepared.getImage()), prepared);
+        }
+
+        static UploadJob batch(List<QueuedUpload> images) {
+            return new UploadJob(images, null);
+        }
+    }
+
+    private static OneTimeWorkRequest buildBackupRequest(Context context, long delayMs) {
+        PreferenceManager preferenceManager = new PreferenceManager(context);
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(preferenceManager.isUploadUnmeteredOnly()
+                        ? NetworkType.UNMETERED
+                        : NetworkType.CONNECTED)
+                .setRequiresCharging(preferenceManager.isUploadChargingOnly())
+                .setRequiresBatteryNotLow(preferenceManager.isUploadBatteryNotLow())
+                .build();
+
+        return new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.home_server_frontend.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+
+public class EcdhHybridTest {
+
+    // RFC 5869, appendix A.1: basic test case with SHA-256
+    @Test
+    public void hkdfMatchesRfc5869Case1() throws Exception {
+        byte[] output = EcdhHybrid.hkdfSha256(
+                hex("000102030405060708090a0b0c"),
+                hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b"),
+                hex("f0f1f2f3f4f5f6f7f8f9"),
+                42);
+
+        assertArrayEquals(hex("3cb25f25faacd57a90434f64d0362f2a2d2d0a90cf1a5a4c5db02d56ecc4c5bf"
+                + "34007208d5b887185865"), output);
+    }
+
+    // RFC 5869, appendix A.2: longer inputs and outputs, several blocks
+    @Test
+    public void hkdfMatchesRfc5869Case2() throws Exception {
+        byte[] output = EcdhHybrid.hkdfSha256(
+                range(0x60, 80),
+                range(0x00, 80),
+                range(0xb0, 80),
+                82);
+
+        assertArrayEquals(hex("b11e398dc80327a1c8e7f78c596a49344f012eda2d4efad8a050cc4c19afa97c"
+                + "59045a99cac7827271cb41c65e590e09da3275600c2f09b8367793a9aca3db71"
+                + "cc30c58179ec3e87c14c01d5c1f3434f1d87"), output);
+    }
+
+    // RFC 5869, appendix A.3: zero-length salt and info
+    @Test
+    public void hkdfMatchesRfc5869Case3() throws Exception {
+        byte[] output = EcdhHybrid.hkdfSha256(
+                new byte[0],
+                hex("0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b0b"),
+                new byte[0],
+                42);
+
+        assertArrayEquals(hex("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d"
+                + "9d201395faa4b61a96c8"), output);
+    }
+
+    @Test
+    public void bothSidesDeriveSameKey() throws Exception {
+        KeyPair recipient = EcdhHybrid.newEphemeralKeyPair();
+        KeyPair ephemeral = EcdhHybrid.newEphemeralKeyPair();
+        byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+
+        byte[] senderKey = EcdhHybrid.deriveKey(ephemeral.getPrivate(), recipient.getPublic(),
+                ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+        byte[] recipientKey = EcdhHybrid.deriveKey(recipient.getPrivate(),
+                EcdhHybrid.decodePublicKey(ephemeralKey), ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+
+        assertEquals(32, senderKey.length);
+        assertArrayEquals(senderKey, recipientKey);
+    }
+
+    @Test
+    public void directionsDeriveDifferentKeys() throws Exception {
+        KeyPair recipient = EcdhHybrid.newEphemeralKeyPair();
+        KeyPair ephemeral = EcdhHybrid.newEphemeralKeyPair();
+        byte[] ephemeralKey = ephemeral.getPublic().getEncoded();
+
+        byte[] toServer = EcdhHybrid.deriveKey(ephemeral.getPrivate(), recipient.getPublic(),
+                ephemeralKey, EcdhHybrid.INFO_TO_SERVER);
+        byte[] toClient = EcdhHybrid.deriveKey(ephemeral.getPrivate(), recipient.getPublic(),
+                ephemeralKey, EcdhHybrid.INFO_TO_CLIENT);
+
+        assertFalse(Arrays.equals(toServer, toClient));
+    }
+
+    private static byte[] range(int first, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (first + i);
+        }
+        return bytes;
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
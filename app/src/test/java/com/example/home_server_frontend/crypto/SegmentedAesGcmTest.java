@@ -0,0 +1,153 @@
+package com.example.home_server_frontend.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.example.home_server_frontend.api.EncryptingFileRequestBody;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import okio.Buffer;
+
+public class SegmentedAesGcmTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SecretKey key = SegmentedAesGcm.keyFromBytes(SegmentedAesGcm.newFileKey());
+    private final byte[] noncePrefix = SegmentedAesGcm.newNoncePrefix();
+
+    @Test
+    public void lengthsAccountForOneTagPerSegment() {
+        assertEquals(1, SegmentedAesGcm.segmentCount(0));
+        assertEquals(SegmentedAesGcm.TAG_LENGTH, SegmentedAesGcm.encryptedLength(0));
+        assertEquals(1, SegmentedAesGcm.segmentCount(SegmentedAesGcm.SEGMENT_SIZE));
+        assertEquals(2, SegmentedAesGcm.segmentCount(SegmentedAesGcm.SEGMENT_SIZE + 1));
+        assertEquals(SegmentedAesGcm.SEGMENT_SIZE + 1 + 2 * SegmentedAesGcm.TAG_LENGTH,
+                SegmentedAesGcm.encryptedLength(SegmentedAesGcm.SEGMENT_SIZE + 1));
+    }
+
+    @Test
+    public void nonceBindsIndexAndLastFlag() {
+        byte[] nonce = SegmentedAesGcm.segmentNonce(noncePrefix, 0x01020304L, true);
+
+        assertEquals(SegmentedAesGcm.NONCE_LENGTH, nonce.length);
+        assertArrayEquals(noncePrefix, Arrays.copyOf(nonce, SegmentedAesGcm.NONCE_PREFIX_LENGTH));
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 1},
+                Arrays.copyOfRange(nonce, SegmentedAesGcm.NONCE_PREFIX_LENGTH, SegmentedAesGcm.NONCE_LENGTH));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (int length : new int[]{0, 1, SegmentedAesGcm.SEGMENT_SIZE, 3 * SegmentedAesGcm.SEGMENT_SIZE + 17}) {
+            byte[] plain = randomBytes(length);
+            File file = writeFile(plain);
+
+            byte[] sealed = seal(file, 0, SegmentedAesGcm.segmentCount(length));
+
+            assertEquals(SegmentedAesGcm.encryptedLength(length), sealed.length);
+            assertArrayEquals(plain, open(sealed));
+        }
+    }
+
+    @Test
+    public void segmentRangesConcatenateToWholeStream() throws Exception {
+        File file = writeFile(randomBytes(3 * SegmentedAesGcm.SEGMENT_SIZE + 17));
+
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        chunks.write(seal(file, 0, 1));
+        chunks.write(seal(file, 1, 3));
+        // The end is clamped to the segments the file has
+        chunks.write(seal(file, 3, 100));
+
+        assertArrayEquals(seal(file, 0, 4), chunks.toByteArray());
+    }
+
+    @Test
+    public void truncatedStreamFailsAuthentication() throws Exception {
+        File file = writeFile(randomBytes(2 * SegmentedAesGcm.SEGMENT_SIZE + 17));
+        byte[] sealed = seal(file, 0, 3);
+
+        // Cut at a segment boundary: the new final segment was sealed without the last flag
+        byte[] truncated = Arrays.copyOf(sealed, 2 * SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+        try {
+            open(truncated);
+            fail("Truncated stream decrypted");
+        } catch (AEADBadTagException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void reorderedSegmentsFailAuthentication() throws Exception {
+        File file = writeFile(randomBytes(3 * SegmentedAesGcm.SEGMENT_SIZE));
+        byte[] sealed = seal(file, 0, 3);
+
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE,
+                swapped, 0, SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+        System.arraycopy(sealed, 0,
+                swapped, SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE, SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+        try {
+            open(swapped);
+            fail("Reordered stream decrypted");
+        } catch (AEADBadTagException expected) {
+            // Expected
+        }
+    }
+
+    private byte[] seal(File file, long firstSegment, long endSegment) throws IOException {
+        EncryptingFileRequestBody body =
+                new EncryptingFileRequestBody(file, key, noncePrefix, firstSegment, endSegment);
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(body.contentLength(), buffer.size());
+        return buffer.readByteArray();
+    }
+
+    /**
+     * Decrypt a whole stream the way the server does, treating its final segment as the last one
+     */
+    private byte[] open(byte[] sealed) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        long segments = Math.max(1,
+                (sealed.length + SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE - 1) / SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+        for (long segment = 0; segment < segments; segment++) {
+            int start = (int) (segment * SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE);
+            int length = Math.min(SegmentedAesGcm.ENCRYPTED_SEGMENT_SIZE, sealed.length - start);
+            byte[] nonce = SegmentedAesGcm.segmentNonce(noncePrefix, segment, segment == segments - 1);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(SegmentedAesGcm.TAG_LENGTH * 8, nonce));
+            plain.write(cipher.doFinal(sealed, start, length));
+        }
+        return plain.toByteArray();
+    }
+
+    private File writeFile(byte[] content) throws IOException {
+        File file = folder.newFile();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
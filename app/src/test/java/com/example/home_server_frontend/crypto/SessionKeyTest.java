@@ -0,0 +1,114 @@
+package com.example.home_server_frontend.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SystemClock answers 0 in local tests, so a key lives for exactly its lifetime from 0
+ */
+public class SessionKeyTest {
+    private static final long LIFETIME_MS = 60 * 1000L;
+
+    private final SessionKey sessionKey = new SessionKey("session", new byte[32], LIFETIME_MS);
+
+    @Test
+    public void sendNoncesCountUpInClientDirection() {
+        for (long counter = 0; counter < 3; counter++) {
+            ByteBuffer nonce = ByteBuffer.wrap(sessionKey.nextSendNonce());
+            assertEquals(SessionKey.NONCE_LENGTH, nonce.remaining());
+            assertEquals(SessionKey.CLIENT_TO_SERVER, nonce.getInt());
+            assertEquals(counter, nonce.getLong());
+        }
+    }
+
+    @Test
+    public void associatedDataIsSessionId() {
+        assertArrayEquals("session".getBytes(StandardCharsets.UTF_8), sessionKey.associatedData);
+    }
+
+    @Test
+    public void exhaustedCounterRetiresKey() {
+        SessionKey key = new SessionKey("session", new byte[32], LIFETIME_MS, SessionKey.MAX_MESSAGES - 1);
+
+        assertTrue(key.isUsable());
+        ByteBuffer last = ByteBuffer.wrap(key.nextSendNonce());
+        last.getInt();
+        assertEquals(SessionKey.MAX_MESSAGES - 1, last.getLong());
+
+        // Never wraps around to a nonce that was already used
+        assertFalse(key.isUsable());
+        assertNull(key.nextSendNonce());
+        assertNull(key.nextSendNonce());
+    }
+
+    @Test
+    public void expiredKeyIsNotUsable() {
+        assertTrue(sessionKey.isUsable());
+        assertFalse(new SessionKey("session", new byte[32], 0).isUsable());
+    }
+
+    @Test
+    public void replayedNonceIsRejected() {
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(0)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(0)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(1)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(1)));
+    }
+
+    @Test
+    public void outOfOrderNoncesInsideWindowAreAcceptedOnce() {
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(10)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(7)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(9)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(7)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(8)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(10)));
+    }
+
+    @Test
+    public void nonceOlderThanWindowIsRejected() {
+        long highest = SessionKey.REPLAY_WINDOW + 5;
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(highest)));
+
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(highest - SessionKey.REPLAY_WINDOW + 1)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(highest - SessionKey.REPLAY_WINDOW)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(0)));
+    }
+
+    @Test
+    public void windowSlidesWithHighestCounter() {
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(0)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(2)));
+        // A jump past the window forgets everything before it
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(2 + SessionKey.REPLAY_WINDOW + 10)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(2)));
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(2 + SessionKey.REPLAY_WINDOW)));
+    }
+
+    @Test
+    public void malformedNoncesAreRejected() {
+        // Own direction, i.e. a reflected client message
+        assertFalse(sessionKey.acceptReceiveNonce(
+                ByteBuffer.allocate(SessionKey.NONCE_LENGTH).putInt(SessionKey.CLIENT_TO_SERVER).putLong(0).array()));
+        assertFalse(sessionKey.acceptReceiveNonce(new byte[SessionKey.NONCE_LENGTH - 1]));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(-1)));
+        assertFalse(sessionKey.acceptReceiveNonce(receiveNonce(SessionKey.MAX_MESSAGES)));
+        // None of them moved the window
+        assertTrue(sessionKey.acceptReceiveNonce(receiveNonce(0)));
+    }
+
+    private static byte[] receiveNonce(long counter) {
+        return ByteBuffer.allocate(SessionKey.NONCE_LENGTH)
+                .putInt(SessionKey.SERVER_TO_CLIENT)
+                .putLong(counter)
+                .array();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.home_server_frontend.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+    private static final long BASE_DELAY_MS = 30 * 1000L;
+    private static final long MAX_DELAY_MS = 6 * 60 * 60 * 1000L;
+
+    @Test
+    public void delayStaysInUpperHalfOfDoublingCeiling() {
+        long ceiling = BASE_DELAY_MS;
+        for (int retryCount = 1; retryCount <= 8; retryCount++) {
+            for (int i = 0; i < 100; i++) {
+                assertInRange(retryCount, ceiling, RetryPolicy.backoffDelay(retryCount));
+            }
+            ceiling *= 2;
+        }
+    }
+
+    @Test
+    public void delayIsCappedAtSixHours() {
+        for (int retryCount : new int[]{11, 21, 64, Integer.MAX_VALUE}) {
+            assertInRange(retryCount, MAX_DELAY_MS, RetryPolicy.backoffDelay(retryCount));
+        }
+    }
+
+    @Test
+    public void nonPositiveRetryCountUsesBaseDelay() {
+        assertInRange(0, BASE_DELAY_MS, RetryPolicy.backoffDelay(0));
+        assertInRange(-5, BASE_DELAY_MS, RetryPolicy.backoffDelay(-5));
+    }
+
+    @Test
+    public void nextAttemptIsDelayedFromNow() {
+        long now = 1_000_000L;
+        long nextAttempt = RetryPolicy.nextAttemptAt(1, true, now);
+        assertInRange(1, BASE_DELAY_MS, nextAttempt - now);
+    }
+
+    @Test
+    public void permanentFailureIsNeverRetried() {
+        assertEquals(RetryPolicy.NEVER, RetryPolicy.nextAttemptAt(1, false, 1_000_000L));
+    }
+
+    private static void assertInRange(int retryCount, long ceiling, long delay) {
+        assertTrue("Retry " + retryCount + " waits " + delay + " ms, ceiling " + ceiling,
+                delay >= ceiling / 2 && delay <= ceiling);
+    }
+}